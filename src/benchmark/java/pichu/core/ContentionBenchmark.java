@@ -0,0 +1,107 @@
+package pichu.core;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import pichu.task.Todo;
+
+/**
+ * Measures how read throughput of a shared {@link TaskList} grows with the number of
+ * reader threads while one writer keeps adding and deleting tasks. Each configuration is
+ * also run with every call behind one shared monitor, the simplest thread-safe
+ * alternative, for comparison. Run it with {@code gradle contentionBenchmark}; the
+ * numbers depend on the machine, so it is not part of the tests.
+ */
+public class ContentionBenchmark {
+    private static final int TASKS = 100_000;
+    private static final int[] READER_COUNTS = {1, 2, 4, 8};
+    private static final long RUN_MILLIS = 2_000;
+    private static final long WRITE_INTERVAL_NANOS = 1_000_000;
+    private static final int TAG_COUNT = 1_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        TaskList taskList = new TaskList();
+        for (int i = 0; i < TASKS; i++) {
+            taskList.addTask(new Todo("task " + i + " #tag" + (i % TAG_COUNT)));
+        }
+
+        System.out.printf("%d processors, %d tasks, one write every %d us%n",
+                Runtime.getRuntime().availableProcessors(), TASKS, WRITE_INTERVAL_NANOS / 1000);
+        System.out.printf("%-8s %20s %20s%n", "readers", "TaskList (reads/s)", "monitor (reads/s)");
+        // The first run only warms up the JIT
+        measure(taskList, READER_COUNTS[0], false);
+        for (int readers : READER_COUNTS) {
+            System.out.printf("%-8d %20.0f %20.0f%n", readers, measure(taskList, readers, false),
+                    measure(taskList, readers, true));
+        }
+    }
+
+    private static double measure(TaskList taskList, int readerCount, boolean isMonitorUsed)
+            throws InterruptedException {
+        Object monitor = new Object();
+        AtomicBoolean isRunning = new AtomicBoolean(true);
+        LongAdder reads = new LongAdder();
+
+        Thread writer = new Thread(() -> {
+            int next = 0;
+            while (isRunning.get()) {
+                if (isMonitorUsed) {
+                    synchronized (monitor) {
+                        writeOnce(taskList, next);
+                    }
+                } else {
+                    writeOnce(taskList, next);
+                }
+                next++;
+                LockSupport.parkNanos(WRITE_INTERVAL_NANOS);
+            }
+        });
+        Thread[] readers = new Thread[readerCount];
+        for (int i = 0; i < readerCount; i++) {
+            readers[i] = new Thread(() -> {
+                Random random = new Random();
+                while (isRunning.get()) {
+                    int seed = random.nextInt(TASKS);
+                    if (isMonitorUsed) {
+                        synchronized (monitor) {
+                            readOnce(taskList, seed);
+                        }
+                    } else {
+                        readOnce(taskList, seed);
+                    }
+                    reads.increment();
+                }
+            });
+        }
+
+        writer.start();
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        Thread.sleep(RUN_MILLIS);
+        isRunning.set(false);
+        writer.join();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        return reads.sum() * 1000.0 / RUN_MILLIS;
+    }
+
+    private static void writeOnce(TaskList taskList, int next) {
+        taskList.addTask(new Todo("added " + next + " #tag" + (next % TAG_COUNT)));
+        taskList.deleteTask(1);
+    }
+
+    /**
+     * Runs one word search under the read lock, then one tag search, one tag query and
+     * one lookup without a lock, each matching a few tasks.
+     */
+    private static void readOnce(TaskList taskList, int seed) {
+        taskList.findTasks(Integer.toString(seed));
+        taskList.findTasksByTag("tag" + (seed % TAG_COUNT));
+        taskList.findTasksByTagQuery("tag" + (seed % TAG_COUNT) + " & !tag" + ((seed + 1) % TAG_COUNT));
+        taskList.getTask(1 + seed % taskList.size());
+    }
+}
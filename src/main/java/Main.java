@@ -1,9 +1,16 @@
+import java.util.List;
+
 import javafx.application.Application;
+import javafx.geometry.Side;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
+import javafx.scene.control.ContextMenu;
+import javafx.scene.control.MenuItem;
 import javafx.scene.control.ScrollPane;
 import javafx.scene.control.TextField;
 import javafx.scene.image.Image;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.AnchorPane;
 import javafx.scene.layout.Region;
 import javafx.scene.layout.VBox;
@@ -17,6 +24,7 @@ public class Main extends Application {
     private ScrollPane scrollPane;
     private VBox dialogContainer;
     private TextField userInput;
+    private ContextMenu suggestionPopup;
     private Button sendButton;
     private Scene scene;
 
@@ -34,6 +42,7 @@ public class Main extends Application {
         scrollPane.setContent(dialogContainer);
 
         userInput = new TextField();
+        suggestionPopup = new ContextMenu();
         sendButton = new Button("Send");
 
         DialogBox dialogBox = new DialogBox("Hello!", userImage);
@@ -87,6 +96,18 @@ public class Main extends Application {
             handleUserInput();
         });
 
+        //Suggest completions of the last word on every keystroke, and take the first with Tab
+        userInput.textProperty().addListener((observable, oldText, newText) -> showSuggestions(newText));
+        userInput.addEventFilter(KeyEvent.KEY_PRESSED, (event) -> {
+            if (event.getCode() == KeyCode.TAB && suggestionPopup.isShowing()) {
+                suggestionPopup.getItems().get(0).fire();
+                event.consume();
+            }
+        });
+
+        //Make sure saves that are still queued reach the disk before the window closes
+        stage.setOnCloseRequest((event) -> pichu.flush());
+
         //Scroll down to the end every time dialogContainer's height changes.
         dialogContainer.heightProperty().addListener((observable) -> scrollPane.setVvalue(1.0));
 
@@ -99,6 +120,31 @@ public class Main extends Application {
 
     }
 
+    /**
+     * Shows the suggestions for the current input above the text field, or hides the
+     * popup if there are none.
+     */
+    private void showSuggestions(String text) {
+        List<String> suggestions = pichu.getSuggestions(text);
+        if (suggestions.isEmpty()) {
+            suggestionPopup.hide();
+            return;
+        }
+        suggestionPopup.getItems().clear();
+        for (String suggestion : suggestions) {
+            MenuItem item = new MenuItem(suggestion);
+            item.setMnemonicParsing(false);
+            item.setOnAction((event) -> {
+                userInput.setText(suggestion);
+                userInput.end();
+            });
+            suggestionPopup.getItems().add(item);
+        }
+        if (!suggestionPopup.isShowing()) {
+            suggestionPopup.show(userInput, Side.TOP, 0, 0);
+        }
+    }
+
     /**
      * Creates a dialog box containing user input, and appends it to
      * the dialog container. Clears the user input after processing.
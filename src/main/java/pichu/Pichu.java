@@ -1,11 +1,16 @@
 package pichu;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 
+import pichu.core.Autocompleter;
+import pichu.core.ChangeJournal;
+import pichu.core.QueryResult;
 import pichu.core.TaskList;
 import pichu.parser.Parser;
 import pichu.storage.Storage;
+import pichu.storage.StorageEngine;
 import pichu.task.Deadline;
 import pichu.task.Event;
 import pichu.task.Task;
@@ -25,25 +30,42 @@ public class Pichu {
     private static final String EMPTY_TASK_LIST_MESSAGE = "SEWY... Your task list is empty!";
     private static final String TASK_LIST_HEADER = "SUIII! Here are the tasks in your list:\n";
     private static final String MATCHING_TASKS_HEADER = "SUIII! Here are the matching tasks in your list:\n";
+    private static final String CLOSE_MATCHES_HEADER = "SUIII! Here are the closest matches in your list:\n";
     private static final String NO_MATCHES_MESSAGE = "SEWY... No matching tasks found.";
     private static final String INVALID_NUMBER_MESSAGE = "SEWY... Invalid task number format.";
     private static final String INDEX_OUT_OF_RANGE_MESSAGE = "SEWY... Task number is out of range.";
     private static final String ERROR_PREFIX = "SEWY... ";
+    private static final String NOTHING_TO_CONTINUE_MESSAGE = "SEWY... There are no more results to show.";
+    private static final String NOTHING_TO_UNDO_MESSAGE = "SEWY... There is nothing to undo.";
+    private static final String NOTHING_TO_REDO_MESSAGE = "SEWY... There is nothing to redo.";
+    private static final int PAGE_SIZE = 50;
 
-    private final Storage storage;
+    private final StorageEngine storage;
     private final TaskList taskList;
+    private final Autocompleter autocompleter;
+    private final ChangeJournal journal = new ChangeJournal();
+    // The last paged command without its page option, and the page shown, for "next"
+    private String lastPagedCommand;
+    private int lastPage;
+    private int lastPageCount;
 
     /**
      * Constructor for Pichu chatbot.
+     * The storage engine is chosen by the {@code pichu.storage.engine} system property
+     * and defaults to the file engine.
      * @param filePath the file path for task storage
      */
     public Pichu(String filePath) {
-        storage = new Storage(filePath);
+        storage = createStorage(System.getProperty(StorageEngine.ENGINE_PROPERTY, StorageEngine.FILE_ENGINE),
+                System.getProperty(StorageEngine.MODE_PROPERTY, Storage.Mode.LOG.name()), filePath);
         taskList = new TaskList();
+        autocompleter = new Autocompleter(taskList);
 
-        // Load existing tasks
-        List<String> savedTasks = storage.loadTasks();
-        taskList.loadTasks(savedTasks);
+        // Load existing tasks, giving IDs to tasks saved before tasks had them
+        if (taskList.setTasks(storage.load())) {
+            storage.saveAllTasks(taskList.getTasks());
+        }
+        taskList.reserveIds(storage.loadNextId());
     }
 
     // Overloaded constructor
@@ -51,6 +73,41 @@ public class Pichu {
         this(DEFAULT_FILE_PATH);
     }
 
+    private static StorageEngine createStorage(String engineName, String modeName, String filePath) {
+        Storage.Mode mode;
+        try {
+            mode = StorageEngine.parseMode(modeName);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage() + ", using the log mode instead");
+            mode = Storage.Mode.LOG;
+        }
+        try {
+            return StorageEngine.create(engineName, mode, filePath);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage() + ", using the file engine instead");
+            return StorageEngine.create(StorageEngine.FILE_ENGINE, mode, filePath);
+        }
+    }
+
+    /**
+     * Waits for every pending save to reach the disk.
+     * Saves run in the background, so this should be called before the application exits.
+     */
+    public void flush() {
+        storage.flush();
+    }
+
+    /**
+     * Suggests ways to finish the last word of a partly typed command, such as a command
+     * word, a tag or a word of a task name.
+     *
+     * @param input the text typed so far
+     * @return the text with its last word finished, in alphabetical order, or none
+     */
+    public List<String> getSuggestions(String input) {
+        return autocompleter.suggest(input);
+    }
+
     /**
      * Generates a response for the user's chat message.
      */
@@ -61,6 +118,7 @@ public class Pichu {
                 return EMPTY_COMMAND_MESSAGE;
             }
 
+            reloadExternalChanges();
             Parser.CommandType commandType = Parser.getCommandType(fullCommand);
             return executeCommand(commandType, fullCommand);
         } catch (Exception e) {
@@ -68,12 +126,34 @@ public class Pichu {
         }
     }
 
+    /**
+     * Picks up tasks changed by another Pichu process sharing the same data file, so that
+     * commands act on the current list instead of overwriting the other process's changes.
+     */
+    private void reloadExternalChanges() {
+        if (!storage.hasExternalChanges()) {
+            return;
+        }
+        // Storage updates the list in place, so it gets a copy rather than the snapshot
+        List<Task> tasks = new ArrayList<>(taskList.getTasks());
+        if (!storage.reloadChanges(tasks)) {
+            return;
+        }
+        // The journaled changes refer to tasks that the reload has replaced
+        journal.clear();
+        if (taskList.setTasks(tasks)) {
+            storage.saveAllTasks(taskList.getTasks());
+        }
+        taskList.reserveIds(storage.loadNextId());
+    }
+
     private String executeCommand(Parser.CommandType commandType, String fullCommand) {
         switch (commandType) {
         case BYE:
+            storage.flush();
             return GOODBYE_MESSAGE;
         case LIST:
-            return formatTaskList(taskList.getTasks());
+            return formatTaskList(taskList.getTasks(), fullCommand);
         case MARK:
             return handleMarkCommand(fullCommand);
         case UNMARK:
@@ -88,33 +168,89 @@ public class Pichu {
             return handleDeleteCommand(fullCommand);
         case FIND:
             return handleFindCommand(fullCommand);
+        case FUZZY_FIND:
+            return handleFuzzyFindCommand(fullCommand);
         case TAG:
             return handleTagCommand(fullCommand);
+        case DUE:
+            return handleDueCommand(fullCommand);
+        case OVERLAP:
+            return handleOverlapCommand(fullCommand);
+        case QUERY:
+            return handleQueryCommand(fullCommand);
+        case NEXT:
+            return handleNextCommand();
+        case UNDO:
+            return handleUndoCommand();
+        case REDO:
+            return handleRedoCommand();
         default:
             return UNKNOWN_COMMAND_MESSAGE;
         }
     }
 
-    private String formatTaskList(ArrayList<Task> tasks) {
+    private String formatTaskList(List<Task> tasks, String fullCommand) {
         if (tasks.isEmpty()) {
             return EMPTY_TASK_LIST_MESSAGE;
         }
+        return formatPage(tasks, TASK_LIST_HEADER, fullCommand);
+    }
+
+    /**
+     * Formats the page of results that a command asks for. Only the tasks on that page are
+     * formatted, so the time and memory this takes do not grow with the number of results.
+     * The command is remembered so that {@code next} can show the page after it.
+     */
+    private String formatPage(List<Task> tasks, String header, String fullCommand) {
+        int page = Parser.parsePage(fullCommand);
+        int pageCount = (tasks.size() + PAGE_SIZE - 1) / PAGE_SIZE;
+        if (page > pageCount) {
+            return ERROR_PREFIX + "There is no page " + page + ", the last page is " + pageCount + ".";
+        }
+        lastPagedCommand = Parser.removePage(fullCommand);
+        lastPage = page;
+        lastPageCount = pageCount;
+
+        int from = (page - 1) * PAGE_SIZE;
+        int to = Math.min(from + PAGE_SIZE, tasks.size());
+        StringBuilder sb = new StringBuilder(header);
+        for (int i = from; i < to; i++) {
+            if (i > from) {
+                sb.append("\n");
+            }
+            sb.append(formatTaskForDisplay(tasks.get(i), i + 1));
+        }
+        if (pageCount > 1) {
+            sb.append("\nPage ").append(page).append(" of ").append(pageCount).append(".");
+            if (page < pageCount) {
+                sb.append(" Type next for more.");
+            }
+        }
+        return sb.toString();
+    }
 
-        StringBuilder sb = new StringBuilder(TASK_LIST_HEADER);
-        for (int i = 0; i < tasks.size(); i++) {
-            Task task = tasks.get(i);
-            sb.append(formatTaskForDisplay(task, i + 1)).append("\n");
+    private String handleNextCommand() {
+        if (lastPagedCommand == null || lastPage >= lastPageCount) {
+            return NOTHING_TO_CONTINUE_MESSAGE;
         }
-        return sb.toString().trim();
+        String fullCommand = lastPagedCommand + " /page " + (lastPage + 1);
+        return executeCommand(Parser.getCommandType(lastPagedCommand), fullCommand);
     }
 
     private String formatTaskForDisplay(Task task, int displayIndex) {
-        return displayIndex + ".[" + task.getType() + "]" + task;
+        return displayIndex + ".[" + task.getType() + "]" + task + " (id: " + task.getId() + ")";
     }
 
+    /**
+     * Runs a command on the task given by position, as in {@code mark 2}, or by ID, as in
+     * {@code mark #7}. IDs are resolved to the task's current position first, since
+     * storage addresses tasks by position.
+     */
     private String handleIndexBasedCommand(String fullCommand, IndexBasedOperation operation) {
         try {
-            int index = Parser.parseIndex(fullCommand);
+            int index = Parser.isIdReference(fullCommand)
+                    ? taskList.indexOfId(Parser.parseId(fullCommand))
+                    : Parser.parseIndex(fullCommand);
             return operation.execute(index);
         } catch (NumberFormatException e) {
             return INVALID_NUMBER_MESSAGE;
@@ -128,20 +264,104 @@ public class Pichu {
         String execute(int index) throws IndexOutOfBoundsException;
     }
 
+    /**
+     * Runs a mark, unmark or delete on every task a bulk command selects, such as
+     * {@code delete 3,7,9} or {@code unmark tag #x}, then saves the list once rather than
+     * once for each task.
+     */
+    private String handleBulkCommand(String fullCommand, BulkOperation operation) {
+        try {
+            List<Task> selected = selectTasks(fullCommand);
+            if (selected.isEmpty()) {
+                return NO_MATCHES_MESSAGE;
+            }
+            String response = operation.execute(selected);
+            storage.saveAllTasks(taskList.getTasks());
+            return response;
+        } catch (NumberFormatException e) {
+            return INVALID_NUMBER_MESSAGE;
+        } catch (IndexOutOfBoundsException e) {
+            return INDEX_OUT_OF_RANGE_MESSAGE;
+        } catch (IllegalArgumentException e) {
+            return ERROR_PREFIX + e.getMessage();
+        }
+    }
+
+    @FunctionalInterface
+    private interface BulkOperation {
+        String execute(List<Task> selected);
+    }
+
+    private List<Task> selectTasks(String fullCommand) {
+        if (Parser.isTagSelection(fullCommand)) {
+            return taskList.findTasksByTagQuery(Parser.parseSelectionTagQuery(fullCommand));
+        }
+        List<Task> tasks = taskList.getTasks();
+        List<Task> selected = new ArrayList<>();
+        if (Parser.isDoneSelection(fullCommand)) {
+            for (Task task : tasks) {
+                if (task.isCompleted()) {
+                    selected.add(task);
+                }
+            }
+            return selected;
+        }
+
+        // Check every range first so that nothing changes if one of them is out of range
+        int[][] ranges = Parser.parseIndexRanges(fullCommand);
+        for (int[] range : ranges) {
+            if (range[0] < 1 || range[1] > tasks.size()) {
+                throw new IndexOutOfBoundsException("Invalid task range: " + range[0] + "-" + range[1]);
+            }
+        }
+        for (int[] range : ranges) {
+            selected.addAll(tasks.subList(range[0] - 1, range[1]));
+        }
+        return selected;
+    }
+
+    /**
+     * Marks the selected tasks of a bulk command as done or not done and journals the
+     * tasks whose state changed.
+     */
+    private int setCompletedInBulk(String fullCommand, List<Task> selected, boolean isCompleted) {
+        List<Task> changed = new ArrayList<>();
+        for (Task task : selected) {
+            if (task.isCompleted() != isCompleted) {
+                changed.add(task);
+            }
+        }
+        int count = taskList.setCompleted(selected, isCompleted);
+        journal.record(fullCommand, new CompletionChange(changed, isCompleted));
+        return count;
+    }
+
     private String handleMarkCommand(String fullCommand) {
+        if (Parser.isBulkCommand(fullCommand)) {
+            return handleBulkCommand(fullCommand, selected -> "SUIIIII! I've marked "
+                    + setCompletedInBulk(fullCommand, selected, true) + " task(s) as done.");
+        }
         return handleIndexBasedCommand(fullCommand, index -> {
-            taskList.markTask(index);
             Task task = taskList.getTask(index);
-            storage.saveAllTasks(taskList.getTasks());
+            boolean wasCompleted = task.isCompleted();
+            taskList.markTask(index);
+            storage.updateTask(index, task, taskList::getTasks);
+            journal.record(fullCommand, new CompletionChange(wasCompleted ? List.of() : List.of(task), true));
             return "SUIIIII! I've marked this task as done:\n[X] " + task.getName();
         });
     }
 
     private String handleUnmarkCommand(String fullCommand) {
+        if (Parser.isBulkCommand(fullCommand)) {
+            return handleBulkCommand(fullCommand, selected -> "SEWY...,I've marked "
+                    + setCompletedInBulk(fullCommand, selected, false) + " task(s) as not done yet.");
+        }
         return handleIndexBasedCommand(fullCommand, index -> {
-            taskList.unmarkTask(index);
             Task task = taskList.getTask(index);
-            storage.saveAllTasks(taskList.getTasks());
+            boolean wasCompleted = task.isCompleted();
+            taskList.unmarkTask(index);
+            storage.updateTask(index, task, taskList::getTasks);
+            journal.record(fullCommand, new CompletionChange(wasCompleted ? List.of(task) : List.of(), false));
             return "SEWY...,I've marked this task as not done yet:\n[ ] " + task.getName();
         });
     }
@@ -149,10 +369,7 @@ public class Pichu {
     private String handleTodoCommand(String fullCommand) {
         try {
             String description = Parser.parseTodoDescription(fullCommand);
-            Task newTask = new Todo(description);
-            taskList.addTask(newTask);
-            storage.saveTask(newTask.toFileFormat());
-            return formatTaskAddedMessage(newTask);
+            return addTask(new Todo(description), fullCommand);
         } catch (IllegalArgumentException e) {
             return ERROR_PREFIX + e.getMessage();
         }
@@ -161,10 +378,7 @@ public class Pichu {
     private String handleDeadlineCommand(String fullCommand) {
         try {
             String[] parsed = Parser.parseDeadlineCommand(fullCommand);
-            Task newTask = new Deadline(parsed[0], parsed[1]);
-            taskList.addTask(newTask);
-            storage.saveTask(newTask.toFileFormat());
-            return formatTaskAddedMessage(newTask);
+            return addTask(new Deadline(parsed[0], parsed[1]), fullCommand);
         } catch (IllegalArgumentException e) {
             return ERROR_PREFIX + e.getMessage();
         }
@@ -173,57 +387,133 @@ public class Pichu {
     private String handleEventCommand(String fullCommand) {
         try {
             String[] parsed = Parser.parseEventCommand(fullCommand);
-            Task newTask = new Event(parsed[0], parsed[1], parsed[2]);
-            taskList.addTask(newTask);
-            storage.saveTask(newTask.toFileFormat());
-            return formatTaskAddedMessage(newTask);
+            return addTask(new Event(parsed[0], parsed[1], parsed[2]), fullCommand);
         } catch (IllegalArgumentException e) {
             return ERROR_PREFIX + e.getMessage();
         }
     }
 
     private String handleDeleteCommand(String fullCommand) {
+        if (Parser.isBulkCommand(fullCommand)) {
+            return handleBulkCommand(fullCommand, selected -> {
+                int count = taskList.deleteTasks(selected);
+                storage.saveNextId(taskList.getNextId());
+                journal.record(fullCommand, new PresenceChange(selected, false));
+                return "SUIIII. I've removed " + count + " task(s).\nNow you have " + taskList.size()
+                        + " task(s) in the list.";
+            });
+        }
         return handleIndexBasedCommand(fullCommand, index -> {
             Task taskToDelete = taskList.getTask(index);
             taskList.deleteTask(index);
-            storage.saveAllTasks(taskList.getTasks());
+            storage.deleteTask(index, taskList::getTasks);
+            storage.saveNextId(taskList.getNextId());
+            journal.record(fullCommand, new PresenceChange(List.of(taskToDelete), false));
             return "SUIIII. I've removed this task:\n  [" + taskToDelete.getType() + "][" + taskToDelete.getCompletion() + "] " + taskToDelete.getName() + "\nNow you have " + taskList.size() + " task(s) in the list.";
         });
     }
 
     private String handleTagCommand(String fullCommand) {
         try {
-            String tag = Parser.parseTagKeyword(fullCommand);
-            ArrayList<Task> foundTasks = taskList.findTasksByTag(tag);
-            return formatTagResults(foundTasks, tag);
+            String command = Parser.removePage(fullCommand);
+            String query = Parser.parseTagQuery(command);
+            ArrayList<Task> foundTasks = taskList.findTasksByTagQuery(query);
+            String description = Parser.isSingleTag(query)
+                    ? "tag #" + Parser.parseTagKeyword(command)
+                    : "tags " + query;
+            return formatTagResults(foundTasks, description, fullCommand);
         } catch (IllegalArgumentException e) {
             return ERROR_PREFIX + e.getMessage();
         }
     }
 
-    private String formatTagResults(ArrayList<Task> foundTasks, String tag) {
+    private String formatTagResults(ArrayList<Task> foundTasks, String description, String fullCommand) {
         if (foundTasks.isEmpty()) {
-            return "SEWY...No tasks found with tag #" + tag + ".";
+            return "SEWY...No tasks found with " + description + ".";
         }
+        return formatPage(foundTasks, "Here are the tasks with " + description + ":\n", fullCommand);
+    }
 
-        StringBuilder sb = new StringBuilder("Here are the tasks with tag #" + tag + ":\n");
-        for (int i = 0; i < foundTasks.size(); i++) {
-            Task task = foundTasks.get(i);
-            sb.append(formatTaskForDisplay(task, i + 1)).append("\n");
+    private String handleDueCommand(String fullCommand) {
+        try {
+            String command = Parser.removePage(fullCommand);
+            if (Parser.isUndatedDueCommand(command)) {
+                return formatDateResults(taskList.getUndatedTasks(), "Here are the tasks with dates I can't read:\n",
+                        fullCommand);
+            }
+            LocalDateTime[] range = Parser.parseDueCommand(command);
+            ArrayList<Task> foundTasks = range[0] == null
+                    ? taskList.findDueBefore(range[1])
+                    : taskList.findDueBetween(range[0], range[1]);
+            return formatDateResults(foundTasks, "SUIII! Here are the deadlines due then:\n", fullCommand);
+        } catch (IllegalArgumentException e) {
+            return ERROR_PREFIX + e.getMessage();
         }
-        return sb.toString().trim();
+    }
+
+    private String handleOverlapCommand(String fullCommand) {
+        try {
+            LocalDateTime[] period = Parser.parseOverlapCommand(Parser.removePage(fullCommand));
+            ArrayList<Task> foundTasks = taskList.findEventsOverlapping(period[0], period[1]);
+            return formatDateResults(foundTasks, "SUIII! Here are the events happening then:\n", fullCommand);
+        } catch (IllegalArgumentException e) {
+            return ERROR_PREFIX + e.getMessage();
+        }
+    }
+
+    private String formatDateResults(ArrayList<Task> foundTasks, String header, String fullCommand) {
+        if (foundTasks.isEmpty()) {
+            return NO_MATCHES_MESSAGE;
+        }
+        return formatPage(foundTasks, header, fullCommand);
     }
 
     private String handleFindCommand(String fullCommand) {
         try {
-            String keyword = Parser.parseFindKeyword(fullCommand);
+            String keyword = Parser.parseFindKeyword(Parser.removePage(fullCommand));
             ArrayList<Task> foundTasks = taskList.findTasks(keyword);
-            return formatFindResults(foundTasks);
+            return formatFindResults(foundTasks, fullCommand);
+        } catch (IllegalArgumentException e) {
+            return ERROR_PREFIX + e.getMessage();
+        }
+    }
+
+    private String handleQueryCommand(String fullCommand) {
+        try {
+            String command = Parser.removePage(fullCommand);
+            QueryResult result = taskList.query(Parser.parseQuery(command));
+            String response = result.getTasks().isEmpty()
+                    ? NO_MATCHES_MESSAGE
+                    : formatPage(result.getTasks(), MATCHING_TASKS_HEADER, fullCommand);
+            if (Parser.isExplainQuery(command)) {
+                response += "\n\n" + result.getExplanation();
+            }
+            return response;
+        } catch (IllegalArgumentException e) {
+            return ERROR_PREFIX + e.getMessage();
+        }
+    }
+
+    private String handleFuzzyFindCommand(String fullCommand) {
+        try {
+            String keyword = Parser.parseFindKeyword(Parser.removePage(fullCommand));
+            ArrayList<Task> foundTasks = taskList.findTasksFuzzy(keyword);
+            if (foundTasks.isEmpty()) {
+                return NO_MATCHES_MESSAGE;
+            }
+            return formatPage(foundTasks, CLOSE_MATCHES_HEADER, fullCommand);
         } catch (IllegalArgumentException e) {
             return ERROR_PREFIX + e.getMessage();
         }
     }
 
+    private String addTask(Task newTask, String fullCommand) {
+        taskList.addTask(newTask);
+        storage.saveTask(newTask);
+        journal.record(fullCommand, new PresenceChange(List.of(newTask), true));
+        return formatTaskAddedMessage(newTask);
+    }
+
     private String formatTaskAddedMessage(Task newTask) {
         return "GOLAZO!!!! I've added this task:\n  [" + newTask.getType() + "]["
             + newTask.getCompletion() + "] " + newTask.getName()
@@ -231,17 +521,11 @@ public class Pichu {
             + " task(s) in the list.";
     }
 
-    private String formatFindResults(ArrayList<Task> foundTasks) {
+    private String formatFindResults(ArrayList<Task> foundTasks, String fullCommand) {
         if (foundTasks.isEmpty()) {
             return NO_MATCHES_MESSAGE;
         }
-
-        StringBuilder sb = new StringBuilder(MATCHING_TASKS_HEADER);
-        for (int i = 0; i < foundTasks.size(); i++) {
-            Task task = foundTasks.get(i);
-            sb.append(formatTaskForDisplay(task, i + 1)).append("\n");
-        }
-        return sb.toString().trim();
+        return formatPage(foundTasks, MATCHING_TASKS_HEADER, fullCommand);
     }
 
     private String getTaskTimeInfo(Task task) {
@@ -254,6 +538,97 @@ public class Pichu {
         return "";
     }
 
+    private String handleUndoCommand() {
+        String command = journal.undo();
+        return command == null ? NOTHING_TO_UNDO_MESSAGE : "SUIII! I've undone: " + command;
+    }
+
+    private String handleRedoCommand() {
+        String command = journal.redo();
+        return command == null ? NOTHING_TO_REDO_MESSAGE : "SUIII! I've redone: " + command;
+    }
+
+    /**
+     * Tasks that were added or removed, which are removed or put back to undo it. A single
+     * task is saved on its own like the command that changed it, and several tasks by
+     * saving the list once.
+     */
+    private class PresenceChange implements ChangeJournal.Change {
+        private final List<Task> tasks;
+        private final boolean isAdded;
+
+        PresenceChange(List<Task> tasks, boolean isAdded) {
+            this.tasks = tasks;
+            this.isAdded = isAdded;
+        }
+
+        @Override
+        public void undo() {
+            apply(!isAdded);
+        }
+
+        @Override
+        public void redo() {
+            apply(isAdded);
+        }
+
+        private void apply(boolean isAdding) {
+            if (tasks.size() == 1) {
+                Task task = tasks.get(0);
+                if (isAdding) {
+                    storage.insertTask(taskList.insertTask(task), task, taskList::getTasks);
+                } else {
+                    storage.deleteTask(taskList.deleteTaskById(task.getId()), taskList::getTasks);
+                    storage.saveNextId(taskList.getNextId());
+                }
+                return;
+            }
+            if (isAdding) {
+                taskList.insertTasks(tasks);
+            } else {
+                taskList.deleteTasks(tasks);
+                storage.saveNextId(taskList.getNextId());
+            }
+            storage.saveAllTasks(taskList.getTasks());
+        }
+    }
+
+    /**
+     * Tasks that were marked as done or not done, holding only the tasks whose state the
+     * command changed so that undoing it leaves the others as they were.
+     */
+    private class CompletionChange implements ChangeJournal.Change {
+        private final List<Task> tasks;
+        private final boolean isCompleted;
+
+        CompletionChange(List<Task> tasks, boolean isCompleted) {
+            this.tasks = tasks;
+            this.isCompleted = isCompleted;
+        }
+
+        @Override
+        public void undo() {
+            apply(!isCompleted);
+        }
+
+        @Override
+        public void redo() {
+            apply(isCompleted);
+        }
+
+        private void apply(boolean isCompleting) {
+            if (tasks.size() == 1) {
+                Task task = tasks.get(0);
+                int index = taskList.indexOfId(task.getId());
+                taskList.setCompleted(tasks, isCompleting);
+                storage.updateTask(index, task, taskList::getTasks);
+            } else if (!tasks.isEmpty()) {
+                taskList.setCompleted(tasks, isCompleting);
+                storage.saveAllTasks(taskList.getTasks());
+            }
+        }
+    }
+
 //    public static void main(String[] args) {
 //    }
 }
@@ -0,0 +1,90 @@
+package pichu.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import pichu.parser.Parser;
+
+/**
+ * Suggests ways to finish the word being typed at the end of a command.
+ *
+ * <p>The first word is completed from the command words, a word starting with {@code #}
+ * from the tags in use, and the other words of commands that name or find tasks from the
+ * words of task names. Every lookup goes through a {@link PrefixTrie}, so it takes the
+ * same few microseconds however long the list is.
+ */
+public class Autocompleter {
+    /** The most suggestions given for one input. */
+    public static final int MAX_SUGGESTIONS = 8;
+
+    private static final String TAG_PREFIX = "#";
+    private static final String TAG_COMMAND = "tag";
+    private static final List<String> NAME_COMMANDS = List.of("todo", "deadline", "event", "find", "find~", "query");
+    private static final PrefixTrie COMMAND_WORDS = new PrefixTrie();
+
+    static {
+        for (String command : Parser.getCommandWords()) {
+            COMMAND_WORDS.add(command);
+        }
+    }
+
+    private final TaskList taskList;
+
+    /**
+     * Creates an autocompleter for the tasks and tags of a list.
+     *
+     * @param taskList the list, whose changes show in later suggestions
+     */
+    public Autocompleter(TaskList taskList) {
+        this.taskList = taskList;
+    }
+
+    /**
+     * Suggests inputs that finish the last word of the given input.
+     *
+     * @param input the input typed so far
+     * @return the input with its last word finished, up to {@link #MAX_SUGGESTIONS} of
+     *     them, or none if there is nothing to finish
+     */
+    public List<String> suggest(String input) {
+        int wordStart = input.lastIndexOf(' ') + 1;
+        String word = input.substring(wordStart);
+        String firstWord = input.trim().split(" ", 2)[0].toLowerCase();
+        List<String> completions;
+        if (word.isEmpty()) {
+            return List.of();
+        } else if (wordStart == 0) {
+            completions = COMMAND_WORDS.complete(word.toLowerCase(), MAX_SUGGESTIONS);
+        } else if (word.startsWith(TAG_PREFIX)) {
+            completions = new ArrayList<>();
+            for (String tag : taskList.completeTag(word.substring(TAG_PREFIX.length()), MAX_SUGGESTIONS)) {
+                completions.add(TAG_PREFIX + tag);
+            }
+        } else if (firstWord.equals(TAG_COMMAND)) {
+            completions = taskList.completeTag(word, MAX_SUGGESTIONS);
+        } else if (NAME_COMMANDS.contains(firstWord) && isNameWord(word)) {
+            completions = taskList.completeWord(word, MAX_SUGGESTIONS);
+        } else {
+            return List.of();
+        }
+
+        List<String> suggestions = new ArrayList<>();
+        for (String completion : completions) {
+            // Keeps the case of the letters already typed
+            String finished = word + completion.substring(word.length());
+            if (!finished.equals(word)) {
+                suggestions.add(input.substring(0, wordStart) + finished);
+            }
+        }
+        return suggestions;
+    }
+
+    private static boolean isNameWord(String word) {
+        for (int i = 0; i < word.length(); i++) {
+            if (!Character.isLetterOrDigit(word.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
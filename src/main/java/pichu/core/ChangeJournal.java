@@ -0,0 +1,119 @@
+package pichu.core;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Bounded history of the changes made to the task list, for undo and redo.
+ *
+ * <p>Each entry holds only what its change needs to reverse itself, such as the tasks it
+ * affected, never a copy of the list, so an entry for a single-task command takes the
+ * same small space however long the list is. Recording a new change drops the changes
+ * that were undone, and the oldest entries are dropped once the journal is full.
+ */
+public class ChangeJournal {
+    /** The number of changes kept by default. */
+    public static final int DEFAULT_CAPACITY = 100;
+
+    private final int capacity;
+    private final Deque<Entry> undoable = new ArrayDeque<>();
+    private final Deque<Entry> redoable = new ArrayDeque<>();
+
+    /**
+     * A change that knows how to reverse and repeat itself, including saving the result.
+     */
+    public interface Change {
+        /**
+         * Reverses the change.
+         */
+        void undo();
+
+        /**
+         * Makes the change again after it was undone.
+         */
+        void redo();
+    }
+
+    private static class Entry {
+        private final String command;
+        private final Change change;
+
+        Entry(String command, Change change) {
+            this.command = command;
+            this.change = change;
+        }
+    }
+
+    public ChangeJournal() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a journal that keeps the given number of changes.
+     *
+     * @param capacity the maximum number of changes that can be undone
+     */
+    public ChangeJournal(int capacity) {
+        assert capacity > 0 : "The journal must keep at least one change";
+        this.capacity = capacity;
+    }
+
+    /**
+     * Records a change that was just made.
+     *
+     * @param command the command that made the change, to tell the user what was undone
+     * @param change the change
+     */
+    public void record(String command, Change change) {
+        redoable.clear();
+        undoable.push(new Entry(command, change));
+        if (undoable.size() > capacity) {
+            undoable.removeLast();
+        }
+    }
+
+    /**
+     * Undoes the latest change that was not undone yet.
+     *
+     * @return the command that made the change, or null if there is nothing to undo
+     */
+    public String undo() {
+        Entry entry = undoable.poll();
+        if (entry == null) {
+            return null;
+        }
+        entry.change.undo();
+        redoable.push(entry);
+        return entry.command;
+    }
+
+    /**
+     * Makes the latest undone change again.
+     *
+     * @return the command that made the change, or null if there is nothing to redo
+     */
+    public String redo() {
+        Entry entry = redoable.poll();
+        if (entry == null) {
+            return null;
+        }
+        entry.change.redo();
+        undoable.push(entry);
+        return entry.command;
+    }
+
+    /**
+     * Forgets every change, e.g. after the list was replaced by one saved elsewhere.
+     */
+    public void clear() {
+        undoable.clear();
+        redoable.clear();
+    }
+
+    /**
+     * Returns the number of changes that can be undone.
+     */
+    public int size() {
+        return undoable.size();
+    }
+}
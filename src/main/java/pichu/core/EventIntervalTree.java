@@ -0,0 +1,184 @@
+package pichu.core;
+
+import java.util.List;
+
+import pichu.task.Task;
+
+/**
+ * Interval tree over the time spans of events.
+ *
+ * <p>The tree is a treap ordered by start time and then ID. Every node also keeps the
+ * latest end time in its subtree, so an overlap query can skip every subtree whose spans
+ * all end before the query starts, and every right subtree that starts after it ends.
+ * Priorities are derived from the task ID, which keeps the tree balanced in expectation
+ * without a random number generator.
+ */
+class EventIntervalTree {
+    private Node root;
+    private int size;
+
+    private static class Node {
+        private final long start;
+        private final long end;
+        private final Task task;
+        private final int priority;
+        private long maxEnd;
+        private Node left;
+        private Node right;
+
+        Node(long start, long end, Task task) {
+            this.start = start;
+            this.end = end;
+            this.task = task;
+            int hash = task.getId() * 0x9E3779B9;
+            this.priority = hash ^ (hash >>> 16);
+            this.maxEnd = end;
+        }
+    }
+
+    /**
+     * Adds the span of an event.
+     *
+     * @param start the start time in epoch seconds
+     * @param end the end time in epoch seconds, not before the start
+     * @param task the event, which must have an ID
+     */
+    void add(long start, long end, Task task) {
+        root = insert(root, new Node(start, end, task));
+        size++;
+    }
+
+    /**
+     * Removes the span of an event.
+     *
+     * @param start the start time the event was added with
+     * @param task the event
+     */
+    void remove(long start, Task task) {
+        int before = size;
+        root = delete(root, start, task.getId());
+        assert size < before : "Only added events can be removed";
+    }
+
+    void clear() {
+        root = null;
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Collects the events whose span shares at least one moment with the given span.
+     *
+     * @param from the start of the span in epoch seconds
+     * @param to the end of the span in epoch seconds
+     * @param sink receives the events ordered by start time
+     */
+    void findOverlapping(long from, long to, List<Task> sink) {
+        collect(root, from, to, sink);
+    }
+
+    private static void collect(Node node, long from, long to, List<Task> sink) {
+        if (node == null || node.maxEnd < from) {
+            return;
+        }
+        collect(node.left, from, to, sink);
+        if (node.start > to) {
+            // Everything to the right starts even later
+            return;
+        }
+        if (node.end >= from) {
+            sink.add(node.task);
+        }
+        collect(node.right, from, to, sink);
+    }
+
+    private static int compare(long start, int id, Node node) {
+        int byStart = Long.compare(start, node.start);
+        return byStart != 0 ? byStart : Integer.compare(id, node.task.getId());
+    }
+
+    private static Node insert(Node node, Node added) {
+        if (node == null) {
+            return added;
+        }
+        if (compare(added.start, added.task.getId(), node) < 0) {
+            node.left = insert(node.left, added);
+            if (node.left.priority > node.priority) {
+                node = rotateRight(node);
+            }
+        } else {
+            node.right = insert(node.right, added);
+            if (node.right.priority > node.priority) {
+                node = rotateLeft(node);
+            }
+        }
+        update(node);
+        return node;
+    }
+
+    private Node delete(Node node, long start, int id) {
+        if (node == null) {
+            return null;
+        }
+        int comparison = compare(start, id, node);
+        if (comparison < 0) {
+            node.left = delete(node.left, start, id);
+        } else if (comparison > 0) {
+            node.right = delete(node.right, start, id);
+        } else {
+            size--;
+            return merge(node.left, node.right);
+        }
+        update(node);
+        return node;
+    }
+
+    private static Node merge(Node first, Node second) {
+        if (first == null) {
+            return second;
+        }
+        if (second == null) {
+            return first;
+        }
+        if (first.priority > second.priority) {
+            first.right = merge(first.right, second);
+            update(first);
+            return first;
+        }
+        second.left = merge(first, second.left);
+        update(second);
+        return second;
+    }
+
+    private static Node rotateRight(Node node) {
+        Node left = node.left;
+        node.left = left.right;
+        left.right = node;
+        update(node);
+        update(left);
+        return left;
+    }
+
+    private static Node rotateLeft(Node node) {
+        Node right = node.right;
+        node.right = right.left;
+        right.left = node;
+        update(node);
+        update(right);
+        return right;
+    }
+
+    private static void update(Node node) {
+        long maxEnd = node.end;
+        if (node.left != null) {
+            maxEnd = Math.max(maxEnd, node.left.maxEnd);
+        }
+        if (node.right != null) {
+            maxEnd = Math.max(maxEnd, node.right.maxEnd);
+        }
+        node.maxEnd = maxEnd;
+    }
+}
@@ -0,0 +1,183 @@
+package pichu.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Set of words that lists the words starting with a prefix, for autocompletion.
+ *
+ * <p>Each node is one letter, and lives at the same position of a few parallel arrays
+ * instead of being an object, so millions of words fit in a few bytes per letter. The
+ * children of a node form a list sorted by letter. Every node counts the words below it,
+ * so completion skips the branches whose words were all removed, and listing k words of
+ * at most L letters visits at most k times L nodes however many words there are.
+ *
+ * <p>A word can be added several times, and stays until it was removed as many times.
+ */
+class PrefixTrie {
+    private static final int ROOT = 0;
+    private static final int NONE = -1;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private char[] letters = new char[INITIAL_CAPACITY];
+    private int[] firstChildren = new int[INITIAL_CAPACITY];
+    private int[] nextSiblings = new int[INITIAL_CAPACITY];
+    // Times the word ending at a node was added, and the sum of these over its subtree
+    private int[] counts = new int[INITIAL_CAPACITY];
+    private int[] wordsBelow = new int[INITIAL_CAPACITY];
+    private int nodeCount;
+    private int size;
+
+    PrefixTrie() {
+        clear();
+    }
+
+    /**
+     * Adds a word, or one more use of a word that is already in the trie.
+     *
+     * @param word the word
+     */
+    void add(String word) {
+        int node = ROOT;
+        wordsBelow[ROOT]++;
+        for (int i = 0; i < word.length(); i++) {
+            node = findOrAddChild(node, word.charAt(i));
+            wordsBelow[node]++;
+        }
+        if (counts[node]++ == 0) {
+            size++;
+        }
+    }
+
+    /**
+     * Removes one use of a word. The word stays until every use was removed.
+     *
+     * @param word the word
+     */
+    void remove(String word) {
+        int node = find(word);
+        if (node == NONE || counts[node] == 0) {
+            return;
+        }
+        if (--counts[node] == 0) {
+            size--;
+        }
+        node = ROOT;
+        wordsBelow[ROOT]--;
+        for (int i = 0; i < word.length(); i++) {
+            node = findChild(node, word.charAt(i));
+            wordsBelow[node]--;
+        }
+    }
+
+    /**
+     * Returns whether a word is in the trie.
+     *
+     * @param word the word
+     * @return true if the word was added more times than it was removed
+     */
+    boolean contains(String word) {
+        int node = find(word);
+        return node != NONE && counts[node] > 0;
+    }
+
+    /**
+     * Lists the words that start with a prefix, in alphabetical order.
+     *
+     * @param prefix the prefix, which is listed too if it is a word
+     * @param limit the most words to list
+     * @return up to {@code limit} words
+     */
+    List<String> complete(String prefix, int limit) {
+        List<String> words = new ArrayList<>();
+        int node = find(prefix);
+        if (node != NONE && limit > 0) {
+            collect(node, new StringBuilder(prefix), limit, words);
+        }
+        return words;
+    }
+
+    private void collect(int node, StringBuilder word, int limit, List<String> words) {
+        if (counts[node] > 0) {
+            words.add(word.toString());
+        }
+        for (int child = firstChildren[node]; child != NONE && words.size() < limit; child = nextSiblings[child]) {
+            if (wordsBelow[child] > 0) {
+                word.append(letters[child]);
+                collect(child, word, limit, words);
+                word.setLength(word.length() - 1);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of distinct words.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Removes all words.
+     */
+    void clear() {
+        nodeCount = 0;
+        size = 0;
+        newNode('\0');
+    }
+
+    private int find(String word) {
+        int node = ROOT;
+        for (int i = 0; i < word.length() && node != NONE; i++) {
+            node = findChild(node, word.charAt(i));
+        }
+        return node;
+    }
+
+    private int findChild(int node, char letter) {
+        int child = firstChildren[node];
+        while (child != NONE && letters[child] < letter) {
+            child = nextSiblings[child];
+        }
+        return child != NONE && letters[child] == letter ? child : NONE;
+    }
+
+    private int findOrAddChild(int node, char letter) {
+        int previous = NONE;
+        int child = firstChildren[node];
+        while (child != NONE && letters[child] < letter) {
+            previous = child;
+            child = nextSiblings[child];
+        }
+        if (child != NONE && letters[child] == letter) {
+            return child;
+        }
+        int added = newNode(letter);
+        nextSiblings[added] = child;
+        if (previous == NONE) {
+            firstChildren[node] = added;
+        } else {
+            nextSiblings[previous] = added;
+        }
+        return added;
+    }
+
+    private int newNode(char letter) {
+        if (nodeCount == letters.length) {
+            int capacity = nodeCount * 2;
+            letters = Arrays.copyOf(letters, capacity);
+            firstChildren = Arrays.copyOf(firstChildren, capacity);
+            nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            wordsBelow = Arrays.copyOf(wordsBelow, capacity);
+        }
+        int node = nodeCount++;
+        letters[node] = letter;
+        firstChildren[node] = NONE;
+        nextSiblings[node] = NONE;
+        counts[node] = 0;
+        wordsBelow[node] = 0;
+        return node;
+    }
+}
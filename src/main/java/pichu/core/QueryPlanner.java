@@ -0,0 +1,190 @@
+package pichu.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import pichu.task.Task;
+
+/**
+ * Runs a {@link TaskQuery} by starting from the cheapest way to narrow down the tasks.
+ *
+ * <p>Each condition an index can answer offers an access path: the tag index for tags,
+ * the word index for words and the deadline index for a due range. Every path estimates
+ * how many tasks it would return, which is exact for tags, an upper bound for words and
+ * an even spread for due dates. The path with the smallest estimate is taken, or a scan
+ * of the whole list if no index applies, and only the conditions that path does not
+ * answer are checked on the tasks it returns.
+ */
+class QueryPlanner {
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    private final TaskVector tasks;
+    private final TaskIdIndex idIndex;
+    private final TaskTextIndex textIndex;
+    private final TagIndex tagIndex;
+    private final TemporalIndex temporalIndex;
+
+    // The conditions that an index can answer
+    private enum Condition {
+        TAGS, WORDS, DUE
+    }
+
+    /**
+     * One way of finding the tasks that may match.
+     */
+    private static class AccessPath {
+        private final String description;
+        private final int estimate;
+        private final Condition answered;
+        // Sorted IDs of the tasks found, or null to scan the whole list
+        private final Supplier<int[]> finder;
+
+        AccessPath(String description, int estimate, Condition answered, Supplier<int[]> finder) {
+            this.description = description;
+            this.estimate = estimate;
+            this.answered = answered;
+            this.finder = finder;
+        }
+    }
+
+    QueryPlanner(TaskVector tasks, TaskIdIndex idIndex, TaskTextIndex textIndex, TagIndex tagIndex,
+            TemporalIndex temporalIndex) {
+        this.tasks = tasks;
+        this.idIndex = idIndex;
+        this.textIndex = textIndex;
+        this.tagIndex = tagIndex;
+        this.temporalIndex = temporalIndex;
+    }
+
+    /**
+     * Plans and runs a query.
+     *
+     * @param query the query
+     * @return the matching tasks in list order, and how they were found
+     */
+    QueryResult run(TaskQuery query) {
+        long start = System.nanoTime();
+        List<AccessPath> paths = getAccessPaths(query);
+        AccessPath chosen = paths.get(0);
+        for (AccessPath path : paths) {
+            if (path.estimate < chosen.estimate) {
+                chosen = path;
+            }
+        }
+        List<String> checkDescriptions = new ArrayList<>();
+        Predicate<Task> check = getCheck(query, chosen.answered, checkDescriptions);
+        long planned = System.nanoTime();
+
+        ArrayList<Task> found = new ArrayList<>();
+        int examined;
+        if (chosen.finder == null) {
+            for (Task task : tasks) {
+                if (check.test(task)) {
+                    found.add(task);
+                }
+            }
+            examined = tasks.size();
+        } else {
+            int[] ids = chosen.finder.get();
+            for (int id : ids) {
+                Task task = idIndex.get(id);
+                if (check.test(task)) {
+                    found.add(task);
+                }
+            }
+            examined = ids.length;
+        }
+        long finished = System.nanoTime();
+
+        StringBuilder explanation = new StringBuilder();
+        explanation.append("Plan: ").append(describe(chosen)).append('\n');
+        explanation.append("Then check: ")
+                .append(checkDescriptions.isEmpty() ? "nothing else" : String.join(", ", checkDescriptions))
+                .append('\n');
+        for (AccessPath path : paths) {
+            if (path != chosen) {
+                explanation.append("Not chosen: ").append(describe(path)).append('\n');
+            }
+        }
+        explanation.append(String.format("Examined %d task(s) and found %d in %.3f ms, after planning for %.3f ms.",
+                examined, found.size(), (finished - planned) / NANOS_PER_MILLI, (planned - start) / NANOS_PER_MILLI));
+        return new QueryResult(found, explanation.toString());
+    }
+
+    /**
+     * Returns the index paths that apply to the query, followed by a scan of the whole list.
+     */
+    private List<AccessPath> getAccessPaths(TaskQuery query) {
+        List<AccessPath> paths = new ArrayList<>();
+        if (!query.getTags().isEmpty()) {
+            int estimate = Integer.MAX_VALUE;
+            for (String tag : query.getTags()) {
+                estimate = Math.min(estimate, tagIndex.get(tag).cardinality());
+            }
+            paths.add(new AccessPath("tag index on " + query.describeTags(), estimate, Condition.TAGS, () -> {
+                TaskBitmap ids = null;
+                for (String tag : query.getTags()) {
+                    ids = ids == null ? tagIndex.get(tag) : TaskBitmap.and(ids, tagIndex.get(tag));
+                }
+                return ids.toArray();
+            }));
+        }
+        if (!query.getWords().isEmpty()) {
+            paths.add(new AccessPath("word index on " + query.describeWords(), textIndex.estimate(query.getWords()),
+                    Condition.WORDS, () -> textIndex.find(query.getWords(), false)));
+        }
+        if (query.hasDueRange()) {
+            int estimate = temporalIndex.estimateDueBetween(query.getDueFrom(), query.getDueTo());
+            paths.add(new AccessPath("deadline index on " + query.describeDueRange(), estimate, Condition.DUE, () -> {
+                List<Task> due = temporalIndex.findDueBetween(query.getDueFrom(), query.getDueTo());
+                int[] ids = new int[due.size()];
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = due.get(i).getId();
+                }
+                Arrays.sort(ids);
+                return ids;
+            }));
+        }
+        paths.add(new AccessPath("scan of the whole list", tasks.size(), null, null));
+        return paths;
+    }
+
+    /**
+     * Combines the conditions that the chosen path does not answer into one check.
+     */
+    private static Predicate<Task> getCheck(TaskQuery query, Condition answered, List<String> descriptions) {
+        Predicate<Task> check = task -> true;
+        if (query.getType() != null) {
+            check = check.and(query::matchesType);
+            descriptions.add(query.describeType());
+        }
+        if (query.getCompleted() != null) {
+            check = check.and(query::matchesCompletion);
+            descriptions.add(query.describeCompletion());
+        }
+        if (!query.getTags().isEmpty() && answered != Condition.TAGS) {
+            check = check.and(query::matchesTags);
+            descriptions.add(query.describeTags());
+        }
+        if (query.hasDueRange() && answered != Condition.DUE) {
+            check = check.and(query::matchesDueRange);
+            descriptions.add(query.describeDueRange());
+        }
+        // Words are checked last because splitting the name into words is the most work
+        if (!query.getWords().isEmpty() && answered != Condition.WORDS) {
+            check = check.and(query::matchesWords);
+            descriptions.add(query.describeWords());
+        }
+        return check;
+    }
+
+    private static String describe(AccessPath path) {
+        if (path.finder == null) {
+            return path.description + " (" + path.estimate + " task(s))";
+        }
+        return path.description + " (about " + path.estimate + " task(s))";
+    }
+}
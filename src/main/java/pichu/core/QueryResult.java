@@ -0,0 +1,37 @@
+package pichu.core;
+
+import java.util.ArrayList;
+
+import pichu.task.Task;
+
+/**
+ * The tasks found by a {@link TaskQuery}, and how they were found.
+ */
+public class QueryResult {
+    private final ArrayList<Task> tasks;
+    private final String explanation;
+
+    QueryResult(ArrayList<Task> tasks, String explanation) {
+        this.tasks = tasks;
+        this.explanation = explanation;
+    }
+
+    /**
+     * Returns the matching tasks.
+     *
+     * @return the tasks in list order
+     */
+    public ArrayList<Task> getTasks() {
+        return tasks;
+    }
+
+    /**
+     * Returns the plan that was chosen, the plans that were not, and how long planning
+     * and running the query took.
+     *
+     * @return the explanation, one line per step
+     */
+    public String getExplanation() {
+        return explanation;
+    }
+}
@@ -0,0 +1,115 @@
+package pichu.core;
+
+import java.util.Arrays;
+import java.util.List;
+
+import pichu.task.TagDictionary;
+import pichu.task.TagListener;
+import pichu.task.Task;
+
+/**
+ * Keeps a {@link TaskBitmap} of task IDs for every tag, in an array indexed by the
+ * {@link TagDictionary} ID of the tag.
+ *
+ * <p>The index is told about tags added to or removed from a task after it joined the
+ * list through its {@link TagListener} methods. It also keeps the IDs of all tasks, which
+ * negated queries subtract from.
+ */
+class TagIndex implements TagListener {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private TaskBitmap[] bitmaps = new TaskBitmap[INITIAL_CAPACITY];
+    private TaskBitmap allIds = new TaskBitmap();
+    // The tags that at least one task has
+    private final PrefixTrie completions = new PrefixTrie();
+
+    /**
+     * Indexes a task.
+     *
+     * @param task the task, which must have an ID
+     */
+    void add(Task task) {
+        allIds.add(task.getId());
+        for (int tagId : task.getTagIds()) {
+            tagAdded(task, tagId);
+        }
+    }
+
+    /**
+     * Removes a task from the index.
+     *
+     * @param task the task that was added before
+     */
+    void remove(Task task) {
+        allIds.remove(task.getId());
+        for (int tagId : task.getTagIds()) {
+            tagRemoved(task, tagId);
+        }
+    }
+
+    /**
+     * Removes all tasks.
+     */
+    void clear() {
+        bitmaps = new TaskBitmap[INITIAL_CAPACITY];
+        allIds = new TaskBitmap();
+        completions.clear();
+    }
+
+    @Override
+    public void tagAdded(Task task, int tagId) {
+        if (tagId >= bitmaps.length) {
+            bitmaps = Arrays.copyOf(bitmaps, Math.max(bitmaps.length * 2, tagId + 1));
+        }
+        if (bitmaps[tagId] == null) {
+            bitmaps[tagId] = new TaskBitmap();
+            completions.add(TagDictionary.nameOf(tagId));
+        }
+        bitmaps[tagId].add(task.getId());
+    }
+
+    @Override
+    public void tagRemoved(Task task, int tagId) {
+        TaskBitmap ids = getBitmap(tagId);
+        if (ids != null) {
+            ids.remove(task.getId());
+            if (ids.cardinality() == 0) {
+                bitmaps[tagId] = null;
+                completions.remove(TagDictionary.nameOf(tagId));
+            }
+        }
+    }
+
+    /**
+     * Returns the IDs of the tasks with a tag. The result must not be modified.
+     *
+     * @param tag the tag (without # symbol)
+     * @return the IDs, which are empty for an unknown tag
+     */
+    TaskBitmap get(String tag) {
+        TaskBitmap ids = getBitmap(TagDictionary.find(tag));
+        return ids == null ? new TaskBitmap() : ids;
+    }
+
+    private TaskBitmap getBitmap(int tagId) {
+        return tagId >= 0 && tagId < bitmaps.length ? bitmaps[tagId] : null;
+    }
+
+    /**
+     * Lists the tags that start with a prefix and that at least one task has.
+     *
+     * @param prefix the prefix (without # symbol)
+     * @param limit the most tags to list
+     * @return up to {@code limit} tags in alphabetical order
+     */
+    List<String> complete(String prefix, int limit) {
+        return completions.complete(prefix, limit);
+    }
+
+    /**
+     * Returns the IDs of all tasks. The result must not be modified.
+     */
+    TaskBitmap getAll() {
+        return allIds;
+    }
+}
@@ -0,0 +1,141 @@
+package pichu.core;
+
+/**
+ * A boolean combination of tags, such as {@code #work & #urgent & !#blocked}.
+ *
+ * <p>{@code &} binds tighter than {@code |}, {@code !} negates the tag or parenthesised
+ * query after it, and the {@code #} before a tag is optional. A query is evaluated on a
+ * {@link TagIndex} with one bitmap operation per operator.
+ */
+class TagQuery {
+    private static final char AND = '&';
+    private static final char OR = '|';
+    private static final char NOT = '!';
+    private static final char OPEN = '(';
+    private static final char CLOSE = ')';
+    private static final char TAG_PREFIX = '#';
+
+    private final Node root;
+
+    @FunctionalInterface
+    private interface Node {
+        TaskBitmap evaluate(TagIndex index);
+    }
+
+    private TagQuery(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Parses a query.
+     *
+     * @param query the query text
+     * @return the parsed query
+     * @throws IllegalArgumentException if the query is malformed
+     */
+    static TagQuery parse(String query) throws IllegalArgumentException {
+        QueryParser parser = new QueryParser(query);
+        Node root = parser.parseOr();
+        parser.skipSpaces();
+        if (parser.position < query.length()) {
+            throw new IllegalArgumentException("Unexpected '" + query.charAt(parser.position)
+                    + "' in tag query. Combine tags with &, | and !");
+        }
+        return new TagQuery(root);
+    }
+
+    /**
+     * Returns the IDs of the tasks that match the query.
+     *
+     * @param index the tag index to evaluate on
+     * @return the matching IDs, which must not be modified
+     */
+    TaskBitmap evaluate(TagIndex index) {
+        return root.evaluate(index);
+    }
+
+    /**
+     * Recursive descent parser with one method per precedence level.
+     */
+    private static class QueryParser {
+        private final String query;
+        private int position;
+
+        QueryParser(String query) {
+            this.query = query;
+        }
+
+        Node parseOr() {
+            Node left = parseAnd();
+            while (accept(OR)) {
+                Node first = left;
+                Node second = parseAnd();
+                left = index -> TaskBitmap.or(first.evaluate(index), second.evaluate(index));
+            }
+            return left;
+        }
+
+        Node parseAnd() {
+            Node left = parseNot();
+            while (accept(AND)) {
+                Node first = left;
+                Node second = parseNot();
+                left = index -> TaskBitmap.and(first.evaluate(index), second.evaluate(index));
+            }
+            return left;
+        }
+
+        Node parseNot() {
+            if (accept(NOT)) {
+                Node negated = parseNot();
+                return index -> TaskBitmap.andNot(index.getAll(), negated.evaluate(index));
+            }
+            if (accept(OPEN)) {
+                Node inner = parseOr();
+                if (!accept(CLOSE)) {
+                    throw new IllegalArgumentException("Missing ')' in tag query.");
+                }
+                return inner;
+            }
+            String tag = parseTag();
+            return index -> index.get(tag);
+        }
+
+        String parseTag() {
+            skipSpaces();
+            if (position < query.length() && query.charAt(position) == TAG_PREFIX) {
+                position++;
+            }
+            int start = position;
+            while (position < query.length() && isTagCharacter(query.charAt(position))) {
+                position++;
+            }
+            if (start == position) {
+                throw new IllegalArgumentException("Expected a tag at position " + (start + 1) + " of the tag query.");
+            }
+            return query.substring(start, position);
+        }
+
+        /**
+         * Tags are the word characters that the task parser accepts after a '#'.
+         */
+        private static boolean isTagCharacter(char c) {
+            return c == '_' || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+        }
+
+        boolean accept(char symbol) {
+            skipSpaces();
+            if (position < query.length() && query.charAt(position) == symbol) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        void skipSpaces() {
+            while (position < query.length() && Character.isWhitespace(query.charAt(position))) {
+                position++;
+            }
+        }
+    }
+}
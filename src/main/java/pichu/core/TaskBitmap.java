@@ -0,0 +1,406 @@
+package pichu.core;
+
+import java.util.Arrays;
+
+/**
+ * Compressed set of task IDs.
+ *
+ * <p>IDs are split by their upper 16 bits into blocks of 65536 IDs. A block with few IDs
+ * keeps them in a sorted array of their lower 16 bits, two bytes each, and a block with
+ * many keeps a fixed bitset of 8 KB. A block switches at 4096 IDs, where both take the
+ * same space. Set operations work block by block and pick the cheapest way to combine
+ * each pair of blocks, so intersecting large sets costs a few thousand word operations.
+ */
+class TaskBitmap {
+    private static final int ARRAY_LIMIT = 4096;
+    private static final int BITSET_WORDS = 1024;
+    private static final int INITIAL_BLOCKS = 4;
+    private static final int INITIAL_ARRAY_CAPACITY = 4;
+
+    private int[] keys = new int[INITIAL_BLOCKS];
+    private Block[] blocks = new Block[INITIAL_BLOCKS];
+    private int blockCount;
+
+    /**
+     * The IDs that share their upper 16 bits, as either a sorted array or a bitset.
+     */
+    private static class Block {
+        private char[] values;
+        private long[] bits;
+        private int cardinality;
+
+        static Block ofArray(char[] values, int cardinality) {
+            Block block = new Block();
+            block.values = values;
+            block.cardinality = cardinality;
+            return block;
+        }
+
+        /**
+         * Wraps a bitset, turning it into an array if it is small enough.
+         */
+        static Block ofBits(long[] bits) {
+            int cardinality = 0;
+            for (long word : bits) {
+                cardinality += Long.bitCount(word);
+            }
+            Block block = new Block();
+            block.cardinality = cardinality;
+            if (cardinality > ARRAY_LIMIT) {
+                block.bits = bits;
+                return block;
+            }
+            block.values = new char[cardinality];
+            int length = 0;
+            for (int i = 0; i < bits.length; i++) {
+                for (long word = bits[i]; word != 0; word &= word - 1) {
+                    block.values[length++] = (char) (i * Long.SIZE + Long.numberOfTrailingZeros(word));
+                }
+            }
+            return block;
+        }
+
+        boolean contains(char value) {
+            if (bits != null) {
+                return (bits[value >>> 6] & (1L << value)) != 0;
+            }
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        void add(char value) {
+            if (bits == null && cardinality == ARRAY_LIMIT && !contains(value)) {
+                bits = toBits();
+                values = null;
+            }
+            if (bits != null) {
+                long mask = 1L << value;
+                if ((bits[value >>> 6] & mask) == 0) {
+                    bits[value >>> 6] |= mask;
+                    cardinality++;
+                }
+                return;
+            }
+            int position = Arrays.binarySearch(values, 0, cardinality, value);
+            if (position >= 0) {
+                return;
+            }
+            position = -position - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_LIMIT, cardinality * 2));
+            }
+            System.arraycopy(values, position, values, position + 1, cardinality - position);
+            values[position] = value;
+            cardinality++;
+        }
+
+        void remove(char value) {
+            if (bits == null) {
+                int position = Arrays.binarySearch(values, 0, cardinality, value);
+                if (position >= 0) {
+                    System.arraycopy(values, position + 1, values, position, cardinality - position - 1);
+                    cardinality--;
+                }
+                return;
+            }
+            long mask = 1L << value;
+            if ((bits[value >>> 6] & mask) != 0) {
+                bits[value >>> 6] &= ~mask;
+                cardinality--;
+                if (cardinality == ARRAY_LIMIT) {
+                    Block array = ofBits(bits);
+                    values = array.values;
+                    bits = null;
+                }
+            }
+        }
+
+        long[] toBits() {
+            if (bits != null) {
+                return bits.clone();
+            }
+            long[] result = new long[BITSET_WORDS];
+            for (int i = 0; i < cardinality; i++) {
+                result[values[i] >>> 6] |= 1L << values[i];
+            }
+            return result;
+        }
+
+        Block copy() {
+            return bits != null ? ofBits(bits.clone()) : ofArray(Arrays.copyOf(values, cardinality), cardinality);
+        }
+
+        static Block and(Block first, Block second) {
+            if (first.bits != null && second.bits != null) {
+                long[] result = new long[BITSET_WORDS];
+                for (int i = 0; i < BITSET_WORDS; i++) {
+                    result[i] = first.bits[i] & second.bits[i];
+                }
+                return ofBits(result);
+            }
+            if (first.bits != null) {
+                return and(second, first);
+            }
+            char[] result = new char[first.cardinality];
+            int length = 0;
+            if (second.bits != null) {
+                for (int i = 0; i < first.cardinality; i++) {
+                    if (second.contains(first.values[i])) {
+                        result[length++] = first.values[i];
+                    }
+                }
+                return ofArray(result, length);
+            }
+            int i = 0;
+            int j = 0;
+            while (i < first.cardinality && j < second.cardinality) {
+                if (first.values[i] < second.values[j]) {
+                    i++;
+                } else if (first.values[i] > second.values[j]) {
+                    j++;
+                } else {
+                    result[length++] = first.values[i];
+                    i++;
+                    j++;
+                }
+            }
+            return ofArray(result, length);
+        }
+
+        static Block or(Block first, Block second) {
+            if (first.bits == null && second.bits == null
+                    && first.cardinality + second.cardinality <= ARRAY_LIMIT) {
+                char[] result = new char[first.cardinality + second.cardinality];
+                int length = 0;
+                int i = 0;
+                int j = 0;
+                while (i < first.cardinality || j < second.cardinality) {
+                    if (j == second.cardinality
+                            || (i < first.cardinality && first.values[i] < second.values[j])) {
+                        result[length++] = first.values[i++];
+                    } else if (i == first.cardinality || first.values[i] > second.values[j]) {
+                        result[length++] = second.values[j++];
+                    } else {
+                        result[length++] = first.values[i];
+                        i++;
+                        j++;
+                    }
+                }
+                return ofArray(result, length);
+            }
+            long[] result = first.toBits();
+            if (second.bits != null) {
+                for (int i = 0; i < BITSET_WORDS; i++) {
+                    result[i] |= second.bits[i];
+                }
+            } else {
+                for (int i = 0; i < second.cardinality; i++) {
+                    result[second.values[i] >>> 6] |= 1L << second.values[i];
+                }
+            }
+            return ofBits(result);
+        }
+
+        static Block andNot(Block first, Block second) {
+            if (first.bits == null) {
+                char[] result = new char[first.cardinality];
+                int length = 0;
+                for (int i = 0; i < first.cardinality; i++) {
+                    if (!second.contains(first.values[i])) {
+                        result[length++] = first.values[i];
+                    }
+                }
+                return ofArray(result, length);
+            }
+            long[] result = first.bits.clone();
+            if (second.bits != null) {
+                for (int i = 0; i < BITSET_WORDS; i++) {
+                    result[i] &= ~second.bits[i];
+                }
+            } else {
+                for (int i = 0; i < second.cardinality; i++) {
+                    result[second.values[i] >>> 6] &= ~(1L << second.values[i]);
+                }
+            }
+            return ofBits(result);
+        }
+    }
+
+    /**
+     * Adds an ID.
+     *
+     * @param id a task ID, which must be positive
+     */
+    void add(int id) {
+        int position = findBlock(id >>> 16);
+        if (position < 0) {
+            position = -position - 1;
+            insertBlock(position, id >>> 16, Block.ofArray(new char[INITIAL_ARRAY_CAPACITY], 0));
+        }
+        blocks[position].add((char) id);
+    }
+
+    /**
+     * Removes an ID if it is in the set.
+     *
+     * @param id a task ID
+     */
+    void remove(int id) {
+        int position = findBlock(id >>> 16);
+        if (position < 0) {
+            return;
+        }
+        blocks[position].remove((char) id);
+        if (blocks[position].cardinality == 0) {
+            System.arraycopy(keys, position + 1, keys, position, blockCount - position - 1);
+            System.arraycopy(blocks, position + 1, blocks, position, blockCount - position - 1);
+            blocks[--blockCount] = null;
+        }
+    }
+
+    /**
+     * Returns whether an ID is in the set.
+     *
+     * @param id a task ID
+     * @return true if the set contains the ID
+     */
+    boolean contains(int id) {
+        int position = findBlock(id >>> 16);
+        return position >= 0 && blocks[position].contains((char) id);
+    }
+
+    /**
+     * Returns the number of IDs in the set.
+     */
+    int cardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < blockCount; i++) {
+            cardinality += blocks[i].cardinality;
+        }
+        return cardinality;
+    }
+
+    /**
+     * Returns the IDs in increasing order.
+     *
+     * @return a new array of the IDs
+     */
+    int[] toArray() {
+        int[] result = new int[cardinality()];
+        int length = 0;
+        for (int i = 0; i < blockCount; i++) {
+            int high = keys[i] << 16;
+            Block block = blocks[i];
+            if (block.bits == null) {
+                for (int j = 0; j < block.cardinality; j++) {
+                    result[length++] = high | block.values[j];
+                }
+                continue;
+            }
+            for (int j = 0; j < BITSET_WORDS; j++) {
+                for (long word = block.bits[j]; word != 0; word &= word - 1) {
+                    result[length++] = high | (j * Long.SIZE + Long.numberOfTrailingZeros(word));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a copy of this set.
+     */
+    TaskBitmap copy() {
+        TaskBitmap result = new TaskBitmap();
+        for (int i = 0; i < blockCount; i++) {
+            result.appendBlock(keys[i], blocks[i].copy());
+        }
+        return result;
+    }
+
+    /**
+     * Returns the IDs that are in both sets.
+     */
+    static TaskBitmap and(TaskBitmap first, TaskBitmap second) {
+        TaskBitmap result = new TaskBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < first.blockCount && j < second.blockCount) {
+            if (first.keys[i] < second.keys[j]) {
+                i++;
+            } else if (first.keys[i] > second.keys[j]) {
+                j++;
+            } else {
+                result.appendBlock(first.keys[i], Block.and(first.blocks[i], second.blocks[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the IDs that are in either set.
+     */
+    static TaskBitmap or(TaskBitmap first, TaskBitmap second) {
+        TaskBitmap result = new TaskBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < first.blockCount || j < second.blockCount) {
+            if (j == second.blockCount || (i < first.blockCount && first.keys[i] < second.keys[j])) {
+                result.appendBlock(first.keys[i], first.blocks[i].copy());
+                i++;
+            } else if (i == first.blockCount || first.keys[i] > second.keys[j]) {
+                result.appendBlock(second.keys[j], second.blocks[j].copy());
+                j++;
+            } else {
+                result.appendBlock(first.keys[i], Block.or(first.blocks[i], second.blocks[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the IDs that are in the first set but not in the second.
+     */
+    static TaskBitmap andNot(TaskBitmap first, TaskBitmap second) {
+        TaskBitmap result = new TaskBitmap();
+        int j = 0;
+        for (int i = 0; i < first.blockCount; i++) {
+            while (j < second.blockCount && second.keys[j] < first.keys[i]) {
+                j++;
+            }
+            if (j < second.blockCount && second.keys[j] == first.keys[i]) {
+                result.appendBlock(first.keys[i], Block.andNot(first.blocks[i], second.blocks[j]));
+            } else {
+                result.appendBlock(first.keys[i], first.blocks[i].copy());
+            }
+        }
+        return result;
+    }
+
+    private int findBlock(int key) {
+        return Arrays.binarySearch(keys, 0, blockCount, key);
+    }
+
+    private void insertBlock(int position, int key, Block block) {
+        if (blockCount == keys.length) {
+            keys = Arrays.copyOf(keys, blockCount * 2);
+            blocks = Arrays.copyOf(blocks, blockCount * 2);
+        }
+        System.arraycopy(keys, position, keys, position + 1, blockCount - position);
+        System.arraycopy(blocks, position, blocks, position + 1, blockCount - position);
+        keys[position] = key;
+        blocks[position] = block;
+        blockCount++;
+    }
+
+    /**
+     * Adds a block after all existing ones, dropping it if it is empty.
+     */
+    private void appendBlock(int key, Block block) {
+        if (block.cardinality > 0) {
+            insertBlock(blockCount, key, block);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package pichu.core;
+
+import java.util.Arrays;
+
+import pichu.task.Task;
+
+/**
+ * Maps task IDs to tasks without boxing the IDs.
+ *
+ * <p>Keys and values live in two parallel arrays that are probed linearly from the hash of
+ * the ID. IDs are always positive, so a zero key marks an empty slot. Removal shifts the
+ * following entries of the probe run back instead of leaving tombstones, so lookups stay
+ * short no matter how many tasks were deleted.
+ */
+class TaskIdIndex {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int EMPTY = Task.NO_ID;
+
+    private int[] keys = new int[INITIAL_CAPACITY];
+    private Task[] values = new Task[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * Returns the task with the given ID.
+     *
+     * @param id the task ID
+     * @return the task, or null if no task has that ID
+     */
+    Task get(int id) {
+        // Lock-free readers may run during a resize, so the arrays are read once and the
+        // probe never visits more slots than there are
+        int[] keys = this.keys;
+        Task[] values = this.values;
+        int mask = keys.length - 1;
+        int slot = slotOf(id, mask);
+        for (int probes = 0; probes < keys.length && keys[slot] != EMPTY; probes++) {
+            if (keys[slot] == id) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Adds a task under its ID, replacing any task that had the same ID.
+     *
+     * @param task the task, which must have an ID
+     */
+    void put(Task task) {
+        assert task.getId() != EMPTY : "Only tasks with an ID can be indexed";
+        if ((size + 1) * 3 > keys.length * 2) {
+            grow();
+        }
+        int id = task.getId();
+        int mask = keys.length - 1;
+        int slot = slotOf(id, mask);
+        while (keys[slot] != EMPTY && keys[slot] != id) {
+            slot = (slot + 1) & mask;
+        }
+        if (keys[slot] == EMPTY) {
+            keys[slot] = id;
+            size++;
+        }
+        values[slot] = task;
+    }
+
+    /**
+     * Removes the task with the given ID.
+     *
+     * @param id the task ID
+     */
+    void remove(int id) {
+        int mask = keys.length - 1;
+        int slot = slotOf(id, mask);
+        while (keys[slot] != id) {
+            if (keys[slot] == EMPTY) {
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        size--;
+
+        // Move back every later entry of the run that would otherwise become unreachable
+        int gap = slot;
+        for (int next = (gap + 1) & mask; keys[next] != EMPTY; next = (next + 1) & mask) {
+            int home = slotOf(keys[next], mask);
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+        }
+        keys[gap] = EMPTY;
+        values[gap] = null;
+    }
+
+    /**
+     * Removes all tasks.
+     */
+    /**
+     * Makes room for a number of tasks, so adding them does not resize the index.
+     *
+     * @param count the number of tasks the index will hold
+     */
+    void ensureCapacity(int count) {
+        while (count * 3 > keys.length * 2) {
+            grow();
+        }
+    }
+
+    void clear() {
+        Arrays.fill(keys, EMPTY);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        Task[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new Task[oldValues.length * 2];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                put(oldValues[i]);
+            }
+        }
+    }
+
+    private static int slotOf(int id, int mask) {
+        // IDs are sequential, so spread them before masking to keep probe runs short
+        int hash = id * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+}
@@ -1,23 +1,140 @@
 package pichu.core;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import pichu.parser.Parser;
+import pichu.task.TagListener;
 import pichu.task.Task;
 
 /**
  * Contains the task list and operations to add/delete tasks in the list.
+ *
+ * <p>Every task in the list has a stable ID. Tasks can be addressed either by their
+ * 1-based position, which changes when earlier tasks are deleted, or by their ID, which
+ * does not. IDs increase along the list, so the position of an ID can be found by binary
+ * search, and an ID index finds the task itself in constant time.
+ *
+ * <p>A word index over the task names answers {@link #findTasks} in time proportional
+ * to the number of matches instead of the size of the list. A tag index keeps a bitmap
+ * of IDs for every tag, so tag queries combine bitmaps instead of checking every task.
+ * A temporal index answers date-range queries over deadlines and events.
+ *
+ * <p>The tasks themselves are kept in a persistent {@link TaskVector}, so the list can
+ * be handed out as an immutable snapshot without copying it.
+ *
+ * <p>The list is safe to share between threads. Writers take the write lock of a
+ * {@link StampedLock}, so they are serialized by a single atomic update when there is no
+ * contention. Lookups by ID and tag searches take no lock: they read the immutable list,
+ * the ID index and the tag bitmaps optimistically and then check that no writer ran in
+ * the meantime, repeating the read under the read lock if one did. Every loop in such a
+ * read is bounded by an array length or a count, so a read that sees a half-updated
+ * index still finishes. Word, date and planned searches walk trees and tries whose links
+ * writers change in place, where a torn read could follow a cycle, so they hold the
+ * shared read lock, which lets readers run together but not alongside a writer. Readers
+ * therefore always see one consistent version of the list.
+ *
+ * <p>The tasks themselves are shared, not copied, so changes to a task, such as marking
+ * it done, should go through the list.
  */
 public class TaskList {
     private static final int FIRST_TASK_INDEX = 1;
-    private final ArrayList<Task> tasks;
+    private static final int FIRST_TASK_ID = 1;
+    private static final int PARALLEL_LOAD_THRESHOLD = 10_000;
+    private static final String PREFIX_WILDCARD = "*";
+    // Each version is immutable, so publishing a new one is a single volatile write
+    private volatile TaskVector tasks = TaskVector.EMPTY;
+    private final TaskIdIndex idIndex = new TaskIdIndex();
+    private final TaskTextIndex textIndex = new TaskTextIndex();
+    private final TagIndex tagIndex = new TagIndex();
+    private final TemporalIndex temporalIndex = new TemporalIndex();
+    private final StampedLock lock = new StampedLock();
+    private final TagListener tagListener = new LockedTagListener();
+    private int nextId = FIRST_TASK_ID;
+
+    /**
+     * Passes the tag changes of listed tasks to the tag index under the write lock, since
+     * they can come from any thread. Changes must not be made while holding the lock.
+     */
+    private class LockedTagListener implements TagListener {
+        @Override
+        public void tagAdded(Task task, int tagId) {
+            write(() -> tagIndex.tagAdded(task, tagId));
+        }
+
+        @Override
+        public void tagRemoved(Task task, int tagId) {
+            write(() -> tagIndex.tagRemoved(task, tagId));
+        }
+    }
 
     /**
      * Creates an empty TaskList.
      */
     public TaskList() {
-        this.tasks = new ArrayList<>();
+    }
+
+    /**
+     * Runs a read without locking and repeats it under the read lock if a write overlapped it.
+     * Only reads whose every loop is bounded may use this, since a read that overlaps a
+     * write sees the indexes half updated and must still finish to be discarded.
+     *
+     * @param reader the read, which must not change anything
+     * @return the result of the read against a single version of the list
+     */
+    private <T> T readOptimistically(Supplier<T> reader) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T result = reader.get();
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                // A torn read can fail, such as with an index past a resized array. Only a
+                // clean read can throw for real, and it will throw again below.
+                if (lock.validate(stamp)) {
+                    throw e;
+                }
+            }
+        }
+        return read(reader);
+    }
+
+    /**
+     * Runs a read under the read lock, so no write runs alongside it.
+     *
+     * @param reader the read, which must not change anything
+     * @return the result of the read against a single version of the list
+     */
+    private <T> T read(Supplier<T> reader) {
+        long stamp = lock.readLock();
+        try {
+            return reader.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private <T> T write(Supplier<T> writer) {
+        long stamp = lock.writeLock();
+        try {
+            return writer.get();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void write(Runnable writer) {
+        write(() -> {
+            writer.run();
+            return null;
+        });
     }
 
     /**
@@ -43,13 +160,101 @@ public class TaskList {
     }
 
     /**
-     * Adds a task to the list.
+     * Adds a task to the end of the list. A task without an ID, or with an ID that would
+     * break the increasing order of IDs, is given the next free ID.
      *
      * @param task the task to add
+     * @return true if the task was given a new ID
      */
-    public void addTask(Task task) {
+    public boolean addTask(Task task) {
         assert task != null : "Task to be added should not be null";
-        tasks.add(task);
+        return write(() -> append(task));
+    }
+
+    private boolean append(Task task) {
+        boolean isAssigned = index(task);
+        tasks = tasks.append(task);
+        return isAssigned;
+    }
+
+    /**
+     * Gives a task its ID if needed and adds it to every index, but not to the list.
+     */
+    private boolean index(Task task) {
+        boolean isAssigned = assignId(task);
+        addToIndexes(task);
+        return isAssigned;
+    }
+
+    /**
+     * Gives a task the next free ID if its own would break the increasing order of IDs.
+     */
+    private boolean assignId(Task task) {
+        boolean isAssigned = task.getId() < nextId;
+        if (isAssigned) {
+            task.setId(nextId);
+        }
+        nextId = task.getId() + 1;
+        return isAssigned;
+    }
+
+    private void addToIndexes(Task task) {
+        nextId = Math.max(nextId, task.getId() + 1);
+        idIndex.put(task);
+        textIndex.add(task);
+        tagIndex.add(task);
+        temporalIndex.add(task);
+        task.setTagListener(tagListener);
+    }
+
+    /**
+     * Puts a task that was removed before back into the list, where its ID places it.
+     * The task keeps its ID, so this undoes a removal.
+     *
+     * @param task the task, with an ID that no task in the list has
+     * @return the 1-based index the task was inserted at
+     * @throws IllegalArgumentException if a task in the list already has the task's ID
+     */
+    public int insertTask(Task task) throws IllegalArgumentException {
+        return write(() -> {
+            if (task.getId() == Task.NO_ID || idIndex.get(task.getId()) != null) {
+                throw new IllegalArgumentException("Task ID " + task.getId() + " is already in use");
+            }
+            int position = countIdsBelow(tasks, task.getId());
+            tasks = tasks.with(position, task);
+            addToIndexes(task);
+            return position + FIRST_TASK_INDEX;
+        });
+    }
+
+    /**
+     * Puts many tasks that were removed before back into the list in one pass, each where
+     * its ID places it. Tasks whose ID is already in use are skipped.
+     *
+     * @param removed the tasks, in any order
+     */
+    public void insertTasks(List<Task> removed) {
+        write(() -> {
+            List<Task> inserted = new ArrayList<>();
+            for (Task task : removed) {
+                if (task.getId() != Task.NO_ID && idIndex.get(task.getId()) == null) {
+                    inserted.add(task);
+                    addToIndexes(task);
+                }
+            }
+            inserted.sort((first, second) -> Integer.compare(first.getId(), second.getId()));
+
+            List<Task> merged = new ArrayList<>(tasks.size() + inserted.size());
+            int next = 0;
+            for (Task task : tasks) {
+                while (next < inserted.size() && inserted.get(next).getId() < task.getId()) {
+                    merged.add(inserted.get(next++));
+                }
+                merged.add(task);
+            }
+            merged.addAll(inserted.subList(next, inserted.size()));
+            tasks = TaskVector.of(merged);
+        });
     }
 
     /**
@@ -59,8 +264,171 @@ public class TaskList {
      * @throws IndexOutOfBoundsException if the index is invalid
      */
     public void deleteTask(int index) throws IndexOutOfBoundsException {
+        write(() -> remove(index));
+    }
+
+    private void remove(int index) throws IndexOutOfBoundsException {
         validateTaskIndex(index);
-        tasks.remove(toArrayIndex(index));
+        Task task = tasks.get(toArrayIndex(index));
+        tasks = tasks.without(toArrayIndex(index));
+        textIndex.remove(task);
+        unindex(task);
+    }
+
+    /**
+     * Removes a task from every index except the text index, which removes tasks in bulk.
+     */
+    private void unindex(Task task) {
+        task.setTagListener(null);
+        idIndex.remove(task.getId());
+        tagIndex.remove(task);
+        temporalIndex.remove(task);
+    }
+
+    /**
+     * Removes many tasks in one pass over the list, rather than shifting the list once
+     * for each of them. Tasks that are no longer in the list are skipped.
+     *
+     * @param selected the tasks to remove, in any order
+     * @return the number of tasks removed
+     */
+    public int deleteTasks(List<Task> selected) {
+        return write(() -> {
+            TaskBitmap removedIds = new TaskBitmap();
+            List<Task> removed = new ArrayList<>();
+            for (Task task : selected) {
+                if (idIndex.get(task.getId()) == task && !removedIds.contains(task.getId())) {
+                    removedIds.add(task.getId());
+                    removed.add(task);
+                }
+            }
+            if (removed.isEmpty()) {
+                return 0;
+            }
+
+            List<Task> remaining = new ArrayList<>(tasks.size() - removed.size());
+            for (Task task : tasks) {
+                if (removedIds.contains(task.getId())) {
+                    unindex(task);
+                } else {
+                    remaining.add(task);
+                }
+            }
+            textIndex.removeAll(removed);
+            tasks = TaskVector.of(remaining);
+            return removed.size();
+        });
+    }
+
+    /**
+     * Marks many tasks as completed or not completed at once. Tasks that are no longer in
+     * the list are skipped.
+     *
+     * @param selected the tasks to change
+     * @param isCompleted whether the tasks should be marked as completed
+     * @return the number of tasks in the list that were selected
+     */
+    public int setCompleted(List<Task> selected, boolean isCompleted) {
+        return write(() -> {
+            int count = 0;
+            for (Task task : selected) {
+                if (idIndex.get(task.getId()) == task) {
+                    task.setCompleted(isCompleted);
+                    count++;
+                }
+            }
+            return count;
+        });
+    }
+
+    /**
+     * Returns the 1-based index of the task with the given ID.
+     *
+     * @param id the task ID
+     * @return the current index of the task
+     * @throws IndexOutOfBoundsException if no task has that ID
+     */
+    public int indexOfId(int id) throws IndexOutOfBoundsException {
+        return readOptimistically(() -> findIndexOfId(id));
+    }
+
+    private int findIndexOfId(int id) throws IndexOutOfBoundsException {
+        if (idIndex.get(id) == null) {
+            throw new IndexOutOfBoundsException("Invalid task ID: " + id);
+        }
+        return countIdsBelow(tasks, id) + FIRST_TASK_INDEX;
+    }
+
+    /**
+     * Returns the number of tasks with an ID below the given one, which is the 0-based
+     * position of the task with that ID since IDs increase along the list.
+     */
+    private static int countIdsBelow(TaskVector snapshot, int id) {
+        int low = 0;
+        int high = snapshot.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (snapshot.get(middle).getId() < id) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Gets the task with the given ID.
+     *
+     * @param id the task ID
+     * @return the task with that ID
+     * @throws IndexOutOfBoundsException if no task has that ID
+     */
+    public Task getTaskById(int id) throws IndexOutOfBoundsException {
+        return readOptimistically(() -> findTaskById(id));
+    }
+
+    private Task findTaskById(int id) throws IndexOutOfBoundsException {
+        Task task = idIndex.get(id);
+        if (task == null) {
+            throw new IndexOutOfBoundsException("Invalid task ID: " + id);
+        }
+        return task;
+    }
+
+    /**
+     * Marks the task with the given ID as completed.
+     *
+     * @param id the task ID
+     * @throws IndexOutOfBoundsException if no task has that ID
+     */
+    public void markTaskById(int id) throws IndexOutOfBoundsException {
+        write(() -> findTaskById(id).setCompleted(true));
+    }
+
+    /**
+     * Marks the task with the given ID as not completed.
+     *
+     * @param id the task ID
+     * @throws IndexOutOfBoundsException if no task has that ID
+     */
+    public void unmarkTaskById(int id) throws IndexOutOfBoundsException {
+        write(() -> findTaskById(id).setCompleted(false));
+    }
+
+    /**
+     * Removes the task with the given ID.
+     *
+     * @param id the task ID
+     * @return the 1-based index the task had before it was removed
+     * @throws IndexOutOfBoundsException if no task has that ID
+     */
+    public int deleteTaskById(int id) throws IndexOutOfBoundsException {
+        return write(() -> {
+            int index = findIndexOfId(id);
+            remove(index);
+            return index;
+        });
     }
 
     /**
@@ -71,8 +439,11 @@ public class TaskList {
      * @throws IndexOutOfBoundsException if the index is invalid
      */
     public Task getTask(int index) throws IndexOutOfBoundsException {
-        validateTaskIndex(index);
-        return tasks.get(toArrayIndex(index));
+        TaskVector snapshot = tasks;
+        if (index < FIRST_TASK_INDEX || index > snapshot.size()) {
+            throw new IndexOutOfBoundsException("Invalid task index: " + index);
+        }
+        return snapshot.get(toArrayIndex(index));
     }
 
     /**
@@ -82,8 +453,10 @@ public class TaskList {
      * @throws IndexOutOfBoundsException if the index is invalid
      */
     public void markTask(int index) throws IndexOutOfBoundsException {
-        validateTaskIndex(index);
-        tasks.get(toArrayIndex(index)).setCompleted(true);
+        write(() -> {
+            validateTaskIndex(index);
+            tasks.get(toArrayIndex(index)).setCompleted(true);
+        });
     }
 
     /**
@@ -93,8 +466,10 @@ public class TaskList {
      * @throws IndexOutOfBoundsException if the index is invalid
      */
     public void unmarkTask(int index) throws IndexOutOfBoundsException {
-        validateTaskIndex(index);
-        tasks.get(toArrayIndex(index)).setCompleted(false);
+        write(() -> {
+            validateTaskIndex(index);
+            tasks.get(toArrayIndex(index)).setCompleted(false);
+        });
     }
 
     /**
@@ -107,12 +482,36 @@ public class TaskList {
     }
 
     /**
-     * Gets all tasks in the list.
+     * Gets the ID the next new task will get, which is one more than the highest ID ever
+     * given out, even if that task was deleted since.
+     *
+     * @return the next ID
+     */
+    public int getNextId() {
+        return read(() -> nextId);
+    }
+
+    /**
+     * Makes sure IDs below the given one are not given out again, e.g. IDs of tasks
+     * deleted before the list was loaded. Call it after {@link #setTasks}, which starts
+     * over from the loaded tasks.
      *
-     * @return the ArrayList of tasks
+     * @param nextId the ID after the highest one given out before
      */
-    public ArrayList<Task> getTasks() {
-        return new ArrayList<>(tasks);
+    public void reserveIds(int nextId) {
+        write(() -> {
+            this.nextId = Math.max(this.nextId, nextId);
+        });
+    }
+
+    /**
+     * Gets all tasks in the list. This takes constant time: the result is the current
+     * version of the list, which later changes to the list do not affect.
+     *
+     * @return an unmodifiable snapshot of the tasks
+     */
+    public List<Task> getTasks() {
+        return tasks;
     }
 
     /**
@@ -122,29 +521,150 @@ public class TaskList {
      * @return a list of tasks that have the specified tag
      */
     public ArrayList<Task> findTasksByTag(String tag) {
-        ArrayList<Task> matchingTasks = new ArrayList<>();
-        for (Task task : tasks) {
-            if (task.hasTag(tag)) {
-                matchingTasks.add(task);
-            }
+        return readOptimistically(() -> toTasks(tagIndex.get(tag).toArray()));
+    }
+
+    /**
+     * Finds tasks that match a boolean combination of tags such as
+     * {@code #work & #urgent & !#blocked}. {@code &} binds tighter than {@code |}, and
+     * parentheses group.
+     *
+     * @param query the tag query
+     * @return a list of matching tasks in list order
+     * @throws IllegalArgumentException if the query is malformed
+     */
+    public ArrayList<Task> findTasksByTagQuery(String query) throws IllegalArgumentException {
+        TagQuery tagQuery = TagQuery.parse(query);
+        return readOptimistically(() -> toTasks(tagQuery.evaluate(tagIndex).toArray()));
+    }
+
+    /**
+     * Finds deadlines that are due before the given time.
+     *
+     * @param time the time the deadlines must be due before
+     * @return the matching deadlines, earliest first
+     */
+    public ArrayList<Task> findDueBefore(LocalDateTime time) {
+        return read(() -> temporalIndex.findDueBefore(time));
+    }
+
+    /**
+     * Finds deadlines that are due between two times, including both.
+     *
+     * @param from the earliest due time
+     * @param to the latest due time
+     * @return the matching deadlines, earliest first
+     */
+    public ArrayList<Task> findDueBetween(LocalDateTime from, LocalDateTime to) {
+        return read(() -> temporalIndex.findDueBetween(from, to));
+    }
+
+    /**
+     * Finds events that take place at any moment between two times.
+     *
+     * @param from the start of the period
+     * @param to the end of the period
+     * @return the matching events, by start time
+     */
+    public ArrayList<Task> findEventsOverlapping(LocalDateTime from, LocalDateTime to) {
+        return read(() -> temporalIndex.findOverlapping(from, to));
+    }
+
+    /**
+     * Returns the deadlines and events whose dates could not be read, which date queries
+     * never match.
+     *
+     * @return the undated tasks in list order
+     */
+    public ArrayList<Task> getUndatedTasks() {
+        return read(() -> toTasks(temporalIndex.getUndatedIds().toArray()));
+    }
+
+    TagIndex getTagIndex() {
+        return tagIndex;
+    }
+
+    /**
+     * Looks up tasks by ID, keeping their order. IDs increase along the list, so sorted
+     * IDs give list order.
+     */
+    private ArrayList<Task> toTasks(int[] sortedIds) {
+        ArrayList<Task> matchingTasks = new ArrayList<>(sortedIds.length);
+        for (int id : sortedIds) {
+            matchingTasks.add(idIndex.get(id));
         }
         return matchingTasks;
     }
 
     /**
-     * Finds tasks that contain the specified keyword in their description.
+     * Finds tasks whose description contains every word of the keyword as a whole word,
+     * ignoring case. A keyword ending in {@code *} matches its last word as a prefix,
+     * so {@code home*} finds "homework".
      *
      * @param keyword the keyword to search for
-     * @return a list of tasks that contain the keyword
+     * @return a list of matching tasks in list order
      */
     public ArrayList<Task> findTasks(String keyword) {
-        ArrayList<Task> matchingTasks = new ArrayList<>();
-        for (Task task : tasks) {
-            if (task.getName().toLowerCase().contains(keyword.toLowerCase())) {
-                matchingTasks.add(task);
-            }
+        List<String> words = TaskTextIndex.tokenize(keyword);
+        if (words.isEmpty()) {
+            return new ArrayList<>();
         }
-        return matchingTasks;
+        boolean isPrefix = keyword.trim().endsWith(PREFIX_WILDCARD);
+        return read(() -> toTasks(textIndex.find(words, isPrefix)));
+    }
+
+    /**
+     * Finds tasks whose description contains every word of the query, allowing for typos:
+     * words of four to six letters may be one edit away and longer words two, where an
+     * edit inserts, deletes or replaces a letter. Only the words whose trigrams overlap
+     * the query's are compared, so the time does not grow with the length of the list.
+     *
+     * @param query the words to search for
+     * @return a list of matching tasks, those needing the fewest edits first
+     */
+    public ArrayList<Task> findTasksFuzzy(String query) {
+        List<String> words = TaskTextIndex.tokenize(query);
+        if (words.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return read(() -> toTasks(textIndex.findFuzzy(words)));
+    }
+
+    /**
+     * Finds the tasks that meet every condition of a query. The query starts from the
+     * index that narrows the tasks down most, and checks the other conditions only on the
+     * tasks that index returns.
+     *
+     * @param query the conditions
+     * @return the matching tasks in list order, and an explanation of how they were found
+     */
+    public QueryResult query(TaskQuery query) {
+        return read(() -> new QueryPlanner(tasks, idIndex, textIndex, tagIndex, temporalIndex).run(query));
+    }
+
+    /**
+     * Lists the words of task names that start with a prefix, for autocompletion. The
+     * words come from the word index, so the tasks themselves are not read.
+     *
+     * @param prefix the start of a word, in any case
+     * @param limit the most words to list
+     * @return up to {@code limit} lower-case words in alphabetical order
+     */
+    public List<String> completeWord(String prefix, int limit) {
+        String lowerCasePrefix = prefix.toLowerCase();
+        return read(() -> textIndex.complete(lowerCasePrefix, limit));
+    }
+
+    /**
+     * Lists the tags that start with a prefix and that at least one task has, for
+     * autocompletion.
+     *
+     * @param prefix the start of a tag (without # symbol)
+     * @param limit the most tags to list
+     * @return up to {@code limit} tags in alphabetical order
+     */
+    public List<String> completeTag(String prefix, int limit) {
+        return read(() -> tagIndex.complete(prefix, limit));
     }
 
     /**
@@ -153,12 +673,72 @@ public class TaskList {
      * @param taskDataList the list of task data strings from storage
      */
     public void loadTasks(List<String> taskDataList) {
-        tasks.clear();
-        for (String taskData : taskDataList) {
-            Task task = Parser.parseTaskFromString(taskData);
-            if (task != null) {
-                tasks.add(task);
+        List<Task> loadedTasks;
+        if (taskDataList.size() >= PARALLEL_LOAD_THRESHOLD) {
+            // Parallel streams over a list keep encounter order, so indexes stay the same
+            loadedTasks = taskDataList.parallelStream()
+                    .map(Parser::parseTaskFromString)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+        } else {
+            loadedTasks = new ArrayList<>();
+            for (String taskData : taskDataList) {
+                Task task = Parser.parseTaskFromString(taskData);
+                if (task != null) {
+                    loadedTasks.add(task);
+                }
+            }
+        }
+        setTasks(loadedTasks);
+    }
+
+    /**
+     * Replaces the tasks in the list with tasks that were already parsed by storage.
+     *
+     * <p>IDs are given in list order first. The vector and each index are then built in
+     * one pass of their own, and for a large list these passes run in parallel, since no
+     * two of them touch the same structure. The word index, which is most of the work,
+     * builds itself in parallel too. The write lock is held throughout.
+     *
+     * @param loadedTasks the tasks in their stored order
+     * @return true if any task was given a new ID, so the list should be saved again
+     */
+    public boolean setTasks(List<Task> loadedTasks) {
+        return write(() -> {
+            clear();
+            boolean isAnyAssigned = false;
+            for (Task task : loadedTasks) {
+                isAnyAssigned |= assignId(task);
+                task.setTagListener(tagListener);
+            }
+
+            idIndex.ensureCapacity(loadedTasks.size());
+            TaskVector[] built = new TaskVector[1];
+            List<Runnable> builds = List.of(
+                    () -> built[0] = TaskVector.of(loadedTasks),
+                    () -> loadedTasks.forEach(idIndex::put),
+                    () -> textIndex.build(loadedTasks),
+                    () -> loadedTasks.forEach(tagIndex::add),
+                    () -> loadedTasks.forEach(temporalIndex::add));
+            if (loadedTasks.size() >= PARALLEL_LOAD_THRESHOLD) {
+                builds.parallelStream().forEach(Runnable::run);
+            } else {
+                builds.forEach(Runnable::run);
             }
+            tasks = built[0];
+            return isAnyAssigned;
+        });
+    }
+
+    private void clear() {
+        for (Task task : tasks) {
+            task.setTagListener(null);
         }
+        tasks = TaskVector.EMPTY;
+        idIndex.clear();
+        textIndex.clear();
+        tagIndex.clear();
+        temporalIndex.clear();
+        nextId = FIRST_TASK_ID;
     }
 }
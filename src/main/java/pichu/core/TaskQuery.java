@@ -0,0 +1,182 @@
+package pichu.core;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+import pichu.task.Deadline;
+import pichu.task.TagDictionary;
+import pichu.task.Task;
+
+/**
+ * Conditions that tasks must all meet, such as {@code type:D done:false tag:work
+ * due<2026-11-01 "report"}.
+ *
+ * <p>The query only says what to match. {@link TaskList#query} decides how to find the
+ * matches, starting from whichever index narrows them down most.
+ */
+public class TaskQuery {
+    private static final DateTimeFormatter DESCRIPTION_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HHmm");
+
+    private String type;
+    private Boolean isCompleted;
+    private final List<String> tags = new ArrayList<>();
+    private final List<String> words = new ArrayList<>();
+    // Both ends are included
+    private LocalDateTime dueFrom;
+    private LocalDateTime dueTo;
+
+    /**
+     * Keeps only the tasks of one type.
+     *
+     * @param type the single-letter type that {@link Task#getType} starts with
+     */
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    /**
+     * Keeps only the tasks that are completed, or only those that are not.
+     *
+     * @param isCompleted whether the tasks must be completed
+     */
+    public void setCompleted(boolean isCompleted) {
+        this.isCompleted = isCompleted;
+    }
+
+    /**
+     * Keeps only the tasks that have a tag.
+     *
+     * @param tag the tag (without # symbol)
+     */
+    public void addTag(String tag) {
+        tags.add(tag);
+    }
+
+    /**
+     * Keeps only the tasks whose description contains every word of some text as a whole
+     * word, ignoring case, like {@link TaskList#findTasks}.
+     *
+     * @param text one or more words
+     */
+    public void addWords(String text) {
+        words.addAll(TaskTextIndex.tokenize(text));
+    }
+
+    /**
+     * Keeps only the deadlines due at or after a time.
+     *
+     * @param time the earliest due time
+     */
+    public void setDueFrom(LocalDateTime time) {
+        dueFrom = time;
+    }
+
+    /**
+     * Keeps only the deadlines due at or before a time.
+     *
+     * @param time the latest due time
+     */
+    public void setDueTo(LocalDateTime time) {
+        dueTo = time;
+    }
+
+    /**
+     * Returns whether the query has no conditions, so it would match every task.
+     */
+    public boolean isEmpty() {
+        return type == null && isCompleted == null && tags.isEmpty() && words.isEmpty() && !hasDueRange();
+    }
+
+    String getType() {
+        return type;
+    }
+
+    Boolean getCompleted() {
+        return isCompleted;
+    }
+
+    List<String> getTags() {
+        return tags;
+    }
+
+    List<String> getWords() {
+        return words;
+    }
+
+    boolean hasDueRange() {
+        return dueFrom != null || dueTo != null;
+    }
+
+    LocalDateTime getDueFrom() {
+        return dueFrom == null ? LocalDateTime.MIN : dueFrom;
+    }
+
+    LocalDateTime getDueTo() {
+        return dueTo == null ? LocalDateTime.MAX : dueTo;
+    }
+
+    boolean matchesType(Task task) {
+        // A deadline's type is followed by the fields it is saved with
+        return type == null || task.getType().startsWith(type);
+    }
+
+    boolean matchesCompletion(Task task) {
+        return isCompleted == null || isCompleted == task.isCompleted();
+    }
+
+    boolean matchesTags(Task task) {
+        for (String tag : tags) {
+            if (!task.hasTag(TagDictionary.find(tag))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean matchesWords(Task task) {
+        return words.isEmpty() || TaskTextIndex.tokenize(task.getName()).containsAll(words);
+    }
+
+    boolean matchesDueRange(Task task) {
+        if (!hasDueRange()) {
+            return true;
+        }
+        if (!(task instanceof Deadline) || ((Deadline) task).getDeadline() == null) {
+            return false;
+        }
+        LocalDateTime due = ((Deadline) task).getDeadline();
+        return !due.isBefore(getDueFrom()) && !due.isAfter(getDueTo());
+    }
+
+    String describeType() {
+        return "type:" + type;
+    }
+
+    String describeCompletion() {
+        return "done:" + isCompleted;
+    }
+
+    String describeTags() {
+        List<String> described = new ArrayList<>();
+        for (String tag : tags) {
+            described.add("#" + tag);
+        }
+        return String.join(" & ", described);
+    }
+
+    String describeWords() {
+        return "\"" + String.join(" ", words) + "\"";
+    }
+
+    String describeDueRange() {
+        if (dueFrom == null) {
+            return "due<=" + dueTo.format(DESCRIPTION_FORMAT);
+        }
+        if (dueTo == null) {
+            return "due>=" + dueFrom.format(DESCRIPTION_FORMAT);
+        }
+        return "due " + dueFrom.format(DESCRIPTION_FORMAT) + " to " + dueTo.format(DESCRIPTION_FORMAT);
+    }
+}
@@ -0,0 +1,387 @@
+package pichu.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import pichu.task.Task;
+
+/**
+ * Inverted index from the words of task names to the IDs of the tasks that contain them.
+ *
+ * <p>Names are split into words at every character that is not a letter or digit, and
+ * words are lower-cased once when a task is added, so a query never touches the tasks
+ * that do not match it. Each word keeps its task IDs in a sorted array. New tasks have
+ * the highest ID, so adding one appends to the arrays, and queries can intersect them
+ * with a merge. Words are kept in sorted order so a prefix query only visits the words
+ * that start with the prefix. A {@link WordTrigramIndex} over the same words finds the
+ * words close to a misspelt one for fuzzy queries, and a {@link PrefixTrie} completes
+ * words as they are typed.
+ */
+class TaskTextIndex {
+    // Words shorter than these lengths must match with no edits or with one edit
+    private static final int MIN_ONE_EDIT_LENGTH = 4;
+    private static final int MIN_TWO_EDITS_LENGTH = 7;
+
+    private final TreeMap<String, Postings> postings = new TreeMap<>();
+    private final WordTrigramIndex trigrams = new WordTrigramIndex();
+    private final PrefixTrie completions = new PrefixTrie();
+
+    /**
+     * Sorted IDs of the tasks that contain one word, or of the words that contain one
+     * trigram.
+     */
+    static class Postings {
+        private static final int INITIAL_CAPACITY = 4;
+
+        private int[] ids = new int[INITIAL_CAPACITY];
+        private int size;
+
+        void add(int id) {
+            // New tasks have the highest ID, so the search is only needed for reloads and undo
+            int position = size > 0 && ids[size - 1] >= id ? Arrays.binarySearch(ids, 0, size, id) : -size - 1;
+            if (position >= 0) {
+                return;
+            }
+            position = -position - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, position, ids, position + 1, size - position);
+            ids[position] = id;
+            size++;
+        }
+
+        void remove(int id) {
+            int position = Arrays.binarySearch(ids, 0, size, id);
+            if (position >= 0) {
+                System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+                size--;
+            }
+        }
+
+        void removeAll(TaskBitmap removedIds) {
+            int length = 0;
+            for (int i = 0; i < size; i++) {
+                if (!removedIds.contains(ids[i])) {
+                    ids[length++] = ids[i];
+                }
+            }
+            size = length;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(ids, size);
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+    }
+
+    /**
+     * Splits text into lower-case words.
+     *
+     * @param text the text to split
+     * @return the words in the order they appear
+     */
+    static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                word.append(Character.toLowerCase(c));
+            } else if (word.length() > 0) {
+                words.add(word.toString());
+                word.setLength(0);
+            }
+        }
+        if (word.length() > 0) {
+            words.add(word.toString());
+        }
+        return words;
+    }
+
+    /**
+     * Adds the words of a task's name.
+     *
+     * @param task the task, which must have an ID
+     */
+    void add(Task task) {
+        for (String word : tokenize(task.getName())) {
+            Postings ids = postings.get(word);
+            if (ids == null) {
+                ids = new Postings();
+                postings.put(word, ids);
+                trigrams.add(word);
+                completions.add(word);
+            }
+            ids.add(task.getId());
+        }
+    }
+
+    /**
+     * Adds the words of many task names to an empty index. Splitting the names is done in
+     * parallel, and so is building the word map, the trigram index and the completion
+     * trie from the distinct words, since none of them shares state with another.
+     *
+     * @param tasks the tasks, which must have increasing IDs
+     */
+    void build(List<Task> tasks) {
+        assert postings.isEmpty() : "Only an empty index can be built in bulk";
+        List<List<String>> names = tasks.parallelStream()
+                .map(task -> tokenize(task.getName()))
+                .collect(Collectors.toList());
+        Map<String, Postings> grouped = new HashMap<>();
+        for (int i = 0; i < names.size(); i++) {
+            int id = tasks.get(i).getId();
+            for (String word : names.get(i)) {
+                grouped.computeIfAbsent(word, newWord -> new Postings()).add(id);
+            }
+        }
+
+        List<Runnable> builds = List.of(
+                () -> postings.putAll(grouped),
+                () -> grouped.keySet().forEach(trigrams::add),
+                () -> grouped.keySet().forEach(completions::add));
+        builds.parallelStream().forEach(Runnable::run);
+    }
+
+    /**
+     * Removes the words of a task's name.
+     *
+     * @param task the task that was added before
+     */
+    void remove(Task task) {
+        for (String word : tokenize(task.getName())) {
+            Postings ids = postings.get(word);
+            if (ids != null) {
+                ids.remove(task.getId());
+                if (ids.size == 0) {
+                    postings.remove(word);
+                    trigrams.remove(word);
+                    completions.remove(word);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the words of many task names. Each word's IDs are compacted once, rather
+     * than once for every removed task that contains it.
+     *
+     * @param removed the tasks that were added before
+     */
+    void removeAll(List<Task> removed) {
+        TaskBitmap removedIds = new TaskBitmap();
+        Set<String> words = new HashSet<>();
+        for (Task task : removed) {
+            removedIds.add(task.getId());
+            words.addAll(tokenize(task.getName()));
+        }
+        for (String word : words) {
+            Postings ids = postings.get(word);
+            if (ids != null) {
+                ids.removeAll(removedIds);
+                if (ids.size == 0) {
+                    postings.remove(word);
+                    trigrams.remove(word);
+                    completions.remove(word);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all tasks.
+     */
+    void clear() {
+        postings.clear();
+        trigrams.clear();
+        completions.clear();
+    }
+
+    /**
+     * Lists the words of task names that start with a prefix.
+     *
+     * @param prefix a lower-case prefix
+     * @param limit the most words to list
+     * @return up to {@code limit} words in alphabetical order
+     */
+    List<String> complete(String prefix, int limit) {
+        return completions.complete(prefix, limit);
+    }
+
+    /**
+     * Returns the IDs of tasks whose names contain every given word. The last word may
+     * be matched as a prefix.
+     *
+     * @param words lower-case words, at least one
+     * @param isLastWordPrefix whether the last word only has to start a word of the name
+     * @return the matching IDs in increasing order
+     */
+    int[] find(List<String> words, boolean isLastWordPrefix) {
+        int[] result = null;
+        for (int i = 0; i < words.size(); i++) {
+            boolean isPrefix = isLastWordPrefix && i == words.size() - 1;
+            int[] ids = isPrefix ? findPrefix(words.get(i)) : findWord(words.get(i));
+            result = result == null ? ids : intersect(result, ids);
+            if (result.length == 0) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns an upper bound on the number of tasks whose names contain every given word,
+     * without finding them.
+     *
+     * @param words lower-case words, at least one
+     * @return the number of tasks that contain the rarest of the words
+     */
+    int estimate(List<String> words) {
+        int estimate = Integer.MAX_VALUE;
+        for (String word : words) {
+            Postings ids = postings.get(word);
+            estimate = Math.min(estimate, ids == null ? 0 : ids.size);
+        }
+        return estimate;
+    }
+
+    private int[] findWord(String word) {
+        Postings ids = postings.get(word);
+        return ids == null ? new int[0] : ids.toArray();
+    }
+
+    private int[] findPrefix(String prefix) {
+        NavigableMap<String, Postings> matches = postings.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+        return union(matches.values());
+    }
+
+    /**
+     * Returns the IDs of tasks whose names contain, for every given word, a word within a
+     * few edits of it: none for words of up to three letters, one for words of up to six
+     * and two for longer words. Tasks are ranked by the total number of edits, and tasks
+     * with the same number are in list order.
+     *
+     * @param words lower-case words, at least one
+     * @return the matching IDs, best match first
+     */
+    int[] findFuzzy(List<String> words) {
+        int[] candidates = null;
+        // For each query word, the IDs of the tasks within 0, 1, ... edits of it
+        int[][][] withinDistance = new int[words.size()][][];
+        for (int i = 0; i < words.size(); i++) {
+            String word = words.get(i);
+            int maxDistance = getMaxDistance(word);
+            Map<String, Integer> similar = trigrams.findSimilar(word, maxDistance);
+            withinDistance[i] = new int[maxDistance + 1][];
+            for (int distance = 0; distance <= maxDistance; distance++) {
+                List<Postings> matches = new ArrayList<>();
+                for (Map.Entry<String, Integer> entry : similar.entrySet()) {
+                    if (entry.getValue() <= distance) {
+                        matches.add(postings.get(entry.getKey()));
+                    }
+                }
+                withinDistance[i][distance] = union(matches);
+            }
+            int[] ids = withinDistance[i][maxDistance];
+            candidates = candidates == null ? ids : intersect(candidates, ids);
+            if (candidates.length == 0) {
+                return candidates;
+            }
+        }
+
+        int[] scores = new int[candidates.length];
+        int maxScore = 0;
+        for (int c = 0; c < candidates.length; c++) {
+            for (int[][] idsWithin : withinDistance) {
+                int distance = 0;
+                while (Arrays.binarySearch(idsWithin[distance], candidates[c]) < 0) {
+                    distance++;
+                }
+                scores[c] += distance;
+            }
+            maxScore = Math.max(maxScore, scores[c]);
+        }
+        int[] ranked = new int[candidates.length];
+        int length = 0;
+        for (int score = 0; score <= maxScore; score++) {
+            for (int c = 0; c < candidates.length; c++) {
+                if (scores[c] == score) {
+                    ranked[length++] = candidates[c];
+                }
+            }
+        }
+        return ranked;
+    }
+
+    private static int getMaxDistance(String word) {
+        if (word.length() < MIN_ONE_EDIT_LENGTH) {
+            return 0;
+        }
+        return word.length() < MIN_TWO_EDITS_LENGTH ? 1 : 2;
+    }
+
+    private static int[] union(Collection<Postings> matches) {
+        if (matches.size() == 1) {
+            return matches.iterator().next().toArray();
+        }
+        int total = 0;
+        for (Postings ids : matches) {
+            total += ids.size;
+        }
+        int[] union = new int[total];
+        int length = 0;
+        for (Postings ids : matches) {
+            System.arraycopy(ids.ids, 0, union, length, ids.size);
+            length += ids.size;
+        }
+        Arrays.sort(union);
+
+        // A task with several matching words is listed once
+        int distinct = 0;
+        for (int i = 0; i < union.length; i++) {
+            if (i == 0 || union[i] != union[i - 1]) {
+                union[distinct++] = union[i];
+            }
+        }
+        return Arrays.copyOf(union, distinct);
+    }
+
+    private static int[] intersect(int[] first, int[] second) {
+        int[] result = new int[Math.min(first.length, second.length)];
+        int length = 0;
+        int i = 0;
+        int j = 0;
+        while (i < first.length && j < second.length) {
+            if (first[i] < second[j]) {
+                i++;
+            } else if (first[i] > second[j]) {
+                j++;
+            } else {
+                result[length++] = first[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, length);
+    }
+
+    /**
+     * Returns the number of distinct words in the index.
+     */
+    int getWordCount() {
+        return postings.size();
+    }
+}
@@ -0,0 +1,221 @@
+package pichu.core;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import pichu.task.Task;
+
+/**
+ * Immutable list of tasks that shares structure between versions.
+ *
+ * <p>The tasks are the in-order contents of an AVL tree whose nodes also count the tasks
+ * below them, so a task is found by position in O(log n). Adding or removing a task
+ * copies only the nodes on the path to it and shares every other node with the previous
+ * version, which stays valid. A version can therefore be handed out as a snapshot
+ * without copying, and later changes never show through it.
+ */
+final class TaskVector extends AbstractList<Task> {
+    /** The empty list. */
+    static final TaskVector EMPTY = new TaskVector(null);
+
+    private final Node root;
+
+    private static final class Node {
+        private final Task task;
+        private final Node left;
+        private final Node right;
+        private final int size;
+        private final int height;
+
+        Node(Task task, Node left, Node right) {
+            this.task = task;
+            this.left = left;
+            this.right = right;
+            this.size = sizeOf(left) + sizeOf(right) + 1;
+            this.height = Math.max(heightOf(left), heightOf(right)) + 1;
+        }
+    }
+
+    private TaskVector(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Returns a list of the given tasks, built in linear time.
+     *
+     * @param tasks the tasks in order
+     * @return the list
+     */
+    static TaskVector of(List<Task> tasks) {
+        Task[] array = tasks.toArray(new Task[0]);
+        return new TaskVector(build(array, 0, array.length));
+    }
+
+    private static Node build(Task[] tasks, int from, int to) {
+        if (from >= to) {
+            return null;
+        }
+        int middle = (from + to) >>> 1;
+        return new Node(tasks[middle], build(tasks, from, middle), build(tasks, middle + 1, to));
+    }
+
+    @Override
+    public Task get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        Node node = root;
+        while (true) {
+            int leftSize = sizeOf(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index > leftSize) {
+                index -= leftSize + 1;
+                node = node.right;
+            } else {
+                return node.task;
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return sizeOf(root);
+    }
+
+    /**
+     * Returns this list with a task added to the end.
+     *
+     * @param task the task to add
+     * @return the new version
+     */
+    TaskVector append(Task task) {
+        return new TaskVector(insert(root, size(), task));
+    }
+
+    /**
+     * Returns this list with a task inserted at a position.
+     *
+     * @param index the 0-based position the task will have
+     * @param task the task to insert
+     * @return the new version
+     */
+    TaskVector with(int index, Task task) {
+        if (index < 0 || index > size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        return new TaskVector(insert(root, index, task));
+    }
+
+    /**
+     * Returns this list without the task at a position.
+     *
+     * @param index the 0-based position of the task
+     * @return the new version
+     */
+    TaskVector without(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        return new TaskVector(delete(root, index));
+    }
+
+    @Override
+    public Iterator<Task> iterator() {
+        return new Iterator<>() {
+            private final Deque<Node> path = new ArrayDeque<>();
+
+            {
+                pushLeftPath(root);
+            }
+
+            private void pushLeftPath(Node node) {
+                for (; node != null; node = node.left) {
+                    path.push(node);
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return !path.isEmpty();
+            }
+
+            @Override
+            public Task next() {
+                if (path.isEmpty()) {
+                    throw new NoSuchElementException();
+                }
+                Node node = path.pop();
+                pushLeftPath(node.right);
+                return node.task;
+            }
+        };
+    }
+
+    private static Node insert(Node node, int index, Task task) {
+        if (node == null) {
+            return new Node(task, null, null);
+        }
+        int leftSize = sizeOf(node.left);
+        if (index <= leftSize) {
+            return balance(node.task, insert(node.left, index, task), node.right);
+        }
+        return balance(node.task, node.left, insert(node.right, index - leftSize - 1, task));
+    }
+
+    private static Node delete(Node node, int index) {
+        int leftSize = sizeOf(node.left);
+        if (index < leftSize) {
+            return balance(node.task, delete(node.left, index), node.right);
+        }
+        if (index > leftSize) {
+            return balance(node.task, node.left, delete(node.right, index - leftSize - 1));
+        }
+        if (node.left == null) {
+            return node.right;
+        }
+        if (node.right == null) {
+            return node.left;
+        }
+        Node successor = node.right;
+        while (successor.left != null) {
+            successor = successor.left;
+        }
+        return balance(successor.task, node.left, delete(node.right, 0));
+    }
+
+    /**
+     * Joins two subtrees whose heights differ by at most two under a new node, rotating
+     * if needed to keep the heights of every node's subtrees within one of each other.
+     */
+    private static Node balance(Task task, Node left, Node right) {
+        int difference = heightOf(left) - heightOf(right);
+        if (difference > 1) {
+            if (heightOf(left.left) >= heightOf(left.right)) {
+                return new Node(left.task, left.left, new Node(task, left.right, right));
+            }
+            return new Node(left.right.task, new Node(left.task, left.left, left.right.left),
+                    new Node(task, left.right.right, right));
+        }
+        if (difference < -1) {
+            if (heightOf(right.right) >= heightOf(right.left)) {
+                return new Node(right.task, new Node(task, left, right.left), right.right);
+            }
+            return new Node(right.left.task, new Node(task, left, right.left.left),
+                    new Node(right.task, right.left.right, right.right));
+        }
+        return new Node(task, left, right);
+    }
+
+    private static int sizeOf(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static int heightOf(Node node) {
+        return node == null ? 0 : node.height;
+    }
+}
@@ -0,0 +1,172 @@
+package pichu.core;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.TreeSet;
+
+import pichu.task.Deadline;
+import pichu.task.Event;
+import pichu.task.Task;
+
+/**
+ * Indexes the times of deadlines and events.
+ *
+ * <p>Deadlines are kept sorted by due time, so a due-date query seeks to the first match
+ * and reads the matches in order. Event spans live in an {@link EventIntervalTree}. Both
+ * take O(log n + k) time for k matches. Deadlines and events whose times could not be
+ * parsed are kept apart, so they can be listed instead of silently matching nothing.
+ * Todos have no times and are not indexed.
+ */
+class TemporalIndex {
+    private static final Comparator<DatedTask> BY_TIME = Comparator.comparingLong((DatedTask dated) -> dated.time)
+            .thenComparingInt(DatedTask::getId);
+
+    private final TreeSet<DatedTask> deadlines = new TreeSet<>(BY_TIME);
+    private final EventIntervalTree events = new EventIntervalTree();
+    private TaskBitmap undatedIds = new TaskBitmap();
+
+    private static class DatedTask {
+        private final long time;
+        private final Task task;
+
+        DatedTask(long time, Task task) {
+            this.time = time;
+            this.task = task;
+        }
+
+        /**
+         * Returns the task ID. A bound without a task sorts before every task with the
+         * same time, so it can start or end a range at exactly that time.
+         */
+        int getId() {
+            return task == null ? Integer.MIN_VALUE : task.getId();
+        }
+    }
+
+    /**
+     * Indexes a task if it is a deadline or an event.
+     *
+     * @param task the task, which must have an ID
+     */
+    void add(Task task) {
+        if (task instanceof Deadline) {
+            LocalDateTime due = ((Deadline) task).getDeadline();
+            if (due == null) {
+                undatedIds.add(task.getId());
+            } else {
+                deadlines.add(new DatedTask(toSeconds(due), task));
+            }
+        } else if (task instanceof Event) {
+            Event event = (Event) task;
+            if (event.getStartDateTime() == null || event.getEndDateTime() == null) {
+                undatedIds.add(task.getId());
+            } else {
+                long start = toSeconds(event.getStartDateTime());
+                long end = toSeconds(event.getEndDateTime());
+                events.add(Math.min(start, end), Math.max(start, end), task);
+            }
+        }
+    }
+
+    /**
+     * Removes a task that was added before.
+     *
+     * @param task the task
+     */
+    void remove(Task task) {
+        if (task instanceof Deadline) {
+            LocalDateTime due = ((Deadline) task).getDeadline();
+            if (due == null) {
+                undatedIds.remove(task.getId());
+            } else {
+                deadlines.remove(new DatedTask(toSeconds(due), task));
+            }
+        } else if (task instanceof Event) {
+            Event event = (Event) task;
+            if (event.getStartDateTime() == null || event.getEndDateTime() == null) {
+                undatedIds.remove(task.getId());
+            } else {
+                events.remove(Math.min(toSeconds(event.getStartDateTime()), toSeconds(event.getEndDateTime())),
+                        task);
+            }
+        }
+    }
+
+    void clear() {
+        deadlines.clear();
+        events.clear();
+        undatedIds = new TaskBitmap();
+    }
+
+    /**
+     * Returns the deadlines due strictly before a time, earliest first.
+     */
+    ArrayList<Task> findDueBefore(LocalDateTime time) {
+        return toTasks(deadlines.headSet(new DatedTask(toSeconds(time), null), false));
+    }
+
+    /**
+     * Returns the deadlines due within a span, including both ends, earliest first.
+     */
+    ArrayList<Task> findDueBetween(LocalDateTime from, LocalDateTime to) {
+        if (to.isBefore(from)) {
+            return new ArrayList<>();
+        }
+        return toTasks(deadlines.subSet(new DatedTask(toSeconds(from), null), true,
+                new DatedTask(toSeconds(to) + 1, null), false));
+    }
+
+    /**
+     * Estimates the number of deadlines due within a span, including both ends, assuming
+     * due times are spread evenly between the earliest and the latest. This takes
+     * O(log n) time, while counting them exactly would take time in the number found.
+     */
+    int estimateDueBetween(LocalDateTime from, LocalDateTime to) {
+        if (deadlines.isEmpty()) {
+            return 0;
+        }
+        long first = deadlines.first().time;
+        long last = deadlines.last().time;
+        long start = Math.max(first, toSeconds(from));
+        long end = Math.min(last, toSeconds(to));
+        if (end < start) {
+            return 0;
+        }
+        if (first == last) {
+            return deadlines.size();
+        }
+        double fraction = (double) (end - start) / (last - first);
+        return Math.max(1, (int) Math.ceil(fraction * deadlines.size()));
+    }
+
+    /**
+     * Returns the events that share at least one moment with a span, by start time.
+     */
+    ArrayList<Task> findOverlapping(LocalDateTime from, LocalDateTime to) {
+        ArrayList<Task> matches = new ArrayList<>();
+        events.findOverlapping(toSeconds(from), toSeconds(to), matches);
+        return matches;
+    }
+
+    /**
+     * Returns the IDs of deadlines and events whose times could not be parsed. The result
+     * must not be modified.
+     */
+    TaskBitmap getUndatedIds() {
+        return undatedIds;
+    }
+
+    private static ArrayList<Task> toTasks(Iterable<DatedTask> matches) {
+        ArrayList<Task> tasks = new ArrayList<>();
+        for (DatedTask dated : matches) {
+            tasks.add(dated.task);
+        }
+        return tasks;
+    }
+
+    private static long toSeconds(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,176 @@
+package pichu.core;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index from the three-letter pieces of words to the words that contain them, for
+ * finding the words within a small edit distance of a misspelt one.
+ *
+ * <p>Words are padded with a boundary mark at both ends, so a word of n letters has n
+ * trigrams. One edit changes at most three trigrams, so a word within k edits of the
+ * query shares at least n - 3k of its trigrams. Only the words that share that many are
+ * compared letter by letter. Each word of the vocabulary has a small ID, and each trigram
+ * keeps the sorted IDs of its words, so counting shared trigrams is a sort of the IDs of
+ * the query's trigrams rather than a look at every word.
+ */
+class WordTrigramIndex {
+    private static final char BOUNDARY = '$';
+    private static final int GRAM_LENGTH = 3;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Map<String, TaskTextIndex.Postings> grams = new HashMap<>();
+    private final Map<String, Integer> wordIds = new HashMap<>();
+    private String[] words = new String[INITIAL_CAPACITY];
+    private int[] freeIds = new int[INITIAL_CAPACITY];
+    private int freeCount;
+    private int nextWordId;
+
+    /**
+     * Adds a word of the vocabulary.
+     *
+     * @param word a lower-case word that is not in the index yet
+     */
+    void add(String word) {
+        int id = freeCount > 0 ? freeIds[--freeCount] : nextWordId++;
+        if (id == words.length) {
+            words = Arrays.copyOf(words, id * 2);
+        }
+        words[id] = word;
+        wordIds.put(word, id);
+        for (String gram : gramsOf(word)) {
+            grams.computeIfAbsent(gram, key -> new TaskTextIndex.Postings()).add(id);
+        }
+    }
+
+    /**
+     * Removes a word that no task contains any more.
+     *
+     * @param word the word
+     */
+    void remove(String word) {
+        Integer id = wordIds.remove(word);
+        if (id == null) {
+            return;
+        }
+        for (String gram : gramsOf(word)) {
+            TaskTextIndex.Postings ids = grams.get(gram);
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                grams.remove(gram);
+            }
+        }
+        words[id] = null;
+        if (freeCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+        }
+        freeIds[freeCount++] = id;
+    }
+
+    /**
+     * Removes all words.
+     */
+    void clear() {
+        grams.clear();
+        wordIds.clear();
+        words = new String[INITIAL_CAPACITY];
+        freeCount = 0;
+        nextWordId = 0;
+    }
+
+    /**
+     * Finds the words within an edit distance of a word, counting each inserted, deleted
+     * or replaced letter as one edit.
+     *
+     * @param word a lower-case word
+     * @param maxDistance the largest edit distance to accept, small enough that the word
+     *     has more than three trigrams per edit
+     * @return the distance of every word found, including the word itself if it is known
+     */
+    Map<String, Integer> findSimilar(String word, int maxDistance) {
+        Set<String> queryGrams = gramsOf(word);
+        int minShared = Math.max(1, queryGrams.size() - GRAM_LENGTH * maxDistance);
+        int total = 0;
+        int[][] lists = new int[queryGrams.size()][];
+        int count = 0;
+        for (String gram : queryGrams) {
+            TaskTextIndex.Postings ids = grams.get(gram);
+            lists[count] = ids == null ? new int[0] : ids.toArray();
+            total += lists[count++].length;
+        }
+        int[] all = new int[total];
+        int length = 0;
+        for (int[] ids : lists) {
+            System.arraycopy(ids, 0, all, length, ids.length);
+            length += ids.length;
+        }
+        Arrays.sort(all);
+
+        Map<String, Integer> similar = new HashMap<>();
+        for (int i = 0; i < all.length;) {
+            int runEnd = i;
+            while (runEnd < all.length && all[runEnd] == all[i]) {
+                runEnd++;
+            }
+            if (runEnd - i >= minShared) {
+                String candidate = words[all[i]];
+                int distance = editDistance(word, candidate, maxDistance);
+                if (distance <= maxDistance) {
+                    similar.put(candidate, distance);
+                }
+            }
+            i = runEnd;
+        }
+        return similar;
+    }
+
+    private static Set<String> gramsOf(String word) {
+        String padded = BOUNDARY + word + BOUNDARY;
+        Set<String> result = new LinkedHashSet<>();
+        for (int i = 0; i + GRAM_LENGTH <= padded.length(); i++) {
+            result.add(padded.substring(i, i + GRAM_LENGTH));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the edit distance between two words, or any number above the limit once it
+     * is clear the distance is above it.
+     */
+    static int editDistance(String first, String second, int limit) {
+        if (Math.abs(first.length() - second.length()) > limit) {
+            return limit + 1;
+        }
+        int[] previous = new int[second.length() + 1];
+        int[] current = new int[second.length() + 1];
+        for (int j = 0; j <= second.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= first.length(); i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            for (int j = 1; j <= second.length(); j++) {
+                int cost = first.charAt(i - 1) == second.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1], previous[j]) + 1, previous[j - 1] + cost);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > limit) {
+                return limit + 1;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[second.length()];
+    }
+
+    /**
+     * Returns the number of words in the index.
+     */
+    int size() {
+        return wordIds.size();
+    }
+}
@@ -1,5 +1,18 @@
 package pichu.parser;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import pichu.core.TaskQuery;
 import pichu.task.Deadline;
 import pichu.task.Event;
 import pichu.task.Task;
@@ -18,18 +31,65 @@ public class Parser {
     private static final String EVENT_COMMAND = "event ";
     private static final String DELETE_COMMAND = "delete ";
     private static final String FIND_COMMAND = "find ";
+    private static final String FUZZY_FIND_COMMAND = "find~ ";
     private static final String TAG_COMMAND = "tag ";
+    private static final String DUE_COMMAND = "due ";
+    private static final String OVERLAP_COMMAND = "overlap ";
+    private static final String QUERY_COMMAND = "query ";
+    private static final String NEXT_COMMAND = "next";
+    private static final String UNDO_COMMAND = "undo";
+    private static final String REDO_COMMAND = "redo";
+    private static final String BEFORE_FLAG = "/before ";
+    private static final String FROM_FLAG = "/from ";
+    private static final String TO_FLAG = "/to ";
+    private static final String UNDATED_FLAG = "/undated";
+    private static final String EXPLAIN_FLAG = "/explain";
+    private static final String TYPE_CONDITION = "type:";
+    private static final String DONE_CONDITION = "done:";
+    private static final String TAG_CONDITION = "tag:";
+    private static final String TAG_SYMBOL = "#";
+    private static final String DONE_SELECTOR = "done";
+    private static final String TAG_SELECTOR = "tag ";
+    private static final String RANGE_SEPARATOR = "-";
+    private static final String LIST_SEPARATOR = ",";
+    private static final String[] COMMANDS = {
+            BYE_COMMAND, LIST_COMMAND, MARK_COMMAND, UNMARK_COMMAND, TODO_COMMAND, DEADLINE_COMMAND, EVENT_COMMAND,
+            DELETE_COMMAND, FIND_COMMAND, FUZZY_FIND_COMMAND, TAG_COMMAND, DUE_COMMAND, OVERLAP_COMMAND,
+            QUERY_COMMAND, NEXT_COMMAND, UNDO_COMMAND, REDO_COMMAND
+    };
+    private static final DateTimeFormatter[] DATE_ONLY_FORMATS = {
+            DateTimeFormatter.ofPattern("yyyy-MM-dd"), // 2019-12-02
+            DateTimeFormatter.ofPattern("d/M/yyyy") // 2/12/2019
+    };
 
     private static final int TODO_PREFIX_LENGTH = 5;
     private static final int FIND_PREFIX_LENGTH = 5;
+    private static final int FUZZY_FIND_PREFIX_LENGTH = 6;
     private static final int TAG_PREFIX_LENGTH = 4;
     private static final int MIN_COMMAND_PARTS = 2;
+    private static final String ID_REFERENCE_PREFIX = "#";
+    private static final int MIN_TODO_FIELDS = 3;
+    private static final int MIN_DEADLINE_FIELDS = 4;
+    private static final int MIN_EVENT_FIELDS = 5;
+    private static final int MAX_ID_DIGITS = 9;
+    private static final Pattern SINGLE_TAG_PATTERN = Pattern.compile("#?\\w+");
+    private static final Pattern INDEX_RANGES_PATTERN = Pattern.compile("\\d[\\d\\s,-]*");
+    // A quoted phrase or a run of non-spaces, and the parts of a due date condition
+    private static final Pattern QUERY_TERM_PATTERN = Pattern.compile("\"([^\"]*)\"|(\\S+)");
+    private static final Pattern DUE_CONDITION_PATTERN = Pattern.compile("(?i)due(<=|>=|<|>)(.*)");
+    private static final Pattern TIME_PATTERN = Pattern.compile("\\d{4}");
+    private static final Pattern CONDITION_KEY_PATTERN = Pattern.compile("[a-zA-Z]+:.*");
+    private static final String QUERY_EXAMPLE = "query type:D done:false tag:work due<2026-11-01 \"report\"";
+    // "/page N" at the end of a command, or "page N" straight after list
+    private static final Pattern PAGE_PATTERN =
+            Pattern.compile("(?i)(?:\\s+/|(?<=^list)\\s+)page\\s+(\\d{1," + MAX_ID_DIGITS + "})\\s*$");
 
     /**
      * Enum representing different command types.
      */
     public enum CommandType {
-        BYE, LIST, MARK, UNMARK, TODO, DEADLINE, EVENT, DELETE, FIND, TAG, UNKNOWN
+        BYE, LIST, MARK, UNMARK, TODO, DEADLINE, EVENT, DELETE, FIND, FUZZY_FIND, TAG, DUE, OVERLAP, NEXT, UNDO, REDO,
+        QUERY, UNKNOWN
     }
 
     /**
@@ -47,6 +107,19 @@ public class Parser {
         return mapCommandToType(command);
     }
 
+    /**
+     * Returns the words that start each command, such as {@code deadline} and {@code find~}.
+     *
+     * @return the command words
+     */
+    public static List<String> getCommandWords() {
+        List<String> words = new ArrayList<>();
+        for (String command : COMMANDS) {
+            words.add(command.trim());
+        }
+        return words;
+    }
+
     private static boolean isInvalidInput(String input) {
         return input == null || input.trim().isEmpty();
     }
@@ -54,7 +127,7 @@ public class Parser {
     private static CommandType mapCommandToType(String command) {
         if (command.equals(BYE_COMMAND)) {
             return CommandType.BYE;
-        } else if (command.equals(LIST_COMMAND)) {
+        } else if (removePage(command).equals(LIST_COMMAND)) {
             return CommandType.LIST;
         } else if (command.startsWith(MARK_COMMAND)) {
             return CommandType.MARK;
@@ -70,8 +143,22 @@ public class Parser {
             return CommandType.DELETE;
         } else if (command.startsWith(FIND_COMMAND)) {
             return CommandType.FIND;
+        } else if (command.startsWith(FUZZY_FIND_COMMAND)) {
+            return CommandType.FUZZY_FIND;
         } else if (command.startsWith(TAG_COMMAND)) {
             return CommandType.TAG;
+        } else if (command.startsWith(DUE_COMMAND)) {
+            return CommandType.DUE;
+        } else if (command.startsWith(OVERLAP_COMMAND)) {
+            return CommandType.OVERLAP;
+        } else if (command.startsWith(QUERY_COMMAND)) {
+            return CommandType.QUERY;
+        } else if (command.equals(NEXT_COMMAND)) {
+            return CommandType.NEXT;
+        } else if (command.equals(UNDO_COMMAND)) {
+            return CommandType.UNDO;
+        } else if (command.equals(REDO_COMMAND)) {
+            return CommandType.REDO;
         } else {
             return CommandType.UNKNOWN;
         }
@@ -92,6 +179,151 @@ public class Parser {
         return Integer.parseInt(parts[1].trim());
     }
 
+    /**
+     * Returns whether a mark/unmark/delete command refers to a task by its ID, as in
+     * {@code mark #12}, rather than by its position in the list.
+     *
+     * @param input the user's input command
+     * @return true if the argument is an ID reference
+     */
+    public static boolean isIdReference(String input) {
+        String[] parts = input.split(" ", MIN_COMMAND_PARTS);
+        return parts.length == MIN_COMMAND_PARTS && parts[1].trim().startsWith(ID_REFERENCE_PREFIX);
+    }
+
+    /**
+     * Parses the task ID from a mark/unmark/delete command such as {@code mark #12}.
+     *
+     * @param input the user's input command
+     * @return the ID specified by the user
+     * @throws NumberFormatException if the ID is not a valid number
+     */
+    public static int parseId(String input) throws NumberFormatException {
+        String[] parts = input.split(" ", MIN_COMMAND_PARTS);
+        if (parts.length < MIN_COMMAND_PARTS) {
+            throw new NumberFormatException("No ID provided");
+        }
+        return Integer.parseInt(parts[1].trim().substring(ID_REFERENCE_PREFIX.length()));
+    }
+
+
+    /**
+     * Returns whether a mark/unmark/delete command selects several tasks, as in
+     * {@code delete 3,7,9}, {@code mark 1-500}, {@code delete done} or {@code unmark tag #x},
+     * rather than one task by index or ID.
+     *
+     * @param input the user's input command
+     * @return true if the command selects tasks in bulk
+     */
+    public static boolean isBulkCommand(String input) {
+        String selector = getSelector(input);
+        return isDoneSelection(input) || selector.toLowerCase().startsWith(TAG_SELECTOR)
+                || (INDEX_RANGES_PATTERN.matcher(selector).matches()
+                        && (selector.contains(LIST_SEPARATOR) || selector.contains(RANGE_SEPARATOR)));
+    }
+
+    /**
+     * Returns whether a bulk command selects the completed tasks, as in {@code delete done}.
+     *
+     * @param input the user's input command
+     * @return true if the command selects the completed tasks
+     */
+    public static boolean isDoneSelection(String input) {
+        return getSelector(input).equalsIgnoreCase(DONE_SELECTOR);
+    }
+
+    /**
+     * Returns whether a bulk command selects tasks by tag, as in {@code unmark tag #x}.
+     *
+     * @param input the user's input command
+     * @return true if the command selects tasks by tag
+     */
+    public static boolean isTagSelection(String input) {
+        return getSelector(input).toLowerCase().startsWith(TAG_SELECTOR);
+    }
+
+    /**
+     * Parses the tag query of a bulk command such as {@code unmark tag #work & !#urgent}.
+     *
+     * @param input the user's input command
+     * @return the tag query as the user typed it
+     * @throws IllegalArgumentException if the query is empty
+     */
+    public static String parseSelectionTagQuery(String input) throws IllegalArgumentException {
+        String query = getSelector(input).substring(TAG_SELECTOR.length()).trim();
+        if (query.isEmpty()) {
+            throw new IllegalArgumentException("The search tag cannot be empty.");
+        }
+        return query;
+    }
+
+    /**
+     * Parses the indexes of a bulk command such as {@code delete 1-3,7,9-10}.
+     *
+     * @param input the user's input command
+     * @return sorted ranges that do not overlap, where [i][0] is the 1-based index of the
+     *     first task of a range and [i][1] that of its last
+     * @throws NumberFormatException if the indexes cannot be read or a range ends before it starts
+     */
+    public static int[][] parseIndexRanges(String input) throws NumberFormatException {
+        String[] items = getSelector(input).split(LIST_SEPARATOR);
+        int[][] ranges = new int[items.length][];
+        for (int i = 0; i < items.length; i++) {
+            String[] ends = items[i].split(RANGE_SEPARATOR, 2);
+            int first = Integer.parseInt(ends[0].trim());
+            int last = ends.length == 1 ? first : Integer.parseInt(ends[1].trim());
+            if (last < first) {
+                throw new NumberFormatException("The range " + items[i].trim() + " ends before it starts");
+            }
+            ranges[i] = new int[]{first, last};
+        }
+
+        // Merge the ranges so that no task is selected twice
+        Arrays.sort(ranges, (a, b) -> Integer.compare(a[0], b[0]));
+        int count = 0;
+        for (int[] range : ranges) {
+            if (count > 0 && range[0] <= ranges[count - 1][1] + 1) {
+                ranges[count - 1][1] = Math.max(ranges[count - 1][1], range[1]);
+            } else {
+                ranges[count++] = range;
+            }
+        }
+        return Arrays.copyOf(ranges, count);
+    }
+
+    private static String getSelector(String input) {
+        String[] parts = input.trim().split(" ", MIN_COMMAND_PARTS);
+        return parts.length < MIN_COMMAND_PARTS ? "" : parts[1].trim();
+    }
+
+    /**
+     * Parses the page a command asks for, as in {@code find book /page 2} or {@code list page 3}.
+     *
+     * @param input the user's input command
+     * @return the page number (1-based), or 1 if the command does not name a page
+     * @throws IllegalArgumentException if the page number is zero
+     */
+    public static int parsePage(String input) throws IllegalArgumentException {
+        Matcher matcher = PAGE_PATTERN.matcher(input.trim());
+        if (!matcher.find()) {
+            return 1;
+        }
+        int page = Integer.parseInt(matcher.group(1));
+        if (page < 1) {
+            throw new IllegalArgumentException("Pages are numbered from 1.");
+        }
+        return page;
+    }
+
+    /**
+     * Removes the page option from a command, leaving the rest for the other parse methods.
+     *
+     * @param input the user's input command
+     * @return the command without its page option
+     */
+    public static String removePage(String input) {
+        return PAGE_PATTERN.matcher(input.trim()).replaceFirst("");
+    }
 
     /**
      * Parses a todo command to extract the description.
@@ -181,17 +413,241 @@ public class Parser {
     }
 
     /**
-     * Parses a find command to extract the search keyword.
+     * Parses a tag command to extract the tag query, such as {@code #work & !#blocked}.
+     *
+     * @param input the user's input command
+     * @return the tag query as the user typed it
+     * @throws IllegalArgumentException if the query is empty
+     */
+    public static String parseTagQuery(String input) throws IllegalArgumentException {
+        if (input.length() <= TAG_PREFIX_LENGTH - 1 || input.substring(TAG_PREFIX_LENGTH).trim().isEmpty()) {
+            throw new IllegalArgumentException("The search tag cannot be empty.");
+        }
+        return input.substring(TAG_PREFIX_LENGTH).trim();
+    }
+
+    /**
+     * Returns whether a tag query names a single tag rather than combining tags.
+     *
+     * @param query the tag query
+     * @return true if the query is one tag, with or without its # symbol
+     */
+    public static boolean isSingleTag(String query) {
+        return SINGLE_TAG_PATTERN.matcher(query).matches();
+    }
+
+    /**
+     * Returns whether a due command asks for the tasks whose dates could not be read,
+     * as in {@code due /undated}.
+     *
+     * @param input the user's input command
+     * @return true if the command is {@code due /undated}
+     */
+    public static boolean isUndatedDueCommand(String input) {
+        return input.substring(DUE_COMMAND.length()).trim().equalsIgnoreCase(UNDATED_FLAG);
+    }
+
+    /**
+     * Parses a due command, either {@code due /before DATETIME} or
+     * {@code due /from DATETIME /to DATETIME}.
+     *
+     * @param input the user's input command
+     * @return an array where [0] is the start of the range, or null for /before, and [1] is its end
+     * @throws IllegalArgumentException if the range is missing or a date cannot be read
+     */
+    public static LocalDateTime[] parseDueCommand(String input) throws IllegalArgumentException {
+        String arguments = input.substring(DUE_COMMAND.length()).trim();
+        if (arguments.startsWith(BEFORE_FLAG)) {
+            return new LocalDateTime[]{null, parseQueryDateTime(arguments.substring(BEFORE_FLAG.length()), false)};
+        }
+        if (arguments.startsWith(FROM_FLAG)) {
+            return parseDateRange(arguments);
+        }
+        throw new IllegalArgumentException("Please use due /before DATETIME, due /from DATETIME /to DATETIME"
+                + " or due /undated.");
+    }
+
+    /**
+     * Parses an overlap command of the form {@code overlap /from DATETIME /to DATETIME}.
+     *
+     * @param input the user's input command
+     * @return an array where [0] is the start of the period and [1] is its end
+     * @throws IllegalArgumentException if the period is missing or a date cannot be read
+     */
+    public static LocalDateTime[] parseOverlapCommand(String input) throws IllegalArgumentException {
+        String arguments = input.substring(OVERLAP_COMMAND.length()).trim();
+        if (!arguments.startsWith(FROM_FLAG)) {
+            throw new IllegalArgumentException("Please use overlap /from DATETIME /to DATETIME.");
+        }
+        return parseDateRange(arguments);
+    }
+
+    private static LocalDateTime[] parseDateRange(String arguments) throws IllegalArgumentException {
+        String[] startAndEnd = arguments.substring(FROM_FLAG.length()).split(TO_FLAG, 2);
+        if (startAndEnd.length < 2) {
+            throw new IllegalArgumentException("Please give the end of the period with /to DATETIME.");
+        }
+        return new LocalDateTime[]{parseQueryDateTime(startAndEnd[0], false), parseQueryDateTime(startAndEnd[1], true)};
+    }
+
+    /**
+     * Parses a date and time for a query. Besides the formats tasks accept, a date alone
+     * means the start of that day, or its end if it closes a period.
+     */
+    private static LocalDateTime parseQueryDateTime(String input, boolean isEndOfPeriod)
+            throws IllegalArgumentException {
+        String trimmed = input.trim();
+        LocalDateTime dateTime = Deadline.parseDateTime(trimmed);
+        if (dateTime != null) {
+            return dateTime;
+        }
+        for (DateTimeFormatter formatter : DATE_ONLY_FORMATS) {
+            try {
+                LocalDate date = LocalDate.parse(trimmed, formatter);
+                return isEndOfPeriod ? date.atTime(LocalTime.MAX) : date.atStartOfDay();
+            } catch (DateTimeParseException e) {
+                // Continue to next format
+            }
+        }
+        throw new IllegalArgumentException("I can't read the date '" + trimmed + "'. Try yyyy-MM-dd HHmm.");
+    }
+
+    /**
+     * Parses a query command such as {@code query type:D done:false tag:work due<2026-11-01 "report"}.
+     *
+     * <p>Every condition must hold. {@code type:} takes T, D or E (or todo, deadline and
+     * event), {@code done:} takes true or false, and {@code tag:NAME} or {@code #NAME} a tag.
+     * {@code due<}, {@code due<=}, {@code due>} and {@code due>=} compare the due time of
+     * deadlines with a date, optionally followed by a time such as {@code 1800}. Any other
+     * word, or words in quotes, must appear in the description.
+     *
+     * @param input the user's input command, without any page option
+     * @return the query
+     * @throws IllegalArgumentException if a condition cannot be read or there are none
+     */
+    public static TaskQuery parseQuery(String input) throws IllegalArgumentException {
+        List<String> terms = new ArrayList<>();
+        List<Boolean> isQuoted = new ArrayList<>();
+        Matcher matcher = QUERY_TERM_PATTERN.matcher(input.substring(QUERY_COMMAND.length()));
+        while (matcher.find()) {
+            terms.add(matcher.group(1) != null ? matcher.group(1) : matcher.group(2));
+            isQuoted.add(matcher.group(1) != null);
+        }
+
+        TaskQuery query = new TaskQuery();
+        for (int i = 0; i < terms.size(); i++) {
+            String term = terms.get(i);
+            String lowerCaseTerm = term.toLowerCase();
+            Matcher dueMatcher = DUE_CONDITION_PATTERN.matcher(term);
+            if (isQuoted.get(i)) {
+                query.addWords(term);
+            } else if (lowerCaseTerm.startsWith(TYPE_CONDITION)) {
+                query.setType(parseQueryType(term.substring(TYPE_CONDITION.length())));
+            } else if (lowerCaseTerm.startsWith(DONE_CONDITION)) {
+                query.setCompleted(parseQueryCompletion(term.substring(DONE_CONDITION.length())));
+            } else if (lowerCaseTerm.startsWith(TAG_CONDITION) || term.startsWith(TAG_SYMBOL)) {
+                String tag = term.substring(term.startsWith(TAG_SYMBOL) ? 0 : TAG_CONDITION.length());
+                if (!SINGLE_TAG_PATTERN.matcher(tag).matches()) {
+                    throw new IllegalArgumentException("I can't read the tag in '" + term + "'.");
+                }
+                query.addTag(tag.startsWith(TAG_SYMBOL) ? tag.substring(TAG_SYMBOL.length()) : tag);
+            } else if (dueMatcher.matches()) {
+                String date = dueMatcher.group(2);
+                boolean hasTime = i + 1 < terms.size() && !isQuoted.get(i + 1)
+                        && TIME_PATTERN.matcher(terms.get(i + 1)).matches();
+                if (hasTime) {
+                    date += " " + terms.get(++i);
+                }
+                setDueBound(query, dueMatcher.group(1), date);
+            } else if (CONDITION_KEY_PATTERN.matcher(term).matches()) {
+                throw new IllegalArgumentException("I don't know the condition '" + term + "'. Try " + QUERY_EXAMPLE);
+            } else if (!lowerCaseTerm.equals(EXPLAIN_FLAG)) {
+                query.addWords(term);
+            }
+        }
+        if (query.isEmpty()) {
+            throw new IllegalArgumentException("Please give at least one condition, e.g. " + QUERY_EXAMPLE);
+        }
+        return query;
+    }
+
+    /**
+     * Returns whether a query command asks to explain how it was run, as in
+     * {@code query tag:work /explain}.
+     *
+     * @param input the user's input command, without any page option
+     * @return true if the command has the explain flag
+     */
+    public static boolean isExplainQuery(String input) {
+        Matcher matcher = QUERY_TERM_PATTERN.matcher(input);
+        while (matcher.find()) {
+            if (matcher.group(2) != null && matcher.group(2).equalsIgnoreCase(EXPLAIN_FLAG)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String parseQueryType(String type) throws IllegalArgumentException {
+        switch (type.toLowerCase()) {
+        case "t":
+        case "todo":
+            return "T";
+        case "d":
+        case "deadline":
+            return "D";
+        case "e":
+        case "event":
+            return "E";
+        default:
+            throw new IllegalArgumentException("The type '" + type + "' should be T, D or E.");
+        }
+    }
+
+    private static boolean parseQueryCompletion(String completion) throws IllegalArgumentException {
+        if (completion.equalsIgnoreCase("true") || completion.equalsIgnoreCase("yes")) {
+            return true;
+        }
+        if (completion.equalsIgnoreCase("false") || completion.equalsIgnoreCase("no")) {
+            return false;
+        }
+        throw new IllegalArgumentException("done: should be true or false, not '" + completion + "'.");
+    }
+
+    /**
+     * Sets one end of the due range of a query. A date alone means the whole day, so
+     * {@code due<=2026-11-01} includes that day and {@code due>2026-11-01} starts after it.
+     */
+    private static void setDueBound(TaskQuery query, String operator, String date) throws IllegalArgumentException {
+        switch (operator) {
+        case "<":
+            query.setDueTo(parseQueryDateTime(date, false).minusSeconds(1));
+            break;
+        case "<=":
+            query.setDueTo(parseQueryDateTime(date, true));
+            break;
+        case ">":
+            query.setDueFrom(parseQueryDateTime(date, true).truncatedTo(ChronoUnit.SECONDS).plusSeconds(1));
+            break;
+        default:
+            query.setDueFrom(parseQueryDateTime(date, false));
+            break;
+        }
+    }
+
+    /**
+     * Parses a find or find~ command to extract the search keyword.
      *
      * @param input the user's input command
      * @return the search keyword
      * @throws IllegalArgumentException if the keyword is empty
      */
     public static String parseFindKeyword(String input) throws IllegalArgumentException {
-        if (input.length() <= FIND_PREFIX_LENGTH - 1 || input.substring(FIND_PREFIX_LENGTH).trim().isEmpty()) {
+        int prefixLength = input.startsWith(FUZZY_FIND_COMMAND) ? FUZZY_FIND_PREFIX_LENGTH : FIND_PREFIX_LENGTH;
+        if (input.length() <= prefixLength - 1 || input.substring(prefixLength).trim().isEmpty()) {
             throw new IllegalArgumentException("The search keyword cannot be empty.");
         }
-        return input.substring(FIND_PREFIX_LENGTH).trim();
+        return input.substring(prefixLength).trim();
     }
 
     /**
@@ -211,6 +667,12 @@ public class Parser {
         }
 
         String type = parts[0];
+        int id = Task.NO_ID;
+        if (parts.length > minimumFields(type) && isIdField(parts[parts.length - 1])) {
+            // The ID is always the last field, after the optional tags
+            id = Integer.parseInt(parts[parts.length - 1].substring(ID_REFERENCE_PREFIX.length()));
+            parts = Arrays.copyOf(parts, parts.length - 1);
+        }
         boolean isCompleted = parts[1].equals("1");
         String description = parts[2];
 
@@ -257,8 +719,37 @@ public class Parser {
 
         if (task != null) {
             task.setCompleted(isCompleted);
+            task.setId(id);
         }
 
         return task;
     }
+
+    private static int minimumFields(String type) {
+        switch (type) {
+        case "D":
+            return MIN_DEADLINE_FIELDS;
+        case "E":
+            return MIN_EVENT_FIELDS;
+        default:
+            return MIN_TODO_FIELDS;
+        }
+    }
+
+    /**
+     * Returns whether a field is an ID field. Tags cannot start with '#' in the file
+     * format, so this never mistakes a tag list for an ID.
+     */
+    private static boolean isIdField(String field) {
+        if (field.length() <= ID_REFERENCE_PREFIX.length() || !field.startsWith(ID_REFERENCE_PREFIX)) {
+            return false;
+        }
+        for (int i = ID_REFERENCE_PREFIX.length(); i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return field.length() <= ID_REFERENCE_PREFIX.length() + MAX_ID_DIGITS;
+    }
 }
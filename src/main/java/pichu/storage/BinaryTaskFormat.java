@@ -0,0 +1,529 @@
+package pichu.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+import pichu.task.Deadline;
+import pichu.task.Event;
+import pichu.task.Task;
+import pichu.task.Todo;
+
+/**
+ * Compact binary task file format.
+ *
+ * <p>The file starts with the magic bytes {@code PCHU} and a 2-byte version, followed by
+ * a sequence of records. A tag record defines the next tag id. A task record holds the
+ * task type, a flags byte, the task ID if the flags say it has one, the length-prefixed
+ * UTF-8 name, the ids of its tags and, for deadlines and events, fixed-width timestamps.
+ * Tags are defined the first time they are used, so tasks can be appended without
+ * rewriting the dictionary.
+ *
+ * <p>Every record starts with its kind, the length of its body and the CRC-32C of both.
+ * A whole record that fails its checksum or does not decode is skipped, and the file is
+ * rewritten without it before anything is added. A record cut short by a torn write ends
+ * the load: the file is truncated where that record starts, so later appends follow the
+ * last good record. Skipped records are reported like those of {@link RecordRecovery}.
+ * Files of older versions have no checksums. Their first bad record ends the load, and
+ * they are rewritten before anything is added.
+ *
+ * <p>Files are read through a memory mapping, so decoding does not copy the file onto
+ * the heap.
+ */
+public class BinaryTaskFormat implements TaskFileFormat {
+    static final byte[] MAGIC = {'P', 'C', 'H', 'U'};
+    static final short VERSION = 3;
+
+    private static final short FIRST_CHECKSUM_VERSION = 3;
+    private static final int HEADER_SIZE = MAGIC.length + Short.BYTES;
+    // Kind, body length and checksum
+    private static final int RECORD_HEADER_SIZE = Byte.BYTES + Integer.BYTES + Integer.BYTES;
+
+    private static final byte TAG_RECORD = 1;
+    private static final byte TASK_RECORD = 2;
+    private static final byte TODO_TYPE = 'T';
+    private static final byte DEADLINE_TYPE = 'D';
+    private static final byte EVENT_TYPE = 'E';
+    private static final byte COMPLETED_FLAG = 1;
+    private static final byte ID_FLAG = 2;
+    private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int INPUT_LENGTH = "yyyy-MM-dd HHmm".length();
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private Path dictionaryPath;
+    private Map<String, Integer> dictionary = new HashMap<>();
+    private short dictionaryVersion = VERSION;
+    private boolean hasDamagedRecords;
+
+    static boolean hasMagic(byte[] header) {
+        return Arrays.equals(header, MAGIC);
+    }
+
+    @Override
+    public void read(Path path, Consumer<Task> sink) throws IOException {
+        List<String> tags = new ArrayList<>();
+        if (!Files.exists(path) || Files.size(path) == 0) {
+            rememberDictionary(path, tags, VERSION, false);
+            return;
+        }
+
+        short version = VERSION;
+        int tornTailStart = -1;
+        int skipped = 0;
+        int cutOff = 0;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < HEADER_SIZE) {
+                // The first write was torn before the header was complete
+                tornTailStart = 0;
+            } else {
+                version = readHeader(buffer);
+            }
+            boolean hasChecksums = version >= FIRST_CHECKSUM_VERSION;
+            while (tornTailStart < 0 && buffer.hasRemaining()) {
+                int recordStart = buffer.position();
+                Task task = null;
+                try {
+                    byte recordType = buffer.get();
+                    ByteBuffer record = hasChecksums ? readWholeRecord(buffer) : null;
+                    ByteBuffer body = hasChecksums && record != null ? checkedBody(recordType, record) : buffer;
+                    if (hasChecksums && record == null) {
+                        tornTailStart = recordStart;
+                    } else if (body == null) {
+                        skipped++;
+                        if (isTagRecord(recordType, record)) {
+                            // Keeps the ids of the tags defined after it
+                            tags.add(null);
+                        }
+                    } else if (recordType == TAG_RECORD) {
+                        tags.add(readString(body));
+                    } else if (recordType == TASK_RECORD) {
+                        task = readTask(body, tags);
+                    } else if (hasChecksums) {
+                        throw new IOException("Unknown record type " + recordType + " at byte " + recordStart);
+                    } else {
+                        tornTailStart = recordStart;
+                    }
+                } catch (RuntimeException e) {
+                    if (hasChecksums) {
+                        // The record is whole, since its checksum matched, and is only skipped
+                        skipped++;
+                    } else {
+                        // A record cut short or scrambled by a torn write
+                        tornTailStart = recordStart;
+                    }
+                }
+                if (tornTailStart >= 0) {
+                    cutOff = hasChecksums ? countRecords(buffer, tornTailStart) : 1;
+                } else if (task != null) {
+                    sink.accept(task);
+                }
+            }
+        }
+
+        if (tornTailStart >= 0) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(tornTailStart);
+            }
+        }
+        if (skipped + cutOff > 0) {
+            RecordRecovery.report(path, skipped + cutOff, tornTailStart >= 0);
+        }
+        rememberDictionary(path, tags, version, skipped > 0);
+    }
+
+    private static short readHeader(ByteBuffer buffer) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        buffer.get(magic);
+        if (!hasMagic(magic)) {
+            throw new IOException("Not a binary task file");
+        }
+        short version = buffer.getShort();
+        if (version > VERSION) {
+            throw new IOException("Unsupported task file version " + version);
+        }
+        return version;
+    }
+
+    /**
+     * Returns the length, checksum and body of the record whose kind was just read and
+     * moves past it, or null if the record is cut short.
+     */
+    private static ByteBuffer readWholeRecord(ByteBuffer buffer) {
+        if (buffer.remaining() < RECORD_HEADER_SIZE - Byte.BYTES) {
+            return null;
+        }
+        int length = buffer.getInt(buffer.position());
+        if (length < 0 || length > buffer.remaining() - (RECORD_HEADER_SIZE - Byte.BYTES)) {
+            return null;
+        }
+        ByteBuffer record = buffer.slice();
+        record.limit(RECORD_HEADER_SIZE - Byte.BYTES + length);
+        buffer.position(buffer.position() + record.limit());
+        return record;
+    }
+
+    /**
+     * Returns the body of a whole record, or null if it fails its checksum.
+     */
+    private static ByteBuffer checkedBody(byte recordType, ByteBuffer record) {
+        int expected = record.getInt(Integer.BYTES);
+        record.position(RECORD_HEADER_SIZE - Byte.BYTES);
+        ByteBuffer body = record.slice();
+        return checksum(recordType, body.duplicate()) == expected ? body : null;
+    }
+
+    /**
+     * Returns whether a record that failed its checksum defined a tag. Its kind may be
+     * damaged too, so a record of no known kind is taken to be a tag unless its body
+     * starts like a task.
+     */
+    private static boolean isTagRecord(byte recordType, ByteBuffer record) {
+        if (recordType == TAG_RECORD || recordType == TASK_RECORD) {
+            return recordType == TAG_RECORD;
+        }
+        if (!record.hasRemaining()) {
+            return true;
+        }
+        byte taskType = record.get(record.position());
+        return taskType != TODO_TYPE && taskType != DEADLINE_TYPE && taskType != EVENT_TYPE;
+    }
+
+    /**
+     * Counts the records from the given offset to the end of the file, following their
+     * lengths for as long as they stay inside the file.
+     */
+    private static int countRecords(ByteBuffer buffer, int start) {
+        int count = 0;
+        int position = start;
+        while (position < buffer.limit()) {
+            count++;
+            if (buffer.limit() - position < RECORD_HEADER_SIZE) {
+                break;
+            }
+            int length = buffer.getInt(position + Byte.BYTES);
+            if (length < 0 || length > buffer.limit() - position - RECORD_HEADER_SIZE) {
+                break;
+            }
+            position += RECORD_HEADER_SIZE + length;
+        }
+        return count;
+    }
+
+    private static int checksum(byte recordType, ByteBuffer body) {
+        CRC32C crc = new CRC32C();
+        crc.update(recordType);
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static Task readTask(ByteBuffer buffer, List<String> tags) throws IOException {
+        byte type = buffer.get();
+        byte flags = buffer.get();
+        boolean isCompleted = (flags & COMPLETED_FLAG) != 0;
+        int id = (flags & ID_FLAG) != 0 ? buffer.getInt() : Task.NO_ID;
+        String name = readString(buffer);
+        int tagCount = buffer.getShort();
+        int[] tagIds = new int[tagCount];
+        for (int i = 0; i < tagCount; i++) {
+            tagIds[i] = buffer.getInt();
+        }
+
+        Task task;
+        switch (type) {
+        case TODO_TYPE:
+            task = new Todo(name);
+            break;
+        case DEADLINE_TYPE:
+            LocalDateTime deadline = readTimestamp(buffer);
+            task = new Deadline(name, deadline, readOriginalInput(buffer, deadline));
+            break;
+        case EVENT_TYPE:
+            LocalDateTime start = readTimestamp(buffer);
+            String startInput = readOriginalInput(buffer, start);
+            LocalDateTime end = readTimestamp(buffer);
+            task = new Event(name, start, startInput, end, readOriginalInput(buffer, end));
+            break;
+        default:
+            throw new IOException("Unknown task type " + (char) type);
+        }
+
+        for (int tagId : tagIds) {
+            // A tag whose record was damaged is dropped
+            if (tags.get(tagId) != null) {
+                task.addTag(tags.get(tagId));
+            }
+        }
+        task.setCompleted(isCompleted);
+        task.setId(id);
+        return task;
+    }
+
+    private static LocalDateTime readTimestamp(ByteBuffer buffer) {
+        long epochSecond = buffer.getLong();
+        if (epochSecond == NO_TIMESTAMP) {
+            return null;
+        }
+        return LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC);
+    }
+
+    /**
+     * Parsed timestamps are stored without the text the user typed, so their original
+     * input is rebuilt in a format the task parser accepts.
+     */
+    private static String readOriginalInput(ByteBuffer buffer, LocalDateTime dateTime) {
+        if (dateTime != null) {
+            return formatInput(dateTime);
+        }
+        return readString(buffer);
+    }
+
+    /**
+     * Formats the date time as {@code yyyy-MM-dd HHmm}. This runs once per timestamp on
+     * load, where a {@code DateTimeFormatter} would dominate the cost of decoding.
+     */
+    private static String formatInput(LocalDateTime dateTime) {
+        StringBuilder sb = new StringBuilder(INPUT_LENGTH);
+        sb.append(dateTime.getYear()).append('-');
+        appendTwoDigits(sb, dateTime.getMonthValue()).append('-');
+        appendTwoDigits(sb, dateTime.getDayOfMonth()).append(' ');
+        appendTwoDigits(sb, dateTime.getHour());
+        appendTwoDigits(sb, dateTime.getMinute());
+        return sb.toString();
+    }
+
+    private static StringBuilder appendTwoDigits(StringBuilder sb, int value) {
+        return sb.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    }
+
+    @Override
+    public void write(Path path, List<Task> tasks) throws IOException {
+        Map<String, Integer> tagIds = new HashMap<>();
+        try (RecordWriter out = new RecordWriter(FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))) {
+            out.putHeader();
+            for (Task task : tasks) {
+                writeTask(out, task, tagIds);
+            }
+        }
+        dictionaryPath = path;
+        dictionary = tagIds;
+        dictionaryVersion = VERSION;
+        hasDamagedRecords = false;
+    }
+
+    @Override
+    public void append(Path path, Task task) throws IOException {
+        if (!path.equals(dictionaryPath)) {
+            read(path, loadedTask -> { });
+        }
+        if (dictionaryVersion < VERSION || hasDamagedRecords) {
+            upgrade(path);
+        }
+        boolean isNewFile = !Files.exists(path) || Files.size(path) == 0;
+        try (RecordWriter out = new RecordWriter(FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND))) {
+            if (isNewFile) {
+                out.putHeader();
+            }
+            writeTask(out, task, dictionary);
+        }
+    }
+
+    /**
+     * Rewrites a file of an older version in the current one, so that records with
+     * checksums are not appended after records without. Damaged records are left out, so
+     * that new tags do not take the ids of damaged ones.
+     */
+    private void upgrade(Path path) throws IOException {
+        Path tempPath = Paths.get(path + TEMP_SUFFIX);
+        write(tempPath, read(path));
+        Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        dictionaryPath = path;
+    }
+
+    @Override
+    public void renamed(Path source, Path target) {
+        if (source.equals(dictionaryPath)) {
+            dictionaryPath = target;
+        }
+    }
+
+    private void rememberDictionary(Path path, List<String> tags, short version, boolean hasDamagedRecords) {
+        dictionaryPath = path;
+        dictionaryVersion = version;
+        this.hasDamagedRecords = hasDamagedRecords;
+        dictionary = new HashMap<>();
+        for (int i = 0; i < tags.size(); i++) {
+            if (tags.get(i) != null) {
+                dictionary.put(tags.get(i), i);
+            }
+        }
+    }
+
+    private static void writeTask(RecordWriter out, Task task, Map<String, Integer> tagIds)
+            throws IOException {
+        List<String> tags = task.getTags();
+        for (String tag : tags) {
+            if (!tagIds.containsKey(tag)) {
+                tagIds.put(tag, tagIds.size());
+                writeString(out, tag);
+                out.endRecord(TAG_RECORD);
+            }
+        }
+
+        out.putByte(typeOf(task));
+        boolean hasId = task.getId() != Task.NO_ID;
+        out.putByte((byte) ((task.isCompleted() ? COMPLETED_FLAG : 0) | (hasId ? ID_FLAG : 0)));
+        if (hasId) {
+            out.putInt(task.getId());
+        }
+        writeString(out, task.getName());
+        out.putShort((short) tags.size());
+        for (String tag : tags) {
+            out.putInt(tagIds.get(tag));
+        }
+
+        if (task instanceof Deadline) {
+            Deadline deadline = (Deadline) task;
+            writeTimestamp(out, deadline.getDeadline(), deadline.getOriginalInput());
+        } else if (task instanceof Event) {
+            Event event = (Event) task;
+            writeTimestamp(out, event.getStartDateTime(), event.getOriginalStartInput());
+            writeTimestamp(out, event.getEndDateTime(), event.getOriginalEndInput());
+        }
+        out.endRecord(TASK_RECORD);
+    }
+
+    private static byte typeOf(Task task) {
+        if (task instanceof Deadline) {
+            return DEADLINE_TYPE;
+        } else if (task instanceof Event) {
+            return EVENT_TYPE;
+        }
+        return TODO_TYPE;
+    }
+
+    private static void writeString(RecordWriter out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.putInt(bytes.length);
+        out.putBytes(bytes);
+    }
+
+    private static void writeTimestamp(RecordWriter out, LocalDateTime dateTime, String originalInput) {
+        if (dateTime != null) {
+            out.putLong(dateTime.toEpochSecond(ZoneOffset.UTC));
+            return;
+        }
+        out.putLong(NO_TIMESTAMP);
+        writeString(out, originalInput == null ? "" : originalInput);
+    }
+
+    /**
+     * Encodes the body of one record at a time, then seals it with its header and writes
+     * it to a channel in large blocks.
+     */
+    private static class RecordWriter implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private ByteBuffer body = ByteBuffer.allocate(BUFFER_SIZE);
+
+        RecordWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        private void ensureBodyCapacity(int bytes) {
+            if (body.remaining() < bytes) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(body.capacity() * 2, body.position() + bytes));
+                body.flip();
+                body = larger.put(body);
+            }
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        void putHeader() {
+            buffer.put(MAGIC).putShort(VERSION);
+        }
+
+        void putByte(byte value) {
+            ensureBodyCapacity(Byte.BYTES);
+            body.put(value);
+        }
+
+        void putShort(short value) {
+            ensureBodyCapacity(Short.BYTES);
+            body.putShort(value);
+        }
+
+        void putInt(int value) {
+            ensureBodyCapacity(Integer.BYTES);
+            body.putInt(value);
+        }
+
+        void putLong(long value) {
+            ensureBodyCapacity(Long.BYTES);
+            body.putLong(value);
+        }
+
+        void putBytes(byte[] bytes) {
+            ensureBodyCapacity(bytes.length);
+            body.put(bytes);
+        }
+
+        /**
+         * Writes the record whose body was just encoded, and starts the next one.
+         */
+        void endRecord(byte recordType) throws IOException {
+            body.flip();
+            if (buffer.remaining() < RECORD_HEADER_SIZE + body.remaining()) {
+                drain();
+            }
+            buffer.put(recordType).putInt(body.remaining()).putInt(checksum(recordType, body.duplicate()));
+            if (buffer.remaining() < body.remaining()) {
+                drain();
+                while (body.hasRemaining()) {
+                    channel.write(body);
+                }
+            } else {
+                buffer.put(body);
+            }
+            body.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            drain();
+            channel.close();
+        }
+    }
+}
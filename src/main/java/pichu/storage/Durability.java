@@ -0,0 +1,16 @@
+package pichu.storage;
+
+/**
+ * How hard storage tries to get each write onto the disk before moving on. Stronger
+ * policies survive power loss and OS crashes at the cost of an fsync per write; every
+ * policy keeps full-file saves atomic, so the old file stays intact if a save is cut
+ * short.
+ */
+public enum Durability {
+    /** Never forces writes; the OS decides when they reach the disk. */
+    NO_SYNC,
+    /** Forces recent writes in the background at a fixed interval. */
+    SYNC_ON_INTERVAL,
+    /** Forces every write before it is reported as done. */
+    SYNC_EVERY_WRITE
+}
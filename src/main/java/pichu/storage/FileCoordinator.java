@@ -0,0 +1,148 @@
+package pichu.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Coordinates processes that share a data file through a lock file next to it.
+ *
+ * <p>Reads hold a shared lock and writes an exclusive lock on the lock file, each only
+ * for the duration of one disk operation. The lock file holds two counters: the
+ * generation, which every write increments, and the layout generation, which only
+ * increments when files are replaced rather than appended to. A process that remembers
+ * both counters can tell whether another process changed the data with one small read,
+ * and whether the records it already has are still valid.
+ *
+ * <p>The JVM does not allow two overlapping file locks on the same file, so all
+ * coordinators for one lock file in a process take turns through a shared mutex first.
+ */
+public class FileCoordinator implements AutoCloseable {
+    private static final String LOCK_SUFFIX = ".lock";
+    private static final int COUNTERS_SIZE = 2 * Long.BYTES;
+    private static final ConcurrentHashMap<Path, ReentrantLock> PROCESS_LOCKS = new ConcurrentHashMap<>();
+
+    private final FileChannel channel;
+    private final ReentrantLock processLock;
+
+    /**
+     * How a write changed the data files.
+     */
+    public enum Change {
+        /** Nothing was written. */
+        NONE,
+        /** Records were added to the end of existing files. */
+        RECORDS_APPENDED,
+        /** Files were rewritten or replaced, so offsets into them are no longer valid. */
+        FILES_REPLACED
+    }
+
+    /**
+     * An action that runs while the lock is held and sees the current counters.
+     */
+    @FunctionalInterface
+    public interface LockedAction<T> {
+        T run(long generation, long layoutGeneration) throws IOException;
+    }
+
+    /**
+     * Opens the lock file that belongs to the data file, creating it if needed.
+     *
+     * @param dataPath the shared data file
+     */
+    public FileCoordinator(Path dataPath) throws IOException {
+        Path lockPath = Paths.get(dataPath + LOCK_SUFFIX);
+        this.channel = FileChannel.open(lockPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.processLock = PROCESS_LOCKS.computeIfAbsent(lockPath.toAbsolutePath().normalize(),
+                path -> new ReentrantLock());
+    }
+
+    /**
+     * Runs an action under a shared lock.
+     *
+     * @param action the action, which must not write to the data files
+     * @return the result of the action
+     */
+    public <T> T read(LockedAction<T> action) throws IOException {
+        if (processLock.isHeldByCurrentThread()) {
+            long[] counters = readCounters();
+            return action.run(counters[0], counters[1]);
+        }
+        processLock.lock();
+        try {
+            FileLock lock = channel.lock(0, Long.MAX_VALUE, true);
+            try {
+                long[] counters = readCounters();
+                return action.run(counters[0], counters[1]);
+            } finally {
+                lock.release();
+            }
+        } finally {
+            processLock.unlock();
+        }
+    }
+
+    /**
+     * Runs a write under an exclusive lock and advances the counters by the change it
+     * reports.
+     *
+     * @param write the write, which returns how it changed the data files
+     */
+    public void write(LockedAction<Change> write) throws IOException {
+        if (processLock.isHeldByCurrentThread()) {
+            throw new IllegalStateException("The data files are already locked by this thread");
+        }
+        processLock.lock();
+        try {
+            FileLock lock = channel.lock();
+            try {
+                long[] counters = readCounters();
+                Change change = write.run(counters[0], counters[1]);
+                if (change != Change.NONE) {
+                    writeCounters(counters[0] + 1, change == Change.FILES_REPLACED ? counters[1] + 1 : counters[1]);
+                }
+            } finally {
+                lock.release();
+            }
+        } finally {
+            processLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the current generation and layout generation.
+     *
+     * @return the two counters, generation first
+     */
+    public long[] getGenerations() throws IOException {
+        return read((generation, layoutGeneration) -> new long[] {generation, layoutGeneration});
+    }
+
+    private long[] readCounters() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(COUNTERS_SIZE);
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) > 0) {
+            // A new lock file is shorter than the counters and reads as zeros
+        }
+        return new long[] {buffer.getLong(0), buffer.getLong(Long.BYTES)};
+    }
+
+    private void writeCounters(long generation, long layoutGeneration) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(COUNTERS_SIZE);
+        buffer.putLong(generation).putLong(layoutGeneration).flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, buffer.position());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
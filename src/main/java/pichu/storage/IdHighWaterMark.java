@@ -0,0 +1,66 @@
+package pichu.storage;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import pichu.task.Task;
+
+/**
+ * The file next to a data file that holds the ID after the highest one ever given out.
+ *
+ * <p>Without it, the next ID after a load is one more than the highest saved ID, so the
+ * IDs of the newest tasks would be given out again once those tasks are deleted. The
+ * mark is a single sealed record, see {@link RecordRecovery}, and is replaced
+ * atomically. A missing or damaged mark reads as {@link Task#NO_ID}.
+ */
+final class IdHighWaterMark {
+    private static final String SUFFIX = ".ids";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path path;
+
+    IdHighWaterMark(Path dataPath) {
+        this.path = Paths.get(dataPath + SUFFIX);
+    }
+
+    /**
+     * Returns the saved mark, or {@link Task#NO_ID} if there is none.
+     */
+    int read() {
+        try {
+            if (!Files.exists(path)) {
+                return Task.NO_ID;
+            }
+            List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+            String record = lines.isEmpty() ? null : RecordRecovery.unseal(lines.get(0));
+            return record == null ? Task.NO_ID : Integer.parseInt(record);
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Error loading next ID: " + e.getMessage());
+            return Task.NO_ID;
+        }
+    }
+
+    /**
+     * Replaces the saved mark.
+     *
+     * @param nextId the ID after the highest one given out
+     * @param isSynced whether the mark is forced to disk before it replaces the old one
+     */
+    void write(int nextId, boolean isSynced) throws IOException {
+        Path tempPath = Paths.get(path + TEMP_SUFFIX);
+        Files.write(tempPath, List.of(RecordRecovery.seal(String.valueOf(nextId))), StandardCharsets.UTF_8);
+        if (isSynced) {
+            try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+        }
+        Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,68 @@
+package pichu.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import pichu.parser.Parser;
+import pichu.task.Task;
+
+/**
+ * Keeps the tasks in memory only, e.g. for tests. Tasks are held in their file format so
+ * that loading returns new task objects, just like an engine that reads a file.
+ */
+public class InMemoryStorageEngine implements StorageEngine {
+    private final List<String> records = new ArrayList<>();
+    private int nextId = Task.NO_ID;
+
+    @Override
+    public synchronized void load(Consumer<Task> sink) {
+        for (String record : records) {
+            sink.accept(Parser.parseTaskFromString(record));
+        }
+    }
+
+    @Override
+    public synchronized void saveTask(Task task) {
+        records.add(task.toFileFormat());
+    }
+
+    @Override
+    public synchronized void updateTask(int index, Task task, Supplier<List<Task>> tasks) {
+        records.set(index - 1, task.toFileFormat());
+    }
+
+    @Override
+    public synchronized void insertTask(int index, Task task, Supplier<List<Task>> tasks) {
+        records.add(index - 1, task.toFileFormat());
+    }
+
+    @Override
+    public synchronized void deleteTask(int index, Supplier<List<Task>> tasks) {
+        records.remove(index - 1);
+    }
+
+    @Override
+    public synchronized void saveAllTasks(List<Task> tasks) {
+        records.clear();
+        for (Task task : tasks) {
+            records.add(task.toFileFormat());
+        }
+    }
+
+    @Override
+    public synchronized int loadNextId() {
+        return nextId;
+    }
+
+    @Override
+    public synchronized void saveNextId(int nextId) {
+        this.nextId = nextId;
+    }
+
+    @Override
+    public void flush() {
+        // Nothing is ever written to disk
+    }
+}
@@ -0,0 +1,139 @@
+package pichu.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a UTF-8 text file one line at a time through a fixed-size buffer, so only the
+ * line being decoded is held in memory. Lines are split on raw {@code \n} bytes, which
+ * never occur inside a multi-byte UTF-8 sequence, and a trailing {@code \r} is dropped.
+ */
+public class LineReader implements AutoCloseable {
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private ByteBuffer buffer;
+    private boolean isEndOfFile;
+    private long bufferOffset;
+    private long lineOffset;
+    private boolean isLineTerminated;
+
+    /**
+     * Opens the file for reading.
+     *
+     * @param path the file to read
+     * @param bufferSize the number of bytes read from disk at a time
+     */
+    public LineReader(Path path, int bufferSize) throws IOException {
+        this(path, bufferSize, 0);
+    }
+
+    /**
+     * Opens the file for reading from the given offset, which must be the start of a line.
+     *
+     * @param path the file to read
+     * @param bufferSize the number of bytes read from disk at a time
+     * @param startOffset the byte offset of the first line to read
+     */
+    public LineReader(Path path, int bufferSize, long startOffset) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.channel.position(startOffset);
+        this.bufferOffset = startOffset;
+        this.buffer = ByteBuffer.allocate(bufferSize);
+        this.buffer.flip();
+    }
+
+    /**
+     * Returns the next line without its line terminator.
+     *
+     * @return the next line, or null at the end of the file
+     */
+    public String readLine() throws IOException {
+        int scanFrom = buffer.position();
+        while (true) {
+            int newline = indexOfNewline(scanFrom);
+            if (newline >= 0) {
+                isLineTerminated = true;
+                return takeLine(newline, newline + 1);
+            }
+            scanFrom = buffer.limit();
+            if (isEndOfFile) {
+                if (!buffer.hasRemaining()) {
+                    return null;
+                }
+                isLineTerminated = false;
+                return takeLine(buffer.limit(), buffer.limit());
+            }
+            scanFrom -= fill();
+        }
+    }
+
+    private int indexOfNewline(int from) {
+        byte[] bytes = buffer.array();
+        for (int i = from; i < buffer.limit(); i++) {
+            if (bytes[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private String takeLine(int end, int next) {
+        int start = buffer.position();
+        int length = end - start;
+        if (length > 0 && buffer.array()[end - 1] == '\r') {
+            length--;
+        }
+        lineOffset = bufferOffset + start;
+        String line = new String(buffer.array(), start, length, StandardCharsets.UTF_8);
+        buffer.position(next);
+        return line;
+    }
+
+    /**
+     * Moves the unread bytes to the front of the buffer, growing it if a single line does
+     * not fit, and reads more of the file behind them.
+     *
+     * @return how far the unread bytes moved towards the front
+     */
+    private int fill() throws IOException {
+        int shift = buffer.position();
+        bufferOffset += shift;
+        if (shift == 0 && buffer.limit() == buffer.capacity()) {
+            ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+            larger.put(buffer);
+            buffer = larger;
+        } else {
+            buffer.compact();
+        }
+        if (channel.read(buffer) < 0) {
+            isEndOfFile = true;
+        }
+        buffer.flip();
+        return shift;
+    }
+
+    /**
+     * Returns the byte offset in the file at which the last line started.
+     */
+    public long getLineOffset() {
+        return lineOffset;
+    }
+
+    /**
+     * Returns whether the last line ended with a line terminator rather than the end of
+     * the file.
+     */
+    public boolean isLineTerminated() {
+        return isLineTerminated;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,827 @@
+package pichu.storage;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import pichu.parser.Parser;
+import pichu.task.Task;
+
+/**
+ * An embedded log-structured merge engine.
+ *
+ * <p>Every task has a key that grows along the list. Changes go to a write-ahead log and
+ * to a sorted in-memory table; once the table is full it is written out as an immutable
+ * run sorted by key. Reads merge the runs and the table, with newer values and
+ * tombstones hiding older ones. When there are too many runs, a background thread merges
+ * them into one and drops the tombstones. Runs keep a sparse index of key offsets, so a
+ * range scan seeks straight to its first key.
+ *
+ * <p>Write-ahead log records carry checksums, so a torn record is cut off on open, see
+ * {@link RecordRecovery}. The data file only lists the live runs. It is replaced atomically whenever the runs
+ * change, and a run file it does not list is left over from an interrupted flush or
+ * merge and is deleted on open.
+ */
+public class LsmStorageEngine implements StorageEngine, AutoCloseable {
+    public static final int DEFAULT_MEMTABLE_LIMIT = 4096;
+    public static final int DEFAULT_MAX_RUNS = 4;
+
+    private static final String MANIFEST_PREFIX = "#pichu-lsm";
+    private static final String SEPARATOR = "|";
+    private static final String RUN_SEPARATOR = ",";
+    private static final char LIVE = '+';
+    private static final char TOMBSTONE = '-';
+    private static final String RUN_INFIX = ".run-";
+    private static final String WAL_SUFFIX = ".wal";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int SPARSE_INDEX_INTERVAL = 64;
+    private static final long SYNC_INTERVAL_MS = 10;
+
+    private final Path dataPath;
+    private final Path walPath;
+    private final Durability durability;
+    private final IdHighWaterMark idMark;
+    private final int memtableLimit;
+    private final int maxRuns;
+    private final ExecutorService merger;
+    private ScheduledExecutorService syncer;
+    private FileChannel wal;
+    private volatile boolean hasUnsyncedWrites;
+    private volatile boolean isMergePending;
+
+    // A deleted task is an empty value, its tombstone
+    private TreeMap<Long, Optional<String>> memtable = new TreeMap<>();
+    // Oldest run first
+    private List<Run> runs = new ArrayList<>();
+    private long nextRunId;
+
+    // Key of every task, by list position
+    private long[] keys = new long[16];
+    private int size;
+    private long nextKey;
+    private boolean isIndexed;
+
+    /**
+     * An immutable file of records sorted by key.
+     */
+    private static class Run {
+        private final long id;
+        private final Path path;
+        private long[] sparseKeys;
+        private long[] sparseOffsets;
+
+        Run(long id, Path path, long[] sparseKeys, long[] sparseOffsets) {
+            this.id = id;
+            this.path = path;
+            this.sparseKeys = sparseKeys;
+            this.sparseOffsets = sparseOffsets;
+        }
+
+        /**
+         * Returns the offset of a record at or before the first record with the key.
+         */
+        long seekOffset(long key) {
+            if (sparseKeys == null) {
+                return 0;
+            }
+            int found = Arrays.binarySearch(sparseKeys, key);
+            int entry = found >= 0 ? found : -found - 2;
+            return entry < 0 ? 0 : sparseOffsets[entry];
+        }
+    }
+
+    /**
+     * Reads the records of one source in key order.
+     */
+    private interface Cursor {
+        boolean advance() throws IOException;
+
+        long key();
+
+        /**
+         * Returns the task in its file format, or nothing if the record is a tombstone.
+         */
+        Optional<String> value();
+
+        /**
+         * Returns the file offset of the current record, if the cursor reads a file.
+         */
+        default long lineOffset() {
+            return 0;
+        }
+
+        void close() throws IOException;
+    }
+
+    /**
+     * Opens the engine, converting a data file in another task format into a single run.
+     *
+     * @param dataPath the data file
+     * @param durability when writes are forced to disk
+     */
+    public LsmStorageEngine(Path dataPath, Durability durability) {
+        this(dataPath, durability, DEFAULT_MEMTABLE_LIMIT, DEFAULT_MAX_RUNS);
+    }
+
+    LsmStorageEngine(Path dataPath, Durability durability, int memtableLimit, int maxRuns) {
+        this.dataPath = dataPath;
+        this.walPath = Paths.get(dataPath + WAL_SUFFIX);
+        this.durability = durability;
+        this.idMark = new IdHighWaterMark(dataPath);
+        this.memtableLimit = memtableLimit;
+        this.maxRuns = maxRuns;
+        this.merger = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "pichu-lsm-merge");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            open();
+        } catch (IOException e) {
+            System.err.println("Error opening storage engine: " + e.getMessage());
+        }
+        if (durability == Durability.SYNC_ON_INTERVAL) {
+            startIntervalSync();
+        }
+    }
+
+    private void open() throws IOException {
+        if (dataPath.getParent() != null) {
+            Files.createDirectories(dataPath.getParent());
+        }
+        String[] manifest = readManifest();
+        if (manifest == null) {
+            List<Task> existing = Files.exists(dataPath)
+                    ? TaskFileFormat.forPath(dataPath).read(dataPath)
+                    : new ArrayList<>();
+            Files.deleteIfExists(walPath);
+            replaceAll(existing);
+        } else {
+            nextRunId = Long.parseLong(manifest[1]);
+            if (manifest.length > 2 && !manifest[2].isEmpty()) {
+                for (String id : manifest[2].split(RUN_SEPARATOR)) {
+                    long runId = Long.parseLong(id);
+                    runs.add(new Run(runId, runPath(runId), null, null));
+                }
+            }
+            deleteUnlistedRuns();
+            replayWal();
+        }
+        wal = FileChannel.open(walPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    private String[] readManifest() throws IOException {
+        if (!Files.exists(dataPath) || Files.size(dataPath) == 0) {
+            return null;
+        }
+        try (LineReader reader = new LineReader(dataPath, LineReader.DEFAULT_BUFFER_SIZE)) {
+            String line = reader.readLine();
+            if (line == null || !line.startsWith(MANIFEST_PREFIX + SEPARATOR)) {
+                return null;
+            }
+            return line.split("\\" + SEPARATOR, -1);
+        }
+    }
+
+    private void writeManifest() throws IOException {
+        StringBuilder runIds = new StringBuilder();
+        for (Run run : runs) {
+            if (runIds.length() > 0) {
+                runIds.append(RUN_SEPARATOR);
+            }
+            runIds.append(run.id);
+        }
+        Path tempPath = Paths.get(dataPath + TEMP_SUFFIX);
+        Files.write(tempPath, List.of(String.join(SEPARATOR, MANIFEST_PREFIX, String.valueOf(nextRunId),
+                runIds)));
+        if (durability != Durability.NO_SYNC) {
+            force(tempPath);
+        }
+        Files.move(tempPath, dataPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path runPath(long runId) {
+        String fileName = dataPath.getFileName().toString();
+        return dataPath.resolveSibling(fileName + RUN_INFIX + runId);
+    }
+
+    private void deleteUnlistedRuns() throws IOException {
+        Path directory = dataPath.toAbsolutePath().getParent();
+        String prefix = dataPath.getFileName() + RUN_INFIX;
+        List<Path> listed = new ArrayList<>();
+        for (Run run : runs) {
+            listed.add(run.path.toAbsolutePath());
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*")) {
+            for (Path file : files) {
+                if (!listed.contains(file.toAbsolutePath())) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private void replayWal() throws IOException {
+        RecordRecovery.read(walPath, record -> {
+            int separator = record.indexOf(SEPARATOR);
+            if (separator <= 0) {
+                return false;
+            }
+            memtable.put(Long.parseLong(record.substring(0, separator)), decodeValue(record, separator));
+            return true;
+        });
+    }
+
+    private void startIntervalSync() {
+        syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "pichu-lsm-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        syncer.scheduleWithFixedDelay(() -> {
+            if (hasUnsyncedWrites) {
+                hasUnsyncedWrites = false;
+                try {
+                    syncWal();
+                } catch (IOException e) {
+                    // A failed background sync is retried by the next write
+                }
+            }
+        }, SYNC_INTERVAL_MS, SYNC_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void syncWal() throws IOException {
+        if (wal != null) {
+            wal.force(false);
+        }
+    }
+
+    private static void force(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    @Override
+    public synchronized void load(Consumer<Task> sink) {
+        try {
+            size = 0;
+            nextKey = 0;
+            mergeSources(Long.MIN_VALUE, Long.MAX_VALUE, true, (key, value) -> {
+                Task task = Parser.parseTaskFromString(value);
+                if (task != null) {
+                    addKey(key);
+                    sink.accept(task);
+                }
+                nextKey = Math.max(nextKey, key + 1);
+            });
+            isIndexed = true;
+        } catch (IOException e) {
+            System.err.println("Error loading tasks: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Streams the tasks in the range from the runs and the memtable without reading the
+     * rest of the list.
+     */
+    @Override
+    public synchronized void scan(int fromIndex, int toIndex, Consumer<Task> sink) {
+        try {
+            ensureIndexed();
+            int from = Math.max(fromIndex, 1);
+            int to = Math.min(toIndex, size);
+            if (from > to) {
+                return;
+            }
+            mergeSources(keys[from - 1], keys[to - 1], false, (key, value) -> {
+                Task task = Parser.parseTaskFromString(value);
+                if (task != null) {
+                    sink.accept(task);
+                }
+            });
+        } catch (IOException e) {
+            System.err.println("Error scanning tasks: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void saveTask(Task task) {
+        try {
+            ensureIndexed();
+            long key = nextKey++;
+            put(key, Optional.of(task.toFileFormat()));
+            addKey(key);
+        } catch (IOException e) {
+            System.err.println("Error saving task: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void updateTask(int index, Task task, Supplier<List<Task>> tasks) {
+        try {
+            ensureIndexed();
+            put(keys[toPosition(index)], Optional.of(task.toFileFormat()));
+        } catch (IOException e) {
+            System.err.println("Error updating task: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void insertTask(int index, Task task, Supplier<List<Task>> tasks) {
+        try {
+            ensureIndexed();
+            int position = index - 1;
+            if (position == size) {
+                saveTask(task);
+                return;
+            }
+            toPosition(index);
+            // A removed task left a gap between the keys around it, so it can take a key
+            // in the gap. Without a gap the keys have to be renumbered.
+            long lowerKey = position == 0 ? Long.MIN_VALUE : keys[position - 1];
+            long key = keys[position] - 1;
+            if (key <= lowerKey) {
+                replaceAll(tasks.get());
+                return;
+            }
+            put(key, Optional.of(task.toFileFormat()));
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+            }
+            System.arraycopy(keys, position, keys, position + 1, size - position);
+            keys[position] = key;
+            size++;
+        } catch (IOException e) {
+            System.err.println("Error inserting task: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void deleteTask(int index, Supplier<List<Task>> tasks) {
+        try {
+            ensureIndexed();
+            int position = toPosition(index);
+            put(keys[position], Optional.empty());
+            System.arraycopy(keys, position + 1, keys, position, size - position - 1);
+            size--;
+        } catch (IOException e) {
+            System.err.println("Error deleting task: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void saveAllTasks(List<Task> tasks) {
+        try {
+            replaceAll(tasks);
+        } catch (IOException e) {
+            System.err.println("Error saving all tasks: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public int loadNextId() {
+        return idMark.read();
+    }
+
+    @Override
+    public synchronized void saveNextId(int nextId) {
+        try {
+            idMark.write(nextId, durability != Durability.NO_SYNC);
+        } catch (IOException e) {
+            System.err.println("Error saving next ID: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void flush() {
+        try {
+            hasUnsyncedWrites = false;
+            syncWal();
+        } catch (IOException e) {
+            System.err.println("Error flushing tasks: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Waits for a running merge and sync to finish, then syncs and closes the write-ahead
+     * log.
+     */
+    @Override
+    public void close() throws IOException {
+        merger.shutdown();
+        if (syncer != null) {
+            syncer.shutdown();
+        }
+        try {
+            merger.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            if (syncer != null) {
+                syncer.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (hasUnsyncedWrites) {
+                hasUnsyncedWrites = false;
+                wal.force(false);
+            }
+            wal.close();
+        }
+    }
+
+    private void put(long key, Optional<String> value) throws IOException {
+        String line = RecordRecovery.seal(key + SEPARATOR + encodeValue(value)) + "\n";
+        ByteBuffer bytes = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+        while (bytes.hasRemaining()) {
+            wal.write(bytes);
+        }
+        if (durability == Durability.SYNC_EVERY_WRITE) {
+            wal.force(false);
+        } else if (durability == Durability.SYNC_ON_INTERVAL) {
+            hasUnsyncedWrites = true;
+        }
+
+        memtable.put(key, value);
+        if (memtable.size() >= memtableLimit) {
+            flushMemtable();
+        }
+    }
+
+    /**
+     * Writes the memtable out as the newest run and empties the write-ahead log.
+     */
+    private void flushMemtable() throws IOException {
+        Run run = writeRun(nextRunId++, memtable.entrySet().iterator());
+        runs.add(run);
+        writeManifest();
+        memtable = new TreeMap<>();
+        wal.truncate(0);
+        if (runs.size() > maxRuns && !isMergePending) {
+            isMergePending = true;
+            List<Run> toMerge = new ArrayList<>(runs);
+            merger.submit(() -> mergeRuns(toMerge));
+        }
+    }
+
+    private void replaceAll(List<Task> tasks) throws IOException {
+        List<Map.Entry<Long, Optional<String>>> records = new ArrayList<>(tasks.size());
+        size = 0;
+        for (Task task : tasks) {
+            records.add(Map.entry((long) size, Optional.of(task.toFileFormat())));
+            addKey(size);
+        }
+        nextKey = size;
+        isIndexed = true;
+
+        List<Run> oldRuns = runs;
+        Run run = writeRun(nextRunId++, records.iterator());
+        runs = new ArrayList<>(List.of(run));
+        writeManifest();
+        memtable = new TreeMap<>();
+        if (wal != null) {
+            wal.truncate(0);
+        }
+        for (Run oldRun : oldRuns) {
+            Files.deleteIfExists(oldRun.path);
+        }
+    }
+
+    /**
+     * Merges runs into one on the merge thread. The merged runs are the oldest ones, so
+     * tombstones are dropped, and the result is installed only if those runs are still
+     * live.
+     */
+    private void mergeRuns(List<Run> toMerge) {
+        List<Cursor> cursors = new ArrayList<>();
+        try {
+            for (Run run : toMerge) {
+                cursors.add(openRunCursor(run, Long.MIN_VALUE));
+            }
+            List<Map.Entry<Long, Optional<String>>> merged = new ArrayList<>();
+            mergeCursors(cursors, Long.MAX_VALUE, (key, value) -> merged.add(Map.entry(key, Optional.of(value))));
+            for (Cursor cursor : cursors) {
+                cursor.close();
+            }
+
+            long runId;
+            synchronized (this) {
+                runId = nextRunId++;
+            }
+            Run mergedRun = writeRun(runId, merged.iterator());
+            synchronized (this) {
+                if (runs.size() < toMerge.size() || !runs.subList(0, toMerge.size()).equals(toMerge)) {
+                    Files.deleteIfExists(mergedRun.path);
+                    return;
+                }
+                List<Run> newRuns = new ArrayList<>();
+                newRuns.add(mergedRun);
+                newRuns.addAll(runs.subList(toMerge.size(), runs.size()));
+                runs = newRuns;
+                writeManifest();
+                for (Run run : toMerge) {
+                    Files.deleteIfExists(run.path);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error merging task runs: " + e.getMessage());
+            for (Cursor cursor : cursors) {
+                try {
+                    cursor.close();
+                } catch (IOException closeError) {
+                    // The merge already failed
+                }
+            }
+        } finally {
+            isMergePending = false;
+        }
+    }
+
+    private Run writeRun(long runId, Iterator<Map.Entry<Long, Optional<String>>> records) throws IOException {
+        Path path = runPath(runId);
+        List<Long> sparseKeys = new ArrayList<>();
+        List<Long> sparseOffsets = new ArrayList<>();
+        long offset = 0;
+        int count = 0;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+                BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+                        Channels.newOutputStream(channel), StandardCharsets.UTF_8))) {
+            while (records.hasNext()) {
+                Map.Entry<Long, Optional<String>> record = records.next();
+                if (count++ % SPARSE_INDEX_INTERVAL == 0) {
+                    sparseKeys.add(record.getKey());
+                    sparseOffsets.add(offset);
+                }
+                String line = record.getKey() + SEPARATOR + encodeValue(record.getValue()) + "\n";
+                writer.write(line);
+                offset += line.getBytes(StandardCharsets.UTF_8).length;
+            }
+            writer.flush();
+            if (durability != Durability.NO_SYNC) {
+                channel.force(false);
+            }
+        }
+        return new Run(runId, path, toArray(sparseKeys), toArray(sparseOffsets));
+    }
+
+    private static long[] toArray(List<Long> values) {
+        long[] array = new long[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+
+    /**
+     * Receives merged records.
+     */
+    @FunctionalInterface
+    private interface RecordSink {
+        void accept(long key, String value);
+    }
+
+    /**
+     * Merges the runs and the memtable from the first key to the last, newest value
+     * first, skipping deleted records. A run read from its start rebuilds its sparse
+     * index on the way.
+     */
+    private void mergeSources(long fromKey, long toKey, boolean isFullScan, RecordSink sink) throws IOException {
+        List<Cursor> cursors = new ArrayList<>();
+        try {
+            for (Run run : runs) {
+                Cursor cursor = openRunCursor(run, fromKey);
+                cursors.add(isFullScan && run.sparseKeys == null ? indexingCursor(run, cursor) : cursor);
+            }
+            cursors.add(memtableCursor(memtable.tailMap(fromKey, true).entrySet().iterator()));
+            mergeCursors(cursors, toKey, sink);
+        } finally {
+            for (Cursor cursor : cursors) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Merges cursors in key order. When several cursors hold the same key, the one that
+     * comes later in the list is newer and wins, and a winning tombstone hides the key.
+     */
+    private static void mergeCursors(List<Cursor> cursors, long toKey, RecordSink sink) throws IOException {
+        PriorityQueue<Integer> heads = new PriorityQueue<>((a, b) -> {
+            int byKey = Long.compare(cursors.get(a).key(), cursors.get(b).key());
+            return byKey != 0 ? byKey : Integer.compare(b, a);
+        });
+        for (int i = 0; i < cursors.size(); i++) {
+            if (cursors.get(i).advance()) {
+                heads.add(i);
+            }
+        }
+        while (!heads.isEmpty()) {
+            int newest = heads.poll();
+            Cursor cursor = cursors.get(newest);
+            long key = cursor.key();
+            if (key > toKey) {
+                break;
+            }
+            Optional<String> value = cursor.value();
+            if (value.isPresent()) {
+                sink.accept(key, value.get());
+            }
+            if (cursor.advance()) {
+                heads.add(newest);
+            }
+            while (!heads.isEmpty() && cursors.get(heads.peek()).key() == key) {
+                int older = heads.poll();
+                if (cursors.get(older).advance()) {
+                    heads.add(older);
+                }
+            }
+        }
+    }
+
+    /**
+     * A cursor that skips records before a start key.
+     */
+    private abstract static class SkippingCursor implements Cursor {
+        private final long fromKey;
+
+        SkippingCursor(long fromKey) {
+            this.fromKey = fromKey;
+        }
+
+        abstract boolean advanceOnce() throws IOException;
+
+        @Override
+        public boolean advance() throws IOException {
+            while (advanceOnce()) {
+                if (key() >= fromKey) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private Cursor openRunCursor(Run run, long fromKey) throws IOException {
+        LineReader reader = new LineReader(run.path, LineReader.DEFAULT_BUFFER_SIZE, run.seekOffset(fromKey));
+        return new SkippingCursor(fromKey) {
+            private long key;
+            private Optional<String> value;
+
+            @Override
+            boolean advanceOnce() throws IOException {
+                String line = reader.readLine();
+                if (line == null) {
+                    return false;
+                }
+                int separator = line.indexOf(SEPARATOR);
+                key = Long.parseLong(line.substring(0, separator));
+                value = decodeValue(line, separator);
+                return true;
+            }
+
+            @Override
+            public long key() {
+                return key;
+            }
+
+            @Override
+            public Optional<String> value() {
+                return value;
+            }
+
+            @Override
+            public long lineOffset() {
+                return reader.getLineOffset();
+            }
+
+            @Override
+            public void close() throws IOException {
+                reader.close();
+            }
+        };
+    }
+
+    /**
+     * Wraps a cursor over a whole run so that the run's sparse index is rebuilt from the
+     * records it passes.
+     */
+    private static Cursor indexingCursor(Run run, Cursor runCursor) {
+        List<Long> sparseKeys = new ArrayList<>();
+        List<Long> sparseOffsets = new ArrayList<>();
+        return new Cursor() {
+            private int count;
+
+            @Override
+            public boolean advance() throws IOException {
+                if (!runCursor.advance()) {
+                    return false;
+                }
+                if (count++ % SPARSE_INDEX_INTERVAL == 0) {
+                    sparseKeys.add(runCursor.key());
+                    sparseOffsets.add(runCursor.lineOffset());
+                }
+                return true;
+            }
+
+            @Override
+            public long key() {
+                return runCursor.key();
+            }
+
+            @Override
+            public Optional<String> value() {
+                return runCursor.value();
+            }
+
+            @Override
+            public void close() throws IOException {
+                runCursor.close();
+                run.sparseKeys = toArray(sparseKeys);
+                run.sparseOffsets = toArray(sparseOffsets);
+            }
+        };
+    }
+
+    private static Cursor memtableCursor(Iterator<Map.Entry<Long, Optional<String>>> entries) {
+        return new Cursor() {
+            private Map.Entry<Long, Optional<String>> entry;
+
+            @Override
+            public boolean advance() {
+                if (!entries.hasNext()) {
+                    return false;
+                }
+                entry = entries.next();
+                return true;
+            }
+
+            @Override
+            public long key() {
+                return entry.getKey();
+            }
+
+            @Override
+            public Optional<String> value() {
+                return entry.getValue();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    private static String encodeValue(Optional<String> value) {
+        return value.map(task -> LIVE + task).orElse(String.valueOf(TOMBSTONE));
+    }
+
+    private static Optional<String> decodeValue(String line, int separator) {
+        return line.charAt(separator + 1) == TOMBSTONE ? Optional.empty() : Optional.of(line.substring(separator + 2));
+    }
+
+    private void ensureIndexed() throws IOException {
+        if (!isIndexed) {
+            load(task -> { });
+        }
+    }
+
+    private int toPosition(int index) {
+        if (index < 1 || index > size) {
+            throw new IndexOutOfBoundsException("Invalid task index: " + index);
+        }
+        return index - 1;
+    }
+
+    private void addKey(long key) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+        }
+        keys[size++] = key;
+    }
+}
@@ -0,0 +1,458 @@
+package pichu.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import pichu.parser.Parser;
+import pichu.task.Task;
+
+/**
+ * Append-only log of task mutations kept next to a snapshot file.
+ * The snapshot may use any {@link TaskFileFormat}, while each mutation is one text line:
+ * <ul>
+ *     <li>{@code A|<task data>} appends a task,</li>
+ *     <li>{@code I|<index>|<task data>} inserts a task at a 1-based index,</li>
+ *     <li>{@code U|<index>|<task data>} replaces the task at a 1-based index,</li>
+ *     <li>{@code X|<index>} deletes the task at a 1-based index.</li>
+ * </ul>
+ * Every record is sealed with a checksum, and a torn record at the end of a log is cut
+ * off when the log is replayed, see {@link RecordRecovery}.
+ * Appends are written straight away. With {@link Durability#SYNC_ON_INTERVAL} they are made
+ * durable by a group-commit thread, so all mutations that arrive within one commit
+ * interval share a single fsync. Once the log
+ * grows past the compaction threshold it is rotated and folded back into the snapshot
+ * on a background thread. When other processes share the files, the compaction holds
+ * their {@link FileCoordinator} lock.
+ */
+public class MutationLog {
+    public static final long DEFAULT_COMPACTION_THRESHOLD_BYTES = 4L * 1024 * 1024;
+
+    private static final long GROUP_COMMIT_INTERVAL_MS = 10;
+    private static final String APPEND_RECORD = "A";
+    private static final String INSERT_RECORD = "I";
+    private static final String UPDATE_RECORD = "U";
+    private static final String DELETE_RECORD = "X";
+    private static final String SEPARATOR = "|";
+    private static final String LOG_SUFFIX = ".log";
+    private static final String ROTATED_SUFFIX = ".log.old";
+    private static final String COMPACTED_SUFFIX = ".compacted";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path snapshotPath;
+    private final Path logPath;
+    private final Path rotatedPath;
+    private final Path compactedPath;
+    private final Path tempPath;
+    private final TaskFileFormat snapshotFormat;
+    private final Durability durability;
+    private final long compactionThreshold;
+    private final Object snapshotLock = new Object();
+    private final ScheduledExecutorService groupCommitter;
+    private final ExecutorService compactor;
+    private final FileCoordinator coordinator;
+
+    private FileChannel channel;
+    private int rotations;
+    private long logSize;
+    private boolean hasUnsyncedWrites;
+    private volatile boolean isCompactionPending;
+
+    /**
+     * Opens the mutation log that belongs to the given snapshot file.
+     *
+     * @param snapshotPath the snapshot file the log is replayed on top of
+     * @param snapshotFormat the format of the snapshot file
+     * @param durability when appended records are forced to disk
+     * @param compactionThreshold the log size in bytes that triggers a compaction
+     * @throws IOException if the log file cannot be opened
+     */
+    public MutationLog(Path snapshotPath, TaskFileFormat snapshotFormat, Durability durability,
+            long compactionThreshold) throws IOException {
+        this(snapshotPath, snapshotFormat, durability, compactionThreshold, null);
+    }
+
+    /**
+     * Opens the mutation log that belongs to the given snapshot file, which other
+     * processes may share.
+     *
+     * @param snapshotPath the snapshot file the log is replayed on top of
+     * @param snapshotFormat the format of the snapshot file
+     * @param durability when appended records are forced to disk
+     * @param compactionThreshold the log size in bytes that triggers a compaction
+     * @param coordinator the lock compactions run under, or null if the files are not
+     *     shared
+     * @throws IOException if the log file cannot be opened
+     */
+    public MutationLog(Path snapshotPath, TaskFileFormat snapshotFormat, Durability durability,
+            long compactionThreshold, FileCoordinator coordinator) throws IOException {
+        this.coordinator = coordinator;
+        this.snapshotPath = snapshotPath;
+        this.snapshotFormat = snapshotFormat;
+        this.durability = durability;
+        this.logPath = siblingOf(snapshotPath, LOG_SUFFIX);
+        this.rotatedPath = siblingOf(snapshotPath, ROTATED_SUFFIX);
+        this.compactedPath = siblingOf(snapshotPath, COMPACTED_SUFFIX);
+        this.tempPath = siblingOf(snapshotPath, TEMP_SUFFIX);
+        this.compactionThreshold = compactionThreshold;
+
+        recoverInterruptedCompaction();
+        openLog();
+        isCompactionPending = Files.exists(rotatedPath);
+
+        if (durability == Durability.SYNC_ON_INTERVAL) {
+            groupCommitter = Executors.newSingleThreadScheduledExecutor(daemonThreads("pichu-group-commit"));
+            groupCommitter.scheduleWithFixedDelay(this::syncQuietly,
+                    GROUP_COMMIT_INTERVAL_MS, GROUP_COMMIT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        } else {
+            groupCommitter = null;
+        }
+        compactor = Executors.newSingleThreadExecutor(daemonThreads("pichu-compactor"));
+        if (isCompactionPending) {
+            compactor.execute(this::compactQuietly);
+        }
+    }
+
+    private static Path siblingOf(Path path, String suffix) {
+        return Paths.get(path.toString() + suffix);
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private void openLog() throws IOException {
+        channel = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        logSize = channel.size();
+    }
+
+    /**
+     * Finishes a compaction that was interrupted by a crash. A compacted snapshot only
+     * exists once it is complete, so it always supersedes the rotated log.
+     */
+    private void recoverInterruptedCompaction() throws IOException {
+        Files.deleteIfExists(tempPath);
+        if (Files.exists(compactedPath)) {
+            Files.deleteIfExists(rotatedPath);
+            Files.move(compactedPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Logs that a task was appended to the end of the list.
+     *
+     * @param taskData the file format of the new task
+     */
+    public void appendTask(String taskData) throws IOException {
+        append(APPEND_RECORD + SEPARATOR + taskData);
+    }
+
+    /**
+     * Logs that a task was inserted at the given position.
+     *
+     * @param index the 1-based index of the new task
+     * @param taskData the file format of the new task
+     */
+    public void insertTask(int index, String taskData) throws IOException {
+        append(INSERT_RECORD + SEPARATOR + index + SEPARATOR + taskData);
+    }
+
+    /**
+     * Logs that the task at the given position was replaced.
+     *
+     * @param index the 1-based index of the task
+     * @param taskData the new file format of the task
+     */
+    public void updateTask(int index, String taskData) throws IOException {
+        append(UPDATE_RECORD + SEPARATOR + index + SEPARATOR + taskData);
+    }
+
+    /**
+     * Logs that the task at the given position was deleted.
+     *
+     * @param index the 1-based index of the task
+     */
+    public void deleteTask(int index) throws IOException {
+        append(DELETE_RECORD + SEPARATOR + index);
+    }
+
+    private synchronized void append(String record) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap((RecordRecovery.seal(record) + "\n").getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            logSize += channel.write(buffer);
+        }
+        hasUnsyncedWrites = true;
+        if (durability == Durability.SYNC_EVERY_WRITE) {
+            sync();
+        }
+
+        if (logSize >= compactionThreshold && !isCompactionPending) {
+            rotate();
+            compactor.execute(this::compactQuietly);
+        }
+    }
+
+    /**
+     * Forces every record written so far to disk, unless the log never syncs.
+     */
+    public synchronized void sync() throws IOException {
+        if (hasUnsyncedWrites && durability != Durability.NO_SYNC) {
+            channel.force(false);
+            hasUnsyncedWrites = false;
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (IOException e) {
+            System.err.println("Error syncing mutation log: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Moves the live log aside so that new records go to an empty log. If a rotated log
+     * is still waiting to be compacted, the live records are added to its end.
+     */
+    private synchronized void rotate() throws IOException {
+        sync();
+        channel.close();
+        if (Files.exists(rotatedPath)) {
+            Files.write(rotatedPath, Files.readAllBytes(logPath), StandardOpenOption.APPEND);
+            Files.delete(logPath);
+        } else {
+            Files.move(logPath, rotatedPath);
+        }
+        rotations++;
+        isCompactionPending = true;
+        openLog();
+    }
+
+    private void compactQuietly() {
+        try {
+            if (coordinator == null) {
+                compact();
+                return;
+            }
+            coordinator.write((generation, layoutGeneration) -> {
+                compact();
+                // The snapshot now holds what the rotated log held, so the tasks are unchanged
+                return FileCoordinator.Change.NONE;
+            });
+        } catch (IOException e) {
+            System.err.println("Error compacting mutation log: " + e.getMessage());
+        }
+    }
+
+    private void compact() throws IOException {
+        synchronized (snapshotLock) {
+            if (!Files.exists(rotatedPath)) {
+                return;
+            }
+            List<Task> tasks = snapshotFormat.read(snapshotPath);
+            replay(rotatedPath, tasks);
+            installSnapshot(tasks);
+        }
+    }
+
+    /**
+     * Replaces the snapshot with the given tasks and discards every record logged so far.
+     *
+     * @param tasks the complete list of tasks
+     */
+    public void rewriteSnapshot(List<Task> tasks) throws IOException {
+        synchronized (snapshotLock) {
+            rotate();
+            installSnapshot(tasks);
+        }
+    }
+
+    /**
+     * Writes a snapshot that covers the rotated log. The snapshot only becomes visible
+     * under its compacted name once it is complete, which is what recovery relies on.
+     */
+    private void installSnapshot(List<Task> tasks) throws IOException {
+        snapshotFormat.write(tempPath, tasks);
+        if (durability != Durability.NO_SYNC) {
+            try (FileChannel out = FileChannel.open(tempPath, StandardOpenOption.WRITE)) {
+                out.force(true);
+            }
+        }
+        Files.move(tempPath, compactedPath, StandardCopyOption.ATOMIC_MOVE);
+        Files.deleteIfExists(rotatedPath);
+        isCompactionPending = false;
+        Files.move(compactedPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Loads the snapshot and replays the rotated and live logs on top of it.
+     *
+     * @return the current list of tasks
+     */
+    public List<Task> load() throws IOException {
+        List<Task> tasks = new ArrayList<>();
+        load(tasks::add);
+        return tasks;
+    }
+
+    /**
+     * Streams the current tasks to the sink. If no records are waiting to be replayed the
+     * snapshot is streamed directly, otherwise the tasks are collected first so that the
+     * logged changes can be applied to them.
+     *
+     * @param sink receives the tasks in list order
+     */
+    public void load(Consumer<Task> sink) throws IOException {
+        synchronized (snapshotLock) {
+            synchronized (this) {
+                sync();
+                // Another process may have appended to or rotated the log
+                if (!Files.exists(rotatedPath) && channel.size() == 0) {
+                    snapshotFormat.read(snapshotPath, sink);
+                    return;
+                }
+            }
+            List<Task> tasks = snapshotFormat.read(snapshotPath);
+            replay(rotatedPath, tasks);
+            synchronized (this) {
+                replay(logPath, tasks);
+                // Recovery may have cut a torn record off the live log
+                logSize = channel.size();
+            }
+            tasks.forEach(sink);
+        }
+    }
+
+    /**
+     * Applies every intact record in the given log to the list of tasks.
+     * Damaged records are skipped, and a torn last line is cut off the log.
+     */
+    private static void replay(Path log, List<Task> tasks) throws IOException {
+        RecordRecovery.read(log, record -> applyRecord(record, tasks));
+    }
+
+    /**
+     * Applies one record and returns whether it applied.
+     */
+    private static boolean applyRecord(String record, List<Task> tasks) {
+        String[] parts = record.split("\\|", 3);
+        try {
+            switch (parts[0]) {
+            case APPEND_RECORD:
+                return addIfParsed(tasks, Parser.parseTaskFromString(
+                        record.substring(APPEND_RECORD.length() + SEPARATOR.length())));
+            case INSERT_RECORD:
+                Task inserted = Parser.parseTaskFromString(parts[2]);
+                if (inserted == null) {
+                    return false;
+                }
+                tasks.add(Integer.parseInt(parts[1]) - 1, inserted);
+                return true;
+            case UPDATE_RECORD:
+                Task task = Parser.parseTaskFromString(parts[2]);
+                if (task == null) {
+                    return false;
+                }
+                tasks.set(Integer.parseInt(parts[1]) - 1, task);
+                return true;
+            case DELETE_RECORD:
+                tasks.remove(Integer.parseInt(parts[1]) - 1);
+                return true;
+            default:
+                return false;
+            }
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            // The record does not apply to the list it was replayed on
+            return false;
+        }
+    }
+
+    private static boolean addIfParsed(List<Task> tasks, Task task) {
+        if (task == null) {
+            return false;
+        }
+        tasks.add(task);
+        return true;
+    }
+
+    /**
+     * Applies the records appended to the live log from the given offset on, e.g. by
+     * another process, to the list of tasks.
+     *
+     * @param offset the log size when the list was last in step with the log
+     * @param tasks the list the records are applied to
+     * @return the log size the list is now in step with
+     */
+    public synchronized long replayFrom(long offset, List<Task> tasks) throws IOException {
+        long end = channel.size();
+        if (end <= offset) {
+            return end;
+        }
+        try (LineReader reader = new LineReader(logPath, LineReader.DEFAULT_BUFFER_SIZE, offset)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String record = RecordRecovery.unseal(line);
+                if (record != null) {
+                    applyRecord(record, tasks);
+                }
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Returns the size of the live log, including records appended by other processes.
+     */
+    public synchronized long getLogSize() throws IOException {
+        return channel.size();
+    }
+
+    /**
+     * Returns how often this log has rotated the live log.
+     */
+    public synchronized int getRotations() {
+        return rotations;
+    }
+
+    /**
+     * Reopens the live log after another process rotated it, so that new records do not
+     * go to the rotated file.
+     */
+    public synchronized void reopen() throws IOException {
+        sync();
+        channel.close();
+        openLog();
+        isCompactionPending = Files.exists(rotatedPath);
+    }
+
+    /**
+     * Syncs the log and stops the background threads.
+     */
+    public synchronized void close() throws IOException {
+        if (groupCommitter != null) {
+            groupCommitter.shutdown();
+        }
+        compactor.shutdown();
+        sync();
+        channel.close();
+    }
+}
@@ -0,0 +1,135 @@
+package pichu.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import pichu.parser.Parser;
+import pichu.task.Task;
+
+/**
+ * Parses a large text task file on a fork-join pool. The file is cut into chunks that
+ * end on line boundaries, every chunk is parsed as its own pool task, and the results
+ * are handed to the sink chunk by chunk in file order, so task numbers are the same as
+ * with a sequential load. Only a few chunks per worker are mapped and parsed ahead of the
+ * one being handed over, so the tasks waiting for the sink stay bounded however large the
+ * file is. Records with a wrong checksum or that do not parse are skipped and counted.
+ */
+public class ParallelTaskLoader {
+    public static final long PARALLEL_THRESHOLD_BYTES = 4L * 1024 * 1024;
+
+    private static final int CHUNK_SIZE = 1024 * 1024;
+    private static final int SCAN_BUFFER_SIZE = 4 * 1024;
+    private static final int CHUNKS_IN_FLIGHT_PER_WORKER = 2;
+
+    private final ForkJoinPool pool;
+    private final LongAdder skipped = new LongAdder();
+
+    /**
+     * Creates a loader that parses on the given pool.
+     *
+     * @param pool the pool that runs the chunk parsers
+     */
+    public ParallelTaskLoader(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Returns whether a file of the given size is worth loading in parallel.
+     *
+     * @param fileSize the size of the file in bytes
+     * @return true if the file is large and more than one core is available
+     */
+    public static boolean isWorthwhile(long fileSize) {
+        return fileSize >= PARALLEL_THRESHOLD_BYTES && Runtime.getRuntime().availableProcessors() > 1;
+    }
+
+    /**
+     * Parses the file and streams the tasks to the sink in file order. The sink is only
+     * called from the calling thread.
+     *
+     * @param path the text task file
+     * @param sink receives the tasks in file order
+     * @return the number of records that were skipped
+     */
+    public int load(Path path, Consumer<Task> sink) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int maxInFlight = pool.getParallelism() * CHUNKS_IN_FLIGHT_PER_WORKER;
+            Deque<ForkJoinTask<List<Task>>> chunks = new ArrayDeque<>();
+            long start = 0;
+            while (start < size || !chunks.isEmpty()) {
+                while (start < size && chunks.size() < maxInFlight) {
+                    long end = findChunkEnd(channel, start, size);
+                    ByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                    chunks.add(pool.submit(() -> parseChunk(chunk)));
+                    start = end;
+                }
+                chunks.poll().join().forEach(sink);
+            }
+        }
+        return skipped.intValue();
+    }
+
+    /**
+     * Returns the offset just past the first line break at or after one chunk size from
+     * the start, or the end of the file.
+     */
+    private static long findChunkEnd(FileChannel channel, long start, long size) throws IOException {
+        long position = start + CHUNK_SIZE;
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private List<Task> parseChunk(ByteBuffer chunk) {
+        byte[] bytes = new byte[chunk.remaining()];
+        chunk.get(bytes);
+        List<Task> tasks = new ArrayList<>();
+        int lineStart = 0;
+        for (int i = 0; i <= bytes.length; i++) {
+            if (i < bytes.length && bytes[i] != '\n') {
+                continue;
+            }
+            int lineEnd = i;
+            if (lineEnd > lineStart && bytes[lineEnd - 1] == '\r') {
+                lineEnd--;
+            }
+            if (lineEnd > lineStart) {
+                String record = RecordRecovery.unseal(
+                        new String(bytes, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8));
+                Task task = record == null ? null : Parser.parseTaskFromString(record);
+                if (task != null) {
+                    tasks.add(task);
+                } else {
+                    skipped.increment();
+                }
+            }
+            lineStart = i + 1;
+        }
+        return tasks;
+    }
+}
@@ -0,0 +1,212 @@
+package pichu.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Predicate;
+import java.util.zip.CRC32C;
+
+/**
+ * Checksums for text records and the recovery pass that checks them on load.
+ *
+ * <p>A sealed record is the record followed by a tab and the CRC-32C of its UTF-8 bytes
+ * as eight hex digits. Lines without a checksum are legacy records and are accepted as
+ * they are. While a file is read, every record is checked as it goes by, so recovery
+ * costs no extra read. A damaged record in the middle of the file is skipped. A damaged
+ * last line without a line break is a torn write, so the file is truncated where that
+ * line starts. Whatever was skipped is reported on standard error.
+ */
+public final class RecordRecovery {
+    private static final char CHECKSUM_SEPARATOR = '\t';
+    private static final int CHECKSUM_DIGITS = 8;
+    private static final int SUFFIX_LENGTH = CHECKSUM_DIGITS + 1;
+    private static final int TAIL_SCAN_SIZE = 4 * 1024;
+
+    private RecordRecovery() {
+    }
+
+    /**
+     * Returns the record with its checksum appended.
+     *
+     * @param record the record without a line break
+     * @return the sealed record
+     */
+    public static String seal(String record) {
+        String checksum = Integer.toHexString(checksum(record));
+        StringBuilder sealed = new StringBuilder(record.length() + SUFFIX_LENGTH).append(record)
+                .append(CHECKSUM_SEPARATOR);
+        for (int i = checksum.length(); i < CHECKSUM_DIGITS; i++) {
+            sealed.append('0');
+        }
+        return sealed.append(checksum).toString();
+    }
+
+    /**
+     * Returns the record in a line, checking its checksum if it has one.
+     *
+     * @param line a sealed or legacy record
+     * @return the record, or null if its checksum does not match
+     */
+    public static String unseal(String line) {
+        if (!isSealed(line)) {
+            return line;
+        }
+        String record = line.substring(0, line.length() - SUFFIX_LENGTH);
+        int expected = Integer.parseUnsignedInt(line.substring(line.length() - CHECKSUM_DIGITS), 16);
+        return checksum(record) == expected ? record : null;
+    }
+
+    private static boolean isSealed(String line) {
+        int length = line.length();
+        if (length < SUFFIX_LENGTH || line.charAt(length - SUFFIX_LENGTH) != CHECKSUM_SEPARATOR) {
+            return false;
+        }
+        for (int i = length - CHECKSUM_DIGITS; i < length; i++) {
+            if (Character.digit(line.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int checksum(String record) {
+        CRC32C crc = new CRC32C();
+        crc.update(record.getBytes(StandardCharsets.UTF_8));
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Reads the records of a file in one pass, repairing it as described above.
+     *
+     * @param path the file to read
+     * @param sink takes each intact record and returns false if it cannot use it
+     * @return the number of records that were skipped
+     */
+    public static int read(Path path, Predicate<String> sink) throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        int skipped = 0;
+        long tornOffset = -1;
+        boolean isMissingLineBreak = false;
+        Boolean isSealedFile = null;
+        try (LineReader reader = new LineReader(path, LineReader.DEFAULT_BUFFER_SIZE)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (isSealedFile == null) {
+                    isSealedFile = isSealed(line);
+                }
+                String record = unseal(line);
+                if (!reader.isLineTerminated() && isTorn(line, record, isSealedFile)) {
+                    tornOffset = reader.getLineOffset();
+                    break;
+                }
+                if (record == null || !sink.test(record)) {
+                    skipped++;
+                } else if (!reader.isLineTerminated()) {
+                    isMissingLineBreak = true;
+                }
+            }
+        }
+
+        if (tornOffset >= 0) {
+            skipped++;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(tornOffset);
+            }
+        } else if (isMissingLineBreak) {
+            // Later appends must start on a line of their own
+            Files.write(path, new byte[] {'\n'}, StandardOpenOption.APPEND);
+        }
+        report(path, skipped, tornOffset >= 0);
+        return skipped;
+    }
+
+    /**
+     * Returns whether the unterminated last line of a file is a torn write. In a file of
+     * sealed records, a last line without its checksum was cut short.
+     */
+    private static boolean isTorn(String line, String record, boolean isSealedFile) {
+        return record == null || (isSealedFile && !isSealed(line));
+    }
+
+    /**
+     * Truncates a torn last line without reading the rest of the file.
+     *
+     * @param path the file to repair
+     * @return true if a torn line was removed
+     */
+    public static boolean repairTornTail(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            if (size == 0 || readByte(channel, size - 1) == '\n') {
+                return false;
+            }
+            long lastLineStart = findLastLineStart(channel, size);
+            String lastLine = readLine(channel, lastLineStart, size);
+            boolean isSealedFile;
+            try (LineReader reader = new LineReader(path, TAIL_SCAN_SIZE)) {
+                isSealedFile = isSealed(reader.readLine());
+            }
+            if (!isTorn(lastLine, unseal(lastLine), isSealedFile)) {
+                channel.write(ByteBuffer.wrap(new byte[] {'\n'}), size);
+                return false;
+            }
+            channel.truncate(lastLineStart);
+            return true;
+        }
+    }
+
+    private static byte readByte(FileChannel channel, long offset) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1);
+        channel.read(buffer, offset);
+        return buffer.get(0);
+    }
+
+    private static long findLastLineStart(FileChannel channel, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(TAIL_SCAN_SIZE);
+        long end = size;
+        while (end > 0) {
+            long start = Math.max(0, end - TAIL_SCAN_SIZE);
+            buffer.clear().limit((int) (end - start));
+            channel.read(buffer, start);
+            for (int i = (int) (end - start) - 1; i >= 0; i--) {
+                if (buffer.get(i) == '\n') {
+                    return start + i + 1;
+                }
+            }
+            end = start;
+        }
+        return 0;
+    }
+
+    private static String readLine(FileChannel channel, long start, long end) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+        while (buffer.hasRemaining() && channel.read(buffer, start + buffer.position()) >= 0) {
+            // Keep reading until the whole line is in the buffer
+        }
+        return new String(buffer.array(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reports skipped records on standard error.
+     *
+     * @param path the recovered file
+     * @param skipped the number of records that were skipped
+     * @param isTailTruncated whether a torn last record was cut off
+     */
+    public static void report(Path path, int skipped, boolean isTailTruncated) {
+        if (skipped == 0) {
+            return;
+        }
+        System.err.println("Recovered " + path + ": skipped " + skipped + " damaged record"
+                + (skipped == 1 ? "" : "s") + (isTailTruncated ? ", including a torn write at the end" : ""));
+    }
+}
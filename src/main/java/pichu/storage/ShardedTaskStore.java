@@ -0,0 +1,399 @@
+package pichu.storage;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
+import pichu.parser.Parser;
+import pichu.task.Deadline;
+import pichu.task.Event;
+import pichu.task.Task;
+
+/**
+ * Spreads the tasks over several shard files next to the data file, either one shard per
+ * task type or a fixed number of shards chosen by a hash of each record's sequence number.
+ *
+ * <p>Every shard line is a sequence number followed by the task in the text file format,
+ * sealed with a checksum and recovered on load by {@link RecordRecovery}.
+ * Sequence numbers increase along the list, so loading reads all shards in parallel and
+ * merges them back into one list by sequence number. An added task is appended to its
+ * shard, and a changed or deleted task rewrites only the shard that held it. The data
+ * file itself only names the partitioning, which is how a sharded store is recognised.
+ */
+public class ShardedTaskStore {
+    public static final int DEFAULT_HASH_SHARDS = 4;
+
+    private static final String MANIFEST_PREFIX = "#pichu-shards";
+    private static final String SEPARATOR = "|";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String TYPE_CODES = "TDE";
+
+    /**
+     * How tasks are assigned to shards.
+     */
+    public enum Partitioning {
+        /** One shard each for todos, deadlines and events. */
+        BY_TYPE,
+        /** A fixed number of shards chosen by a hash of the record's sequence number. */
+        BY_HASH
+    }
+
+    private final Partitioning partitioning;
+    private final Path[] shardPaths;
+    private final Durability durability;
+    private final BitSet unsyncedShards = new BitSet();
+
+    // Sequence number and shard of every task, by list position
+    private long[] sequences = new long[16];
+    private byte[] shards = new byte[16];
+    private int size;
+    private long nextSequence;
+    private boolean isIndexed;
+
+    /**
+     * A task read from a shard together with its sequence number.
+     */
+    private static class ShardRecord {
+        private final long sequence;
+        private final Task task;
+
+        ShardRecord(long sequence, Task task) {
+            this.sequence = sequence;
+            this.task = task;
+        }
+    }
+
+    /**
+     * Opens a sharded store. A data file that holds tasks is split into shards, after
+     * which it only keeps the partitioning.
+     *
+     * @param dataPath the data file
+     * @param partitioning how tasks are assigned to shards, unless the data file already
+     *     names one
+     * @param shardCount the number of shards for {@link Partitioning#BY_HASH}
+     * @param durability when writes are forced to disk
+     */
+    public ShardedTaskStore(Path dataPath, Partitioning partitioning, int shardCount, Durability durability)
+            throws IOException {
+        String[] manifest = readManifest(dataPath);
+        if (manifest != null) {
+            partitioning = Partitioning.valueOf(manifest[1]);
+            shardCount = Integer.parseInt(manifest[2]);
+        } else if (partitioning == Partitioning.BY_TYPE) {
+            shardCount = TYPE_CODES.length();
+        }
+        this.partitioning = partitioning;
+        this.durability = durability;
+        this.shardPaths = new Path[shardCount];
+        for (int shard = 0; shard < shardCount; shard++) {
+            shardPaths[shard] = shardPath(dataPath, partitioning == Partitioning.BY_TYPE
+                    ? String.valueOf(TYPE_CODES.charAt(shard))
+                    : String.valueOf(shard));
+        }
+
+        if (manifest == null) {
+            List<Task> existing = Files.exists(dataPath)
+                    ? TaskFileFormat.forPath(dataPath).read(dataPath)
+                    : new ArrayList<>();
+            rewriteAll(existing);
+            Path tempPath = Paths.get(dataPath + TEMP_SUFFIX);
+            Files.write(tempPath, List.of(String.join(SEPARATOR, MANIFEST_PREFIX, partitioning.name(),
+                    String.valueOf(shardCount))));
+            Files.move(tempPath, dataPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /**
+     * Returns whether the data file names the shards of a sharded store.
+     *
+     * @param dataPath the data file
+     * @return true if the data file is a shard manifest
+     */
+    public static boolean isSharded(Path dataPath) throws IOException {
+        return readManifest(dataPath) != null;
+    }
+
+    private static String[] readManifest(Path dataPath) throws IOException {
+        if (!Files.exists(dataPath)) {
+            return null;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(dataPath, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            if (line == null || !line.startsWith(MANIFEST_PREFIX + SEPARATOR)) {
+                return null;
+            }
+            return line.split("\\" + SEPARATOR);
+        } catch (IOException e) {
+            // A binary data file is not valid UTF-8 and cannot be a manifest
+            return null;
+        }
+    }
+
+    /**
+     * Returns the path of a shard, e.g. {@code data/tasks.T.txt} for {@code data/tasks.txt}.
+     */
+    private static Path shardPath(Path dataPath, String shardName) {
+        String fileName = dataPath.getFileName().toString();
+        int dot = fileName.lastIndexOf('.');
+        String shardFileName = dot < 0
+                ? fileName + "." + shardName
+                : fileName.substring(0, dot) + "." + shardName + fileName.substring(dot);
+        return dataPath.resolveSibling(shardFileName);
+    }
+
+    /**
+     * Reads every shard in parallel and streams the tasks to the sink in list order.
+     *
+     * @param sink receives the tasks in list order
+     */
+    public synchronized void load(Consumer<Task> sink) throws IOException {
+        List<CompletableFuture<List<ShardRecord>>> reads = new ArrayList<>();
+        for (Path shardPath : shardPaths) {
+            reads.add(CompletableFuture.supplyAsync(() -> readShard(shardPath)));
+        }
+        List<List<ShardRecord>> shardRecords = new ArrayList<>();
+        try {
+            for (CompletableFuture<List<ShardRecord>> read : reads) {
+                shardRecords.add(read.join());
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw e;
+        }
+
+        // Merge the shards, each already ordered by sequence number
+        int[] cursors = new int[shardRecords.size()];
+        PriorityQueue<Integer> heads = new PriorityQueue<>((a, b) -> Long.compare(
+                shardRecords.get(a).get(cursors[a]).sequence, shardRecords.get(b).get(cursors[b]).sequence));
+        for (int shard = 0; shard < shardRecords.size(); shard++) {
+            if (!shardRecords.get(shard).isEmpty()) {
+                heads.add(shard);
+            }
+        }
+        size = 0;
+        nextSequence = 0;
+        while (!heads.isEmpty()) {
+            int shard = heads.poll();
+            ShardRecord record = shardRecords.get(shard).get(cursors[shard]++);
+            addToIndex(record.sequence, shard);
+            nextSequence = Math.max(nextSequence, record.sequence + 1);
+            sink.accept(record.task);
+            if (cursors[shard] < shardRecords.get(shard).size()) {
+                heads.add(shard);
+            }
+        }
+        isIndexed = true;
+    }
+
+    private static List<ShardRecord> readShard(Path shardPath) {
+        List<ShardRecord> records = new ArrayList<>();
+        if (!Files.exists(shardPath)) {
+            return records;
+        }
+        try {
+            RecordRecovery.read(shardPath, record -> {
+                int separator = record.indexOf(SEPARATOR);
+                Task task = separator > 0 ? Parser.parseTaskFromString(record.substring(separator + 1)) : null;
+                if (task == null) {
+                    return false;
+                }
+                try {
+                    records.add(new ShardRecord(Long.parseLong(record.substring(0, separator)), task));
+                    return true;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        records.sort((a, b) -> Long.compare(a.sequence, b.sequence));
+        return records;
+    }
+
+    /**
+     * Appends a new task to the end of the list.
+     *
+     * @param task the new task
+     */
+    public synchronized void append(Task task) throws IOException {
+        ensureIndexed();
+        long sequence = nextSequence++;
+        int shard = shardOf(task, sequence);
+        String line = RecordRecovery.seal(sequence + SEPARATOR + task.toFileFormat()) + System.lineSeparator();
+        Files.write(shardPaths[shard], line.getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        addToIndex(sequence, shard);
+        afterShardWrite(shard);
+    }
+
+    /**
+     * Saves a change to one task by rewriting only the shard that holds it.
+     *
+     * @param index the 1-based index of the changed task
+     * @param taskList the whole list, whose tasks in the same shard are rewritten
+     */
+    public synchronized void update(int index, List<Task> taskList) throws IOException {
+        ensureIndexed();
+        int position = toPosition(index);
+        int shard = shardOf(taskList.get(position), sequences[position]);
+        if (shard != shards[position]) {
+            // The task changed type, so it moves between shards
+            int oldShard = shards[position];
+            shards[position] = (byte) shard;
+            rewriteShard(oldShard, taskList);
+        }
+        rewriteShard(shard, taskList);
+    }
+
+    /**
+     * Saves the removal of one task by rewriting only the shard that held it.
+     *
+     * @param index the 1-based index the task had before it was removed
+     * @param tasks the whole list after the removal
+     */
+    public synchronized void delete(int index, List<Task> tasks) throws IOException {
+        ensureIndexed();
+        int position = toPosition(index);
+        int shard = shards[position];
+        System.arraycopy(sequences, position + 1, sequences, position, size - position - 1);
+        System.arraycopy(shards, position + 1, shards, position, size - position - 1);
+        size--;
+        rewriteShard(shard, tasks);
+    }
+
+    /**
+     * Replaces every shard with the given tasks, writing the shards in parallel.
+     *
+     * @param tasks the whole list
+     */
+    public synchronized void rewriteAll(List<Task> tasks) throws IOException {
+        size = 0;
+        nextSequence = 0;
+        for (Task task : tasks) {
+            long sequence = nextSequence++;
+            addToIndex(sequence, shardOf(task, sequence));
+        }
+        isIndexed = true;
+
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        for (int shard = 0; shard < shardPaths.length; shard++) {
+            int target = shard;
+            writes.add(CompletableFuture.runAsync(() -> {
+                try {
+                    rewriteShard(target, tasks);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+        }
+        try {
+            CompletableFuture.allOf(writes.toArray(CompletableFuture<?>[]::new)).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Forces every shard written since the last sync to disk.
+     */
+    public synchronized void sync() throws IOException {
+        for (int shard = unsyncedShards.nextSetBit(0); shard >= 0; shard = unsyncedShards.nextSetBit(shard + 1)) {
+            force(shardPaths[shard]);
+        }
+        unsyncedShards.clear();
+    }
+
+    private void rewriteShard(int shard, List<Task> tasks) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (int position = 0; position < size; position++) {
+            if (shards[position] == shard) {
+                lines.add(RecordRecovery.seal(sequences[position] + SEPARATOR + tasks.get(position).toFileFormat()));
+            }
+        }
+        Path tempPath = Paths.get(shardPaths[shard] + TEMP_SUFFIX);
+        Files.write(tempPath, lines, StandardCharsets.UTF_8);
+        if (durability != Durability.NO_SYNC) {
+            force(tempPath);
+        }
+        Files.move(tempPath, shardPaths[shard], StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void afterShardWrite(int shard) throws IOException {
+        if (durability == Durability.SYNC_EVERY_WRITE) {
+            force(shardPaths[shard]);
+        } else if (durability == Durability.SYNC_ON_INTERVAL) {
+            unsyncedShards.set(shard);
+        }
+    }
+
+    private static void force(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    private int shardOf(Task task, long sequence) {
+        if (partitioning == Partitioning.BY_TYPE) {
+            return typeShardOf(task);
+        }
+        return Math.floorMod(Long.hashCode(sequence), shardPaths.length);
+    }
+
+    /**
+     * Returns the shard for the type of a task. Tasks of no other type go with the todos.
+     */
+    private static int typeShardOf(Task task) {
+        if (task instanceof Deadline) {
+            return TYPE_CODES.indexOf('D');
+        }
+        if (task instanceof Event) {
+            return TYPE_CODES.indexOf('E');
+        }
+        return TYPE_CODES.indexOf('T');
+    }
+
+    private void ensureIndexed() throws IOException {
+        if (!isIndexed) {
+            load(task -> { });
+        }
+    }
+
+    private int toPosition(int index) {
+        if (index < 1 || index > size) {
+            throw new IndexOutOfBoundsException("Invalid task index: " + index);
+        }
+        return index - 1;
+    }
+
+    private void addToIndex(long sequence, int shard) {
+        if (size == sequences.length) {
+            sequences = Arrays.copyOf(sequences, size * 2);
+            shards = Arrays.copyOf(shards, size * 2);
+        }
+        sequences[size] = sequence;
+        shards[size] = (byte) shard;
+        size++;
+    }
+}
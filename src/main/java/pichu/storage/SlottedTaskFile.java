@@ -0,0 +1,482 @@
+package pichu.storage;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+import pichu.parser.Parser;
+import pichu.task.Task;
+
+/**
+ * Task file made of fixed-size slots, so a single task can be rewritten in place.
+ *
+ * <p>Each record starts on a slot boundary with a header holding its state, the number
+ * of slots it spans, an ordering key, the length of its text and a CRC-32C of everything
+ * but the state, followed by the task in the text file format. An in-memory index maps
+ * each 1-based task index to its slot, so marking a task overwrites only its own slots
+ * and deleting one only flips its state to a tombstone. A changed task that no longer
+ * fits is moved to the end of the file and keeps its ordering key, which is what the
+ * list order is restored from on load. Once tombstones outnumber live records the file
+ * is compacted.
+ *
+ * <p>A record that fails its checksum is skipped, and the load carries on at the next
+ * slot that starts a good record. Damaged slots at the end of the file are left by a torn
+ * write, so the file is truncated where they start. Whatever was skipped is reported like
+ * the records of {@link RecordRecovery}.
+ *
+ * <p>A file in another task format, or an older slotted file without checksums, is
+ * converted when it is first opened.
+ */
+public class SlottedTaskFile implements AutoCloseable {
+    public static final int SLOT_SIZE = 128;
+
+    private static final byte[] MAGIC = {'P', 'S', 'L', 'T'};
+    private static final short VERSION = 2;
+    private static final int FILE_HEADER_SIZE = 16;
+    private static final int VERSION_OFFSET = MAGIC.length;
+    // State, span, key, text length and checksum
+    private static final int RECORD_HEADER_SIZE = 19;
+    private static final int LEGACY_RECORD_HEADER_SIZE = 15;
+    private static final int LENGTH_OFFSET = 11;
+    private static final int CHECKED_HEADER_SIZE = 14;
+    private static final byte FREE = 0;
+    private static final byte LIVE = 1;
+    private static final byte TOMBSTONE = 2;
+    private static final int MIN_TOMBSTONES_TO_COMPACT = 1024;
+    private static final int SCAN_BUFFER_SIZE = 256 * 1024;
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path path;
+    private final Durability durability;
+    private FileChannel channel;
+
+    // Index of live records by list position
+    private int[] slots = new int[16];
+    private short[] spans = new short[16];
+    private long[] keys = new long[16];
+    private int size;
+
+    private boolean isIndexed;
+    private int rewrites;
+    private int slotCount;
+    private int tombstoneSlots;
+    private long nextKey;
+
+    /**
+     * Opens the slotted file, creating an empty one if the file does not exist or is
+     * empty and converting it if it is in another task format.
+     *
+     * @param path the slotted task file
+     * @param durability when writes are forced to disk
+     */
+    public SlottedTaskFile(Path path, Durability durability) throws IOException {
+        this.path = path;
+        this.durability = durability;
+        if (!Files.exists(path) || Files.size(path) == 0) {
+            writeFile(path, new ArrayList<>(), false);
+        } else if (!isSlotted(path)) {
+            List<String> taskData = new ArrayList<>();
+            TaskFileFormat.forPath(path).read(path, task -> taskData.add(task.toFileFormat()));
+            replaceFile(taskData);
+        }
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (readVersion() < VERSION) {
+            List<String> taskData = new ArrayList<>();
+            for (ScannedRecord record : sortByKey(scan(false))) {
+                taskData.add(record.taskData);
+            }
+            rewrite(taskData);
+        }
+    }
+
+    private short readVersion() throws IOException {
+        ByteBuffer version = ByteBuffer.allocate(Short.BYTES);
+        channel.read(version, VERSION_OFFSET);
+        return version.flip().getShort();
+    }
+
+    /**
+     * Returns whether the file holds slotted records.
+     *
+     * @param path the file to check
+     * @return true if the file starts with the slotted file header
+     */
+    public static boolean isSlotted(Path path) throws IOException {
+        if (!Files.exists(path) || Files.size(path) < MAGIC.length) {
+            return false;
+        }
+        try (InputStream in = Files.newInputStream(path)) {
+            return Arrays.equals(in.readNBytes(MAGIC.length), MAGIC);
+        }
+    }
+
+    /**
+     * A live record found while scanning the file.
+     */
+    private static class ScannedRecord {
+        private final long key;
+        private final int slot;
+        private final short span;
+        private final String taskData;
+
+        ScannedRecord(long key, int slot, short span, String taskData) {
+            this.key = key;
+            this.slot = slot;
+            this.span = span;
+            this.taskData = taskData;
+        }
+    }
+
+    /**
+     * Scans the file, rebuilds the slot index and streams the tasks in list order.
+     *
+     * @param sink receives the tasks in list order
+     */
+    public synchronized void load(Consumer<Task> sink) throws IOException {
+        size = 0;
+        for (ScannedRecord record : sortByKey(scan(true))) {
+            Task task = Parser.parseTaskFromString(record.taskData);
+            if (task == null) {
+                // Keep the index aligned with the task list, which never sees this record
+                writeState(record.slot, TOMBSTONE);
+                tombstoneSlots += record.span;
+                continue;
+            }
+            addToIndex(size, record.slot, record.span, record.key);
+            sink.accept(task);
+        }
+        isIndexed = true;
+    }
+
+    private static List<ScannedRecord> sortByKey(List<ScannedRecord> records) {
+        boolean isSorted = true;
+        for (int i = 1; i < records.size() && isSorted; i++) {
+            isSorted = records.get(i - 1).key < records.get(i).key;
+        }
+        if (!isSorted) {
+            records.sort(Comparator.comparingLong(record -> record.key));
+        }
+        return records;
+    }
+
+    /**
+     * Reads every record, skipping damaged ones and cutting off damaged slots at the end.
+     *
+     * @param hasChecksums false for a file of version 1, whose headers have no checksum
+     * @return the live records in file order
+     */
+    private List<ScannedRecord> scan(boolean hasChecksums) throws IOException {
+        List<ScannedRecord> records = new ArrayList<>();
+        int headerSize = hasChecksums ? RECORD_HEADER_SIZE : LEGACY_RECORD_HEADER_SIZE;
+        slotCount = (int) ((channel.size() - FILE_HEADER_SIZE) / SLOT_SIZE);
+        tombstoneSlots = 0;
+        nextKey = 0;
+
+        int skipped = 0;
+        int damagedFrom = -1;
+        DataInputStream in = openScan(0);
+        int slot = 0;
+        while (slot < slotCount) {
+            byte state = in.readByte();
+            short span = in.readShort();
+            long key = in.readLong();
+            int length = in.readInt();
+            int checksum = hasChecksums ? in.readInt() : 0;
+            byte[] bytes = null;
+            if ((state == LIVE || state == TOMBSTONE) && span >= 1 && span <= slotCount - slot
+                    && length >= 0 && length <= span * SLOT_SIZE - headerSize) {
+                bytes = new byte[length];
+                in.readFully(bytes);
+                if (hasChecksums && checksum(span, key, bytes) != checksum) {
+                    bytes = null;
+                }
+            }
+            if (bytes == null) {
+                if (damagedFrom < 0) {
+                    damagedFrom = slot;
+                }
+                // A good record can only start on the next slot boundary
+                slot++;
+                in = openScan(slot);
+                continue;
+            }
+
+            if (damagedFrom >= 0) {
+                skipped++;
+                tombstoneSlots += slot - damagedFrom;
+                damagedFrom = -1;
+            }
+            if (state == LIVE) {
+                records.add(new ScannedRecord(key, slot, span, new String(bytes, StandardCharsets.UTF_8)));
+                nextKey = Math.max(nextKey, key + 1);
+            } else {
+                tombstoneSlots += span;
+            }
+            slot += span;
+            if (slot < slotCount) {
+                in.skipNBytes(span * SLOT_SIZE - headerSize - length);
+            }
+        }
+
+        boolean isTailTruncated = damagedFrom >= 0 || channel.size() > slotOffset(slotCount);
+        if (isTailTruncated) {
+            slotCount = damagedFrom >= 0 ? damagedFrom : slotCount;
+            channel.truncate(slotOffset(slotCount));
+            skipped++;
+        }
+        RecordRecovery.report(path, skipped, isTailTruncated);
+        return records;
+    }
+
+    private DataInputStream openScan(int slot) throws IOException {
+        channel.position(slotOffset(slot));
+        // The stream is not closed because that would close the shared channel
+        return new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), SCAN_BUFFER_SIZE));
+    }
+
+    private static int checksum(short span, long key, byte[] bytes) {
+        CRC32C crc = new CRC32C();
+        crc.update(ByteBuffer.allocate(CHECKED_HEADER_SIZE).putShort(span).putLong(key).putInt(bytes.length).flip());
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    private String readTaskData(int slot) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+        channel.read(length, slotOffset(slot) + LENGTH_OFFSET);
+        ByteBuffer data = ByteBuffer.allocate(length.flip().getInt());
+        while (data.hasRemaining()) {
+            if (channel.read(data, slotOffset(slot) + RECORD_HEADER_SIZE + data.position()) < 0) {
+                throw new EOFException("Truncated record in slot " + slot);
+            }
+        }
+        return new String(data.array(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Adds a task after the last one.
+     *
+     * @param taskData the file format of the task
+     */
+    public synchronized void append(String taskData) throws IOException {
+        ensureIndexed();
+        byte[] bytes = taskData.getBytes(StandardCharsets.UTF_8);
+        short span = spanFor(bytes.length);
+        int slot = slotCount;
+        long key = nextKey++;
+        writeRecord(slot, span, key, bytes);
+        slotCount += span;
+        addToIndex(size, slot, span, key);
+        syncIfRequired();
+    }
+
+    /**
+     * Rewrites the task at the given index, in place if it still fits in its slots.
+     *
+     * @param index the 1-based index of the task
+     * @param taskData the new file format of the task
+     */
+    public synchronized void update(int index, String taskData) throws IOException {
+        ensureIndexed();
+        int position = toPosition(index);
+        byte[] bytes = taskData.getBytes(StandardCharsets.UTF_8);
+        short span = spanFor(bytes.length);
+        if (span <= spans[position]) {
+            writeRecord(slots[position], spans[position], keys[position], bytes);
+            syncIfRequired();
+            return;
+        }
+
+        writeState(slots[position], TOMBSTONE);
+        tombstoneSlots += spans[position];
+        int slot = slotCount;
+        writeRecord(slot, span, keys[position], bytes);
+        slotCount += span;
+        slots[position] = slot;
+        spans[position] = span;
+        syncIfRequired();
+        compactIfSparse();
+    }
+
+    /**
+     * Marks the task at the given index as deleted.
+     *
+     * @param index the 1-based index of the task
+     */
+    public synchronized void delete(int index) throws IOException {
+        ensureIndexed();
+        int position = toPosition(index);
+        writeState(slots[position], TOMBSTONE);
+        tombstoneSlots += spans[position];
+        removeFromIndex(position);
+        syncIfRequired();
+        compactIfSparse();
+    }
+
+    /**
+     * Replaces the whole file with the given tasks.
+     *
+     * @param taskData the file format of every task, in list order
+     */
+    public synchronized void rewrite(List<String> taskData) throws IOException {
+        channel.close();
+        replaceFile(taskData);
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        rewrites++;
+
+        size = 0;
+        slotCount = 0;
+        tombstoneSlots = 0;
+        nextKey = 0;
+        for (String data : taskData) {
+            short span = spanFor(data.getBytes(StandardCharsets.UTF_8).length);
+            addToIndex(size, slotCount, span, nextKey++);
+            slotCount += span;
+        }
+        isIndexed = true;
+    }
+
+    /**
+     * Returns how often this file was replaced by {@link #rewrite} or a compaction.
+     */
+    public synchronized int getRewrites() {
+        return rewrites;
+    }
+
+    /**
+     * Forces every write so far to disk.
+     */
+    public synchronized void sync() throws IOException {
+        channel.force(false);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    private void ensureIndexed() throws IOException {
+        if (!isIndexed) {
+            load(task -> { });
+        }
+    }
+
+    private void syncIfRequired() throws IOException {
+        if (durability == Durability.SYNC_EVERY_WRITE) {
+            channel.force(false);
+        }
+    }
+
+    private void compactIfSparse() throws IOException {
+        if (tombstoneSlots < MIN_TOMBSTONES_TO_COMPACT || tombstoneSlots < slotCount - tombstoneSlots) {
+            return;
+        }
+        List<String> taskData = new ArrayList<>(size);
+        for (int position = 0; position < size; position++) {
+            taskData.add(readTaskData(slots[position]));
+        }
+        rewrite(taskData);
+    }
+
+    private void replaceFile(List<String> taskData) throws IOException {
+        Path tempPath = Paths.get(path + TEMP_SUFFIX);
+        writeFile(tempPath, taskData, durability != Durability.NO_SYNC);
+        Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeFile(Path target, List<String> taskData, boolean isForced) throws IOException {
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+            header.put(MAGIC).putShort(VERSION).putShort((short) 0).putInt(SLOT_SIZE).putInt(0).flip();
+            out.write(header);
+            long key = 0;
+            for (String data : taskData) {
+                byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
+                out.write(encodeRecord(spanFor(bytes.length), key++, bytes));
+            }
+            if (isForced) {
+                out.force(false);
+            }
+        }
+    }
+
+    private static ByteBuffer encodeRecord(short span, long key, byte[] bytes) {
+        ByteBuffer record = ByteBuffer.allocate(span * SLOT_SIZE);
+        record.put(LIVE).putShort(span).putLong(key).putInt(bytes.length).putInt(checksum(span, key, bytes))
+                .put(bytes);
+        record.clear();
+        return record;
+    }
+
+    private void writeRecord(int slot, short span, long key, byte[] bytes) throws IOException {
+        ByteBuffer record = encodeRecord(span, key, bytes);
+        // Only the bytes in use need writing when a record is overwritten in place
+        record.limit(RECORD_HEADER_SIZE + bytes.length);
+        long offset = slotOffset(slot);
+        while (record.hasRemaining()) {
+            offset += channel.write(record, offset);
+        }
+        if (slot + span > slotCount) {
+            // Extend the file to the end of the span so the next record starts on a boundary
+            channel.write(ByteBuffer.wrap(new byte[] {FREE}), slotOffset(slot + span) - 1);
+        }
+    }
+
+    private void writeState(int slot, byte state) throws IOException {
+        channel.write(ByteBuffer.wrap(new byte[] {state}), slotOffset(slot));
+    }
+
+    private static long slotOffset(int slot) {
+        return FILE_HEADER_SIZE + (long) slot * SLOT_SIZE;
+    }
+
+    private static short spanFor(int dataLength) {
+        return (short) ((RECORD_HEADER_SIZE + dataLength + SLOT_SIZE - 1) / SLOT_SIZE);
+    }
+
+    private int toPosition(int index) {
+        if (index < 1 || index > size) {
+            throw new IndexOutOfBoundsException("Invalid task index: " + index);
+        }
+        return index - 1;
+    }
+
+    private void addToIndex(int position, int slot, short span, long key) {
+        if (size == slots.length) {
+            int capacity = size * 2;
+            slots = Arrays.copyOf(slots, capacity);
+            spans = Arrays.copyOf(spans, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+        }
+        slots[position] = slot;
+        spans[position] = span;
+        keys[position] = key;
+        size++;
+    }
+
+    private void removeFromIndex(int position) {
+        int moved = size - position - 1;
+        System.arraycopy(slots, position + 1, slots, position, moved);
+        System.arraycopy(spans, position + 1, spans, position, moved);
+        System.arraycopy(keys, position + 1, keys, position, moved);
+        size--;
+    }
+}
@@ -1,28 +1,138 @@
 package pichu.storage;
 
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
+import pichu.parser.Parser;
 import pichu.task.Task;
 
 /**
- * Handles loading and saving of tasks to and from storage file.
+ * Handles loading and saving of tasks to and from storage file. This is the file engine
+ * of {@link StorageEngine}.
+ * The file is either in the legacy text format or, for files named {@code *.bin}, in the
+ * binary format described in {@link BinaryTaskFormat}. In {@link Mode#SLOTTED} it is a
+ * {@link SlottedTaskFile} instead, and in the sharded modes it only names the shard files
+ * of a {@link ShardedTaskStore}.
+ *
+ * <p>Several processes may share the data file. Every disk operation runs under the lock
+ * of a {@link FileCoordinator}, and the generation counters it keeps tell this storage
+ * when another process changed the tasks. In {@link Mode#LOG} such changes are reloaded
+ * by replaying only the log records added since, otherwise the tasks are loaded again.
  */
-public final class Storage {
+public final class Storage implements StorageEngine, AutoCloseable {
+    /**
+     * How changes to the task list are written to disk.
+     */
+    public enum Mode {
+        /** Every change that is not an append rewrites the whole file. */
+        FLAT,
+        /** Changes are appended to a mutation log that is compacted into the file. */
+        LOG,
+        /** Tasks sit in fixed-size slots and a change rewrites only the changed task's slots. */
+        SLOTTED,
+        /** Tasks are split into one shard file per task type. */
+        SHARDED_BY_TYPE,
+        /** Tasks are split into a fixed number of shard files by a hash of each record. */
+        SHARDED_BY_HASH
+    }
+
+    private static final long SYNC_INTERVAL_MS = 10;
+    private static final String TEMP_SUFFIX = ".tmp";
+
     private final Path dataPath;
+    private final Mode mode;
+    private final Durability durability;
+    private final IdHighWaterMark idMark;
+    private TaskFileFormat format;
+    private MutationLog mutationLog;
+    private SlottedTaskFile slottedFile;
+    private ShardedTaskStore shardedStore;
+    private WriteBehindQueue writeBehind;
+    private Thread flushOnExit;
+    private ScheduledExecutorService intervalSync;
+    private volatile boolean hasUnsyncedWrites;
+
+    // What the files looked like when the caller's list was last in step with them,
+    // only accessed while the coordinator lock is held
+    private FileCoordinator coordinator;
+    private long knownGeneration;
+    private long knownLayoutGeneration;
+    private long knownLogOffset;
+    private boolean isOutOfStep;
 
     /**
      * Constructor for Storage class.
      * @param filePath the path to the storage file
      */
     public Storage(String filePath) {
+        this(filePath, Mode.FLAT);
+    }
+
+    /**
+     * Constructor for Storage class with an explicit storage mode.
+     * @param filePath the path to the storage file
+     * @param mode how changes are written to disk
+     */
+    public Storage(String filePath, Mode mode) {
+        this(filePath, mode, false);
+    }
+
+    /**
+     * Constructor for Storage class that can write in the background.
+     * With write-behind, saving only queues the write and returns, and a writer thread
+     * performs it later. Call {@link #flush()} to wait for queued writes; a shutdown hook
+     * also flushes them when the JVM exits normally, unless the storage was closed first.
+     * @param filePath the path to the storage file
+     * @param mode how changes are written to disk
+     * @param isWriteBehind whether writes run on a background writer thread
+     */
+    public Storage(String filePath, Mode mode, boolean isWriteBehind) {
+        this(filePath, mode, isWriteBehind, Durability.SYNC_ON_INTERVAL);
+    }
+
+    /**
+     * Constructor for Storage class with an explicit durability policy.
+     * @param filePath the path to the storage file
+     * @param mode how changes are written to disk
+     * @param isWriteBehind whether writes run on a background writer thread
+     * @param durability when writes are forced to disk
+     */
+    public Storage(String filePath, Mode mode, boolean isWriteBehind, Durability durability) {
         this.dataPath = Paths.get(filePath);
+        this.durability = durability;
+        this.idMark = new IdHighWaterMark(dataPath);
         createFileIfNotExists();
+        openCoordinator();
+        this.mode = detectMode(mode);
+        detectFormat();
+        if (this.mode == Mode.LOG) {
+            openMutationLog();
+        } else if (this.mode == Mode.SLOTTED) {
+            openSlottedFile();
+        } else if (isShardedMode(this.mode)) {
+            openShardedStore();
+        }
+        if (this.mode != Mode.LOG && durability == Durability.SYNC_ON_INTERVAL) {
+            startIntervalSync();
+        }
+        if (isWriteBehind) {
+            writeBehind = new WriteBehindQueue(WriteBehindQueue.DEFAULT_CAPACITY, "pichu-writer");
+            flushOnExit = new Thread(this::flush, "pichu-flush-on-exit");
+            Runtime.getRuntime().addShutdownHook(flushOnExit);
+        }
     }
 
     private void createFileIfNotExists() {
@@ -31,24 +141,392 @@ public final class Storage {
                 Files.createDirectories(dataPath.getParent());
                 Files.createFile(dataPath);
             }
+        } catch (FileAlreadyExistsException e) {
+            // Another process created it first
         } catch (IOException e) {
             System.err.println("Error creating storage file: " + e.getMessage());
         }
     }
 
+    private void openCoordinator() {
+        try {
+            coordinator = new FileCoordinator(dataPath);
+            long[] generations = coordinator.getGenerations();
+            knownGeneration = generations[0];
+            knownLayoutGeneration = generations[1];
+        } catch (IOException e) {
+            System.err.println("Error opening storage lock file: " + e.getMessage());
+        }
+    }
+
+    private void detectFormat() {
+        try {
+            format = TaskFileFormat.forPath(dataPath);
+        } catch (IOException e) {
+            System.err.println("Error reading storage file format: " + e.getMessage());
+            format = new TextTaskFormat();
+        }
+    }
+
+    private void openMutationLog() {
+        try {
+            mutationLog = new MutationLog(dataPath, format, durability,
+                    MutationLog.DEFAULT_COMPACTION_THRESHOLD_BYTES, coordinator);
+        } catch (IOException e) {
+            System.err.println("Error opening mutation log: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the mode a data file written in the slotted or sharded layout must be opened
+     * in, or the requested mode for any other file.
+     */
+    private Mode detectMode(Mode requestedMode) {
+        try {
+            if (SlottedTaskFile.isSlotted(dataPath)) {
+                return Mode.SLOTTED;
+            }
+            if (ShardedTaskStore.isSharded(dataPath) && !isShardedMode(requestedMode)) {
+                return Mode.SHARDED_BY_TYPE;
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading storage file format: " + e.getMessage());
+        }
+        return requestedMode;
+    }
+
+    private static boolean isShardedMode(Mode mode) {
+        return mode == Mode.SHARDED_BY_TYPE || mode == Mode.SHARDED_BY_HASH;
+    }
+
+    private void openSlottedFile() {
+        try {
+            slottedFile = new SlottedTaskFile(dataPath, durability);
+        } catch (IOException e) {
+            System.err.println("Error opening slotted task file: " + e.getMessage());
+        }
+    }
+
+    private void openShardedStore() {
+        ShardedTaskStore.Partitioning partitioning = mode == Mode.SHARDED_BY_HASH
+                ? ShardedTaskStore.Partitioning.BY_HASH
+                : ShardedTaskStore.Partitioning.BY_TYPE;
+        try {
+            shardedStore = new ShardedTaskStore(dataPath, partitioning, ShardedTaskStore.DEFAULT_HASH_SHARDS,
+                    durability);
+        } catch (IOException e) {
+            System.err.println("Error opening task shards: " + e.getMessage());
+        }
+    }
+
+    private void startIntervalSync() {
+        intervalSync = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "pichu-interval-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        intervalSync.scheduleWithFixedDelay(() -> {
+            if (hasUnsyncedWrites) {
+                hasUnsyncedWrites = false;
+                try {
+                    syncDataFiles();
+                } catch (IOException e) {
+                    // A failed background sync is retried by the next write
+                }
+            }
+        }, SYNC_INTERVAL_MS, SYNC_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private static void force(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    private static void forceQuietly(Path path) {
+        try {
+            force(path);
+        } catch (IOException e) {
+            // Some platforms cannot force a directory, and a failed background sync is
+            // retried by the next write
+        }
+    }
+
+    private boolean isLogging() {
+        return mode == Mode.LOG && mutationLog != null;
+    }
+
+    /**
+     * Forces the files that hold the tasks in the current mode to disk.
+     */
+    private void syncDataFiles() throws IOException {
+        if (isSlotted()) {
+            slottedFile.sync();
+        } else if (isSharded()) {
+            shardedStore.sync();
+        } else {
+            force(dataPath);
+        }
+    }
+
+    private boolean isSharded() {
+        return isShardedMode(mode) && shardedStore != null;
+    }
+
+    private boolean isSlotted() {
+        return mode == Mode.SLOTTED && slottedFile != null;
+    }
+
+    private void markUnsynced() {
+        if (durability == Durability.SYNC_ON_INTERVAL) {
+            hasUnsyncedWrites = true;
+        }
+    }
+
+    /**
+     * A write to disk that may run on the caller's thread or on the write-behind thread.
+     */
+    @FunctionalInterface
+    private interface DiskWrite {
+        void run() throws IOException;
+    }
+
+    private void write(DiskWrite diskWrite, boolean isFullRewrite, String errorMessage) {
+        Runnable write = coordinated(diskWrite, isFullRewrite, errorMessage);
+        if (writeBehind != null) {
+            writeBehind.submit(write, isFullRewrite);
+        } else {
+            write.run();
+        }
+    }
+
+    /**
+     * Writes a file that a full rewrite of the tasks leaves alone, so that the write-behind
+     * queue never skips it in favour of a later rewrite.
+     */
+    private void writeUncovered(DiskWrite diskWrite, String errorMessage) {
+        Runnable write = coordinated(diskWrite, false, errorMessage);
+        if (writeBehind != null) {
+            writeBehind.submitUncovered(write);
+        } else {
+            write.run();
+        }
+    }
+
+    private Runnable coordinated(DiskWrite diskWrite, boolean isFullRewrite, String errorMessage) {
+        return () -> {
+            try {
+                runCoordinated(diskWrite, isFullRewrite);
+            } catch (IOException e) {
+                System.err.println(errorMessage + e.getMessage());
+            }
+        };
+    }
+
+    /**
+     * Runs a write under the exclusive lock. The caller's list stays in step with the
+     * files only if no other process wrote since it last was, or if the write replaced
+     * everything.
+     */
+    private void runCoordinated(DiskWrite diskWrite, boolean isFullRewrite) throws IOException {
+        if (coordinator == null) {
+            diskWrite.run();
+            return;
+        }
+        coordinator.write((generation, layoutGeneration) -> {
+            if (layoutGeneration != knownLayoutGeneration) {
+                reopenReplacedFiles();
+            }
+            boolean isInStep = !isOutOfStep && generation == knownGeneration
+                    && layoutGeneration == knownLayoutGeneration;
+            int rewrites = countRewrites();
+            diskWrite.run();
+            boolean isReplaced = isFullRewrite || countRewrites() != rewrites;
+
+            if (isInStep || isFullRewrite) {
+                knownGeneration = generation + 1;
+                knownLayoutGeneration = isReplaced ? layoutGeneration + 1 : layoutGeneration;
+                knownLogOffset = isLogging() ? mutationLog.getLogSize() : 0;
+                isOutOfStep = false;
+            } else {
+                isOutOfStep = true;
+            }
+            return isReplaced ? FileCoordinator.Change.FILES_REPLACED : FileCoordinator.Change.RECORDS_APPENDED;
+        });
+    }
+
+    /**
+     * Returns how often the open files of the current mode were replaced by this process.
+     */
+    private int countRewrites() {
+        if (isLogging()) {
+            return mutationLog.getRotations();
+        }
+        if (isSlotted()) {
+            return slottedFile.getRewrites();
+        }
+        return 0;
+    }
+
+    /**
+     * Reopens files that another process replaced, so that writes do not go to the old
+     * ones.
+     */
+    private void reopenReplacedFiles() throws IOException {
+        if (isLogging()) {
+            mutationLog.reopen();
+        } else if (isSlotted()) {
+            slottedFile.close();
+            openSlottedFile();
+        }
+    }
+
     /**
      * Saves a task to the storage file.
      *
      * @param taskData The string representation of the task to be saved.
      *
      */
+    @Override
     public void saveTask(String taskData) {
-        try {
-            Files.write(dataPath, (taskData + System.lineSeparator()).getBytes(),
-                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
-        } catch (IOException e) {
-            System.err.println("Error saving task: " + e.getMessage());
+        Task task = Parser.parseTaskFromString(taskData);
+        if (task != null) {
+            saveTask(task);
+        }
+    }
+
+    /**
+     * Saves a new task to the end of the storage file.
+     *
+     * @param task The task to be saved.
+     *
+     */
+    @Override
+    public void saveTask(Task task) {
+        if (isLogging()) {
+            String taskData = task.toFileFormat();
+            write(() -> mutationLog.appendTask(taskData), false, "Error saving task: ");
+            return;
+        }
+        if (isSlotted()) {
+            String taskData = task.toFileFormat();
+            write(() -> {
+                slottedFile.append(taskData);
+                markUnsynced();
+            }, false, "Error saving task: ");
+            return;
+        }
+        if (isSharded()) {
+            write(() -> {
+                shardedStore.append(task);
+                markUnsynced();
+            }, false, "Error saving task: ");
+            return;
+        }
+        write(() -> appendToDataFile(task), false, "Error saving task: ");
+    }
+
+    private void appendToDataFile(Task task) throws IOException {
+        format.append(dataPath, task);
+        if (durability == Durability.SYNC_EVERY_WRITE) {
+            force(dataPath);
+        }
+        markUnsynced();
+    }
+
+    /**
+     * Replaces the data file atomically. The tasks are written to a temporary file, which
+     * is forced to disk unless the policy never syncs, and then renamed over the data
+     * file, so a crash leaves either the old or the new file but never a partial one.
+     */
+    private void rewriteDataFile(List<Task> tasks) throws IOException {
+        Path tempPath = Paths.get(dataPath + TEMP_SUFFIX);
+        format.write(tempPath, tasks);
+        if (durability != Durability.NO_SYNC) {
+            force(tempPath);
+        }
+        Files.move(tempPath, dataPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        format.renamed(tempPath, dataPath);
+        if (durability == Durability.SYNC_EVERY_WRITE) {
+            // Make the rename itself durable
+            forceQuietly(dataPath.toAbsolutePath().getParent());
+        }
+    }
+
+    /**
+     * Saves a change to a single task, such as marking it as done.
+     *
+     * @param index the 1-based index of the changed task
+     * @param task the changed task
+     * @param tasks supplies the whole list if the file has to be rewritten
+     */
+    @Override
+    public void updateTask(int index, Task task, Supplier<List<Task>> tasks) {
+        if (isSlotted()) {
+            String taskData = task.toFileFormat();
+            write(() -> {
+                slottedFile.update(index, taskData);
+                markUnsynced();
+            }, false, "Error updating task: ");
+            return;
+        }
+        if (isSharded()) {
+            // The list is taken now, since the write may run after the list has changed again
+            List<Task> taskList = tasks.get();
+            write(() -> shardedStore.update(index, taskList), false, "Error updating task: ");
+            return;
         }
+        if (!isLogging()) {
+            saveAllTasks(tasks.get());
+            return;
+        }
+        String taskData = task.toFileFormat();
+        write(() -> mutationLog.updateTask(index, taskData), false, "Error updating task: ");
+    }
+
+    /**
+     * Saves a task put back into the list at a position. Only the mutation log can record
+     * this without saving the whole list.
+     *
+     * @param index the 1-based index of the inserted task
+     * @param task the inserted task
+     * @param tasks supplies the whole list after the insertion
+     */
+    @Override
+    public void insertTask(int index, Task task, Supplier<List<Task>> tasks) {
+        if (!isLogging()) {
+            StorageEngine.super.insertTask(index, task, tasks);
+            return;
+        }
+        String taskData = task.toFileFormat();
+        write(() -> mutationLog.insertTask(index, taskData), false, "Error inserting task: ");
+    }
+
+    /**
+     * Saves the removal of a single task.
+     *
+     * @param index the 1-based index the task had before it was removed
+     * @param tasks supplies the whole list if the file has to be rewritten
+     */
+    @Override
+    public void deleteTask(int index, Supplier<List<Task>> tasks) {
+        if (isSlotted()) {
+            write(() -> {
+                slottedFile.delete(index);
+                markUnsynced();
+            }, false, "Error deleting task: ");
+            return;
+        }
+        if (isSharded()) {
+            List<Task> taskList = tasks.get();
+            write(() -> shardedStore.delete(index, taskList), false, "Error deleting task: ");
+            return;
+        }
+        if (!isLogging()) {
+            saveAllTasks(tasks.get());
+            return;
+        }
+        write(() -> mutationLog.deleteTask(index), false, "Error deleting task: ");
     }
 
     /**
@@ -57,15 +535,130 @@ public final class Storage {
      * @return List of task strings
      *
      */
+    @Override
     public List<String> loadTasks() {
+        List<String> taskStrings = new ArrayList<>();
+        for (Task task : load()) {
+            taskStrings.add(task.toFileFormat());
+        }
+        return taskStrings;
+    }
+
+    /**
+     * Loads all tasks from the storage file in their file order.
+     *
+     * @return List of tasks
+     *
+     */
+    @Override
+    public List<Task> load() {
+        List<Task> tasks = new ArrayList<>();
+        load(tasks::add);
+        return tasks;
+    }
+
+    /**
+     * Streams all tasks from the storage file to the sink while the file is read, so the
+     * file content is never held in memory as a whole.
+     *
+     * @param sink receives the tasks in their file order
+     *
+     */
+    @Override
+    public void load(Consumer<Task> sink) {
+        if (writeBehind != null) {
+            writeBehind.flush();
+        }
         try {
-            if (Files.exists(dataPath)) {
-                return Files.readAllLines(dataPath);
+            if (coordinator == null) {
+                loadFiles(sink);
+                return;
             }
+            coordinator.read((generation, layoutGeneration) -> {
+                loadInStep(sink, generation, layoutGeneration);
+                return null;
+            });
         } catch (IOException e) {
             System.err.println("Error loading tasks: " + e.getMessage());
         }
-        return new ArrayList<>();
+    }
+
+    private void loadInStep(Consumer<Task> sink, long generation, long layoutGeneration) throws IOException {
+        if (layoutGeneration != knownLayoutGeneration) {
+            reopenReplacedFiles();
+        }
+        loadFiles(sink);
+        knownGeneration = generation;
+        knownLayoutGeneration = layoutGeneration;
+        knownLogOffset = isLogging() ? mutationLog.getLogSize() : 0;
+        isOutOfStep = false;
+    }
+
+    private void loadFiles(Consumer<Task> sink) throws IOException {
+        if (isLogging()) {
+            mutationLog.load(sink);
+            return;
+        }
+        if (isSlotted()) {
+            slottedFile.load(sink);
+            return;
+        }
+        if (isSharded()) {
+            shardedStore.load(sink);
+            return;
+        }
+        format.read(dataPath, sink);
+    }
+
+    /**
+     * Returns whether another process changed the tasks since they were last loaded or
+     * saved. This costs one small read of the lock file.
+     */
+    @Override
+    public boolean hasExternalChanges() {
+        if (coordinator == null) {
+            return false;
+        }
+        try {
+            return coordinator.read((generation, layoutGeneration) -> isOutOfStep
+                    || generation != knownGeneration || layoutGeneration != knownLayoutGeneration);
+        } catch (IOException e) {
+            System.err.println("Error reading storage lock file: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Brings the list up to date with changes made by other processes. In log mode, if
+     * the log was only appended to, just the new records are replayed onto the list.
+     */
+    @Override
+    public boolean reloadChanges(List<Task> tasks) {
+        if (coordinator == null) {
+            return false;
+        }
+        if (writeBehind != null) {
+            writeBehind.flush();
+        }
+        try {
+            return coordinator.read((generation, layoutGeneration) -> {
+                boolean isLayoutKept = !isOutOfStep && layoutGeneration == knownLayoutGeneration;
+                if (isLayoutKept && generation == knownGeneration) {
+                    return false;
+                }
+                if (isLayoutKept && isLogging()) {
+                    knownLogOffset = mutationLog.replayFrom(knownLogOffset, tasks);
+                    knownGeneration = generation;
+                    return true;
+                }
+                tasks.clear();
+                loadInStep(tasks::add, generation, layoutGeneration);
+                return true;
+            });
+        } catch (IOException e) {
+            System.err.println("Error reloading tasks: " + e.getMessage());
+            return false;
+        }
     }
 
     /**
@@ -74,15 +667,103 @@ public final class Storage {
      * @param tasks List of tasks to be saved
      *
      */
+    @Override
     public void saveAllTasks(List<Task> tasks) {
-        try {
-            List<String> taskStrings = new ArrayList<>();
+        if (isLogging()) {
+            write(() -> mutationLog.rewriteSnapshot(tasks), true, "Error saving all tasks: ");
+            return;
+        }
+        if (isSlotted()) {
+            List<String> taskData = new ArrayList<>(tasks.size());
             for (Task task : tasks) {
-                taskStrings.add(task.toFileFormat());
+                taskData.add(task.toFileFormat());
+            }
+            write(() -> slottedFile.rewrite(taskData), true, "Error saving all tasks: ");
+            return;
+        }
+        if (isSharded()) {
+            write(() -> shardedStore.rewriteAll(tasks), true, "Error saving all tasks: ");
+            return;
+        }
+        write(() -> rewriteDataFile(tasks), true, "Error saving all tasks: ");
+    }
+
+    /**
+     * Converts a task file into the format of another file, e.g. a legacy text file into
+     * a {@code .bin} file. The source file is left untouched.
+     *
+     * @param sourcePath the file to read
+     * @param targetPath the file to write, whose format is chosen from its name
+     * @return the number of tasks converted
+     * @throws IOException if either file cannot be accessed
+     */
+    public static int convert(String sourcePath, String targetPath) throws IOException {
+        Path source = Paths.get(sourcePath);
+        Path target = Paths.get(targetPath);
+        List<Task> tasks = TaskFileFormat.forPath(source).read(source);
+        Files.deleteIfExists(target);
+        TaskFileFormat.forPath(target).write(target, tasks);
+        return tasks.size();
+    }
+
+    @Override
+    public int loadNextId() {
+        return idMark.read();
+    }
+
+    @Override
+    public void saveNextId(int nextId) {
+        writeUncovered(() -> idMark.write(nextId, durability != Durability.NO_SYNC), "Error saving next ID: ");
+    }
+
+    /**
+     * Forces every change saved so far to disk, waiting for queued background writes
+     * first.
+     */
+    @Override
+    public void flush() {
+        if (writeBehind != null) {
+            writeBehind.flush();
+        }
+        try {
+            if (isLogging()) {
+                mutationLog.sync();
+            } else if (isSlotted() || isSharded() || hasUnsyncedWrites) {
+                hasUnsyncedWrites = false;
+                syncDataFiles();
             }
-            Files.write(dataPath, taskStrings, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
         } catch (IOException e) {
-            System.err.println("Error saving all tasks: " + e.getMessage());
+            System.err.println("Error flushing tasks: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Runs queued writes and forces them to disk, then stops the background threads and
+     * closes the files. The storage cannot be used afterwards.
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+        if (writeBehind != null) {
+            writeBehind.close();
+            Runtime.getRuntime().removeShutdownHook(flushOnExit);
+        }
+        if (intervalSync != null) {
+            intervalSync.shutdown();
+            try {
+                intervalSync.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (mutationLog != null) {
+            mutationLog.close();
+        }
+        if (slottedFile != null) {
+            slottedFile.close();
+        }
+        if (coordinator != null) {
+            coordinator.close();
         }
     }
 }
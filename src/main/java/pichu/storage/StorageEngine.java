@@ -0,0 +1,233 @@
+package pichu.storage;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import pichu.parser.Parser;
+import pichu.task.Task;
+
+/**
+ * Persists the task list. Tasks are addressed by their 1-based index in the list, the
+ * same way the user numbers them, and every change is reported as it happens so an
+ * engine can write only what changed.
+ */
+public interface StorageEngine {
+    /** The system property that names the engine {@link #create} returns. */
+    String ENGINE_PROPERTY = "pichu.storage.engine";
+    /** The file engine, see {@link Storage}. */
+    String FILE_ENGINE = "file";
+    /** The in-memory engine, see {@link InMemoryStorageEngine}. */
+    String MEMORY_ENGINE = "memory";
+    /** The log-structured merge engine, see {@link LsmStorageEngine}. */
+    String LSM_ENGINE = "lsm";
+    /**
+     * The system property that names the {@link Storage.Mode} of the file engine, e.g.
+     * {@code slotted} or {@code sharded-by-hash}. The default is {@code log}.
+     */
+    String MODE_PROPERTY = "pichu.storage.mode";
+
+    /**
+     * Creates the engine with the given name. The file engine uses {@link Storage.Mode#LOG}.
+     *
+     * @param engineName one of {@link #FILE_ENGINE}, {@link #MEMORY_ENGINE} or
+     *     {@link #LSM_ENGINE}
+     * @param filePath the data file of the engines that keep one
+     * @return the engine
+     * @throws IllegalArgumentException if there is no engine with that name
+     */
+    static StorageEngine create(String engineName, String filePath) {
+        return create(engineName, Storage.Mode.LOG, filePath);
+    }
+
+    /**
+     * Creates the engine with the given name.
+     *
+     * @param engineName one of {@link #FILE_ENGINE}, {@link #MEMORY_ENGINE} or
+     *     {@link #LSM_ENGINE}
+     * @param mode how the file engine writes changes, ignored by the other engines
+     * @param filePath the data file of the engines that keep one
+     * @return the engine
+     * @throws IllegalArgumentException if there is no engine with that name
+     */
+    static StorageEngine create(String engineName, Storage.Mode mode, String filePath) {
+        switch (engineName) {
+        case FILE_ENGINE:
+            return new Storage(filePath, mode, true);
+        case MEMORY_ENGINE:
+            return new InMemoryStorageEngine();
+        case LSM_ENGINE:
+            return new LsmStorageEngine(Paths.get(filePath), Durability.SYNC_ON_INTERVAL);
+        default:
+            throw new IllegalArgumentException("Unknown storage engine: " + engineName);
+        }
+    }
+
+    /**
+     * Returns the file engine mode with the given name, such as {@code log} for
+     * {@link Storage.Mode#LOG} or {@code sharded-by-type} for
+     * {@link Storage.Mode#SHARDED_BY_TYPE}.
+     *
+     * @param modeName the name of the mode, in any case
+     * @return the mode
+     * @throws IllegalArgumentException if there is no mode with that name
+     */
+    static Storage.Mode parseMode(String modeName) {
+        for (Storage.Mode mode : Storage.Mode.values()) {
+            if (mode.name().replace('_', '-').equalsIgnoreCase(modeName.replace('_', '-'))) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("Unknown storage mode: " + modeName);
+    }
+
+    /**
+     * Streams all tasks to the sink in list order.
+     *
+     * @param sink receives the tasks in list order
+     */
+    void load(Consumer<Task> sink);
+
+    /**
+     * Loads all tasks in list order.
+     *
+     * @return List of tasks
+     */
+    default List<Task> load() {
+        List<Task> tasks = new ArrayList<>();
+        load(tasks::add);
+        return tasks;
+    }
+
+    /**
+     * Loads all tasks in their file format.
+     *
+     * @return List of task strings
+     */
+    default List<String> loadTasks() {
+        List<String> taskStrings = new ArrayList<>();
+        load(task -> taskStrings.add(task.toFileFormat()));
+        return taskStrings;
+    }
+
+    /**
+     * Streams the tasks with indexes in the given range to the sink in list order.
+     *
+     * @param fromIndex the 1-based index of the first task
+     * @param toIndex the 1-based index of the last task
+     * @param sink receives the tasks in list order
+     */
+    default void scan(int fromIndex, int toIndex, Consumer<Task> sink) {
+        int[] index = {0};
+        load(task -> {
+            index[0]++;
+            if (index[0] >= fromIndex && index[0] <= toIndex) {
+                sink.accept(task);
+            }
+        });
+    }
+
+    /**
+     * Saves a new task to the end of the list.
+     *
+     * @param task The task to be saved.
+     */
+    void saveTask(Task task);
+
+    /**
+     * Saves a new task to the end of the list.
+     *
+     * @param taskData The string representation of the task to be saved.
+     */
+    default void saveTask(String taskData) {
+        Task task = Parser.parseTaskFromString(taskData);
+        if (task != null) {
+            saveTask(task);
+        }
+    }
+
+    /**
+     * Saves a change to a single task, such as marking it as done.
+     *
+     * @param index the 1-based index of the changed task
+     * @param task the changed task
+     * @param tasks supplies the whole list for engines that need it
+     */
+    void updateTask(int index, Task task, Supplier<List<Task>> tasks);
+
+    /**
+     * Saves a task put back into the list at a position, such as a deleted task that is
+     * restored. Engines that cannot insert in place save the whole list.
+     *
+     * @param index the 1-based index of the inserted task
+     * @param task the inserted task
+     * @param tasks supplies the whole list after the insertion for engines that need it
+     */
+    default void insertTask(int index, Task task, Supplier<List<Task>> tasks) {
+        List<Task> taskList = tasks.get();
+        if (index == taskList.size()) {
+            saveTask(task);
+        } else {
+            saveAllTasks(taskList);
+        }
+    }
+
+    /**
+     * Saves the removal of a single task.
+     *
+     * @param index the 1-based index the task had before it was removed
+     * @param tasks supplies the whole list after the removal for engines that need it
+     */
+    void deleteTask(int index, Supplier<List<Task>> tasks);
+
+    /**
+     * Replaces all saved tasks with the given list.
+     *
+     * @param tasks List of tasks to be saved
+     */
+    void saveAllTasks(List<Task> tasks);
+
+    /**
+     * Returns the ID after the highest one ever saved, so that IDs of deleted tasks are
+     * not given out again.
+     *
+     * @return the saved mark, or {@link Task#NO_ID} if there is none
+     */
+    default int loadNextId() {
+        return Task.NO_ID;
+    }
+
+    /**
+     * Saves the ID after the highest one given out. Called after tasks are removed, since
+     * the remaining tasks no longer show which IDs were used.
+     *
+     * @param nextId the ID after the highest one given out
+     */
+    default void saveNextId(int nextId) {
+    }
+
+    /**
+     * Waits until every change saved so far is on disk.
+     */
+    void flush();
+
+    /**
+     * Returns whether another process changed the saved tasks since this engine last
+     * loaded or saved them.
+     */
+    default boolean hasExternalChanges() {
+        return false;
+    }
+
+    /**
+     * Applies changes made by other processes to the list.
+     *
+     * @param tasks the list as this process knows it, which is updated in place
+     * @return true if the list changed
+     */
+    default boolean reloadChanges(List<Task> tasks) {
+        return false;
+    }
+}
@@ -0,0 +1,82 @@
+package pichu.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import pichu.task.Task;
+
+/**
+ * On-disk encoding of a task file. The format of an existing file is detected from its
+ * first bytes, and a new file uses the binary format if its name ends in {@code .bin}.
+ */
+public interface TaskFileFormat {
+    String BINARY_EXTENSION = ".bin";
+
+    /**
+     * Reads every task stored in the file.
+     *
+     * @param path the task file
+     * @return the tasks in file order
+     */
+    default List<Task> read(Path path) throws IOException {
+        List<Task> tasks = new ArrayList<>();
+        read(path, tasks::add);
+        return tasks;
+    }
+
+    /**
+     * Streams every task stored in the file to the sink as soon as it is decoded.
+     *
+     * @param path the task file
+     * @param sink receives the tasks in file order
+     */
+    void read(Path path, Consumer<Task> sink) throws IOException;
+
+    /**
+     * Writes the tasks to the file, replacing its content.
+     *
+     * @param path the task file
+     * @param tasks the tasks to write
+     */
+    void write(Path path, List<Task> tasks) throws IOException;
+
+    /**
+     * Adds one task to the end of the file.
+     *
+     * @param path the task file
+     * @param task the task to add
+     */
+    void append(Path path, Task task) throws IOException;
+
+    /**
+     * Tells the format that a file it wrote has been renamed, so that any state it keeps
+     * about the file follows it.
+     *
+     * @param source the old name of the file
+     * @param target the new name of the file
+     */
+    default void renamed(Path source, Path target) {
+    }
+
+    /**
+     * Picks the format for the given file.
+     *
+     * @param path the task file
+     * @return the binary format if the file holds binary tasks or is a new {@code .bin}
+     *     file, the text format otherwise
+     */
+    static TaskFileFormat forPath(Path path) throws IOException {
+        if (Files.exists(path) && Files.size(path) > 0) {
+            try (InputStream in = Files.newInputStream(path)) {
+                return BinaryTaskFormat.hasMagic(in.readNBytes(BinaryTaskFormat.MAGIC.length))
+                        ? new BinaryTaskFormat() : new TextTaskFormat();
+            }
+        }
+        return path.toString().endsWith(BINARY_EXTENSION) ? new BinaryTaskFormat() : new TextTaskFormat();
+    }
+}
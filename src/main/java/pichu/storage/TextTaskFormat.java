@@ -0,0 +1,58 @@
+package pichu.storage;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+import pichu.parser.Parser;
+import pichu.task.Task;
+
+/**
+ * The legacy task file format with one {@code |}-separated task per line, sealed with a
+ * checksum by {@link RecordRecovery}.
+ * Large files are parsed in parallel by {@link ParallelTaskLoader}.
+ */
+public class TextTaskFormat implements TaskFileFormat {
+    @Override
+    public void read(Path path, Consumer<Task> sink) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        if (ParallelTaskLoader.isWorthwhile(Files.size(path))) {
+            boolean isTailTruncated = RecordRecovery.repairTornTail(path);
+            int skipped = new ParallelTaskLoader(ForkJoinPool.commonPool()).load(path, sink);
+            RecordRecovery.report(path, skipped + (isTailTruncated ? 1 : 0), isTailTruncated);
+            return;
+        }
+        RecordRecovery.read(path, record -> {
+            Task task = Parser.parseTaskFromString(record);
+            if (task == null) {
+                return false;
+            }
+            sink.accept(task);
+            return true;
+        });
+    }
+
+    @Override
+    public void write(Path path, List<Task> tasks) throws IOException {
+        List<String> lines = new ArrayList<>(tasks.size());
+        for (Task task : tasks) {
+            lines.add(RecordRecovery.seal(task.toFileFormat()));
+        }
+        Files.write(path, lines, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    @Override
+    public void append(Path path, Task task) throws IOException {
+        Files.write(path, (RecordRecovery.seal(task.toFileFormat()) + System.lineSeparator())
+                        .getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+}
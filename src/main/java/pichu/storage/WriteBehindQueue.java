@@ -0,0 +1,150 @@
+package pichu.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Runs storage writes on a dedicated writer thread so that callers do not wait for the
+ * disk. Writes are taken off a bounded queue in batches. Within a batch, a write that
+ * replaces the whole file makes every earlier write in the batch redundant, so those are
+ * skipped and back-to-back rewrites of the same file cost a single write. Writes to other
+ * files are submitted with {@link #submitUncovered} and are never skipped.
+ */
+public class WriteBehindQueue {
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final BlockingQueue<PendingWrite> queue;
+    private final Thread writer;
+
+    /**
+     * A write waiting in the queue.
+     */
+    private static class PendingWrite {
+        private final Runnable write;
+        private final boolean isFullRewrite;
+        private final boolean isCovered;
+        private final CountDownLatch barrier;
+
+        PendingWrite(Runnable write, boolean isFullRewrite, boolean isCovered, CountDownLatch barrier) {
+            this.write = write;
+            this.isFullRewrite = isFullRewrite;
+            this.isCovered = isCovered;
+            this.barrier = barrier;
+        }
+    }
+
+    /**
+     * Starts the writer thread.
+     *
+     * @param capacity the number of writes that may wait before callers block
+     * @param name the name of the writer thread
+     */
+    public WriteBehindQueue(int capacity, String name) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.writer = new Thread(this::drainForever, name);
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues a write, blocking only if the queue is full.
+     *
+     * @param write the write to run on the writer thread
+     * @param isFullRewrite whether the write replaces everything written before it
+     */
+    public void submit(Runnable write, boolean isFullRewrite) {
+        put(new PendingWrite(write, isFullRewrite, true, null));
+    }
+
+    /**
+     * Queues a write to a file that a full rewrite does not replace, so that it runs even
+     * if a full rewrite follows it in the same batch.
+     *
+     * @param write the write to run on the writer thread
+     */
+    public void submitUncovered(Runnable write) {
+        put(new PendingWrite(write, false, false, null));
+    }
+
+    /**
+     * Waits until every write queued before this call has run.
+     */
+    public void flush() {
+        if (Thread.currentThread() == writer) {
+            return;
+        }
+        CountDownLatch barrier = new CountDownLatch(1);
+        put(new PendingWrite(null, false, false, barrier));
+        try {
+            barrier.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Runs every queued write and stops the writer thread.
+     */
+    public void close() {
+        flush();
+        writer.interrupt();
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void put(PendingWrite pendingWrite) {
+        try {
+            queue.put(pendingWrite);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drainForever() {
+        List<PendingWrite> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch);
+            runBatch(batch);
+            batch.clear();
+        }
+    }
+
+    private static void runBatch(List<PendingWrite> batch) {
+        int lastRewrite = -1;
+        for (int i = 0; i < batch.size(); i++) {
+            if (batch.get(i).isFullRewrite) {
+                lastRewrite = i;
+            }
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            PendingWrite pendingWrite = batch.get(i);
+            if (pendingWrite.barrier != null || (pendingWrite.isCovered && i < lastRewrite)) {
+                continue;
+            }
+            try {
+                pendingWrite.write.run();
+            } catch (RuntimeException e) {
+                System.err.println("Error in background write: " + e.getMessage());
+            }
+        }
+
+        // Release barriers only after the writes queued before them are done
+        for (PendingWrite pendingWrite : batch) {
+            if (pendingWrite.barrier != null) {
+                pendingWrite.barrier.countDown();
+            }
+        }
+    }
+}
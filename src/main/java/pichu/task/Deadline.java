@@ -1,5 +1,6 @@
 package pichu.task;
 
+import java.text.ParsePosition;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
@@ -8,6 +9,16 @@ import java.time.format.DateTimeParseException;
  * Represents a Deadline task with a due date.
  */
 public class Deadline extends Task {
+    // Formatters are immutable and thread-safe, so they are built once and shared
+    private static final DateTimeFormatter[] INPUT_FORMATS = {
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HHmm"), // 2019-12-02 1800
+            DateTimeFormatter.ofPattern("yyyy-MM-dd"), // 2019-12-02
+            DateTimeFormatter.ofPattern("d/M/yyyy HHmm"), // 2/12/2019 1800
+            DateTimeFormatter.ofPattern("d/M/yyyy"), // 2/12/2019
+            DateTimeFormatter.ofPattern("dd/MM/yyyy HHmm"), // 02/12/2019 1800
+            DateTimeFormatter.ofPattern("dd/MM/yyyy") // 02/12/2019
+    };
+    private static final DateTimeFormatter DISPLAY_FORMAT = DateTimeFormatter.ofPattern("MMM dd yyyy, h:mm a");
 
     private LocalDateTime deadline;
     private String originalInput;
@@ -23,25 +34,39 @@ public class Deadline extends Task {
         this.deadline = parseDateTime(dateTimeInput);
     }
 
-    private LocalDateTime parseDateTime(String input) {
+    /**
+     * Constructor for a Deadline task whose due date has already been parsed.
+     * @param name the task description
+     * @param deadline the parsed deadline, or null if it could not be parsed
+     * @param originalInput the deadline as the user typed it
+     */
+    public Deadline(String name, LocalDateTime deadline, String originalInput) {
+        super(name);
+        this.originalInput = originalInput;
+        this.deadline = deadline;
+    }
+
+    /**
+     * Parses a date and time in any of the accepted input formats.
+     *
+     * @param input the date and time as the user typed it
+     * @return the parsed date and time, or null if no format matches
+     */
+    public static LocalDateTime parseDateTime(String input) {
         if (input == null || input.trim().isEmpty()) {
             return null;
         }
 
-        // Try different date formats
-        String[] formats = {
-                "yyyy-MM-dd HHmm", // 2019-12-02 1800
-                "yyyy-MM-dd", // 2019-12-02
-                "d/M/yyyy HHmm", // 2/12/2019 1800
-                "d/M/yyyy", // 2/12/2019
-                "dd/MM/yyyy HHmm", // 02/12/2019 1800
-                "dd/MM/yyyy" // 02/12/2019
-        };
-
-        for (String format : formats) {
+        // Try different date formats, skipping those whose pattern does not match at all
+        // without paying for an exception
+        String trimmed = input.trim();
+        for (DateTimeFormatter formatter : INPUT_FORMATS) {
+            ParsePosition position = new ParsePosition(0);
+            if (formatter.parseUnresolved(trimmed, position) == null || position.getIndex() != trimmed.length()) {
+                continue;
+            }
             try {
-                DateTimeFormatter formatter = DateTimeFormatter.ofPattern(format);
-                return LocalDateTime.parse(input.trim(), formatter);
+                return LocalDateTime.parse(trimmed, formatter);
             } catch (DateTimeParseException e) {
                 // Continue to next format
             }
@@ -61,6 +86,16 @@ public class Deadline extends Task {
         return deadline;
     }
 
+    /**
+     * Returns the deadline as the user typed it.
+     *
+     * @return original deadline input of the task.
+     *
+     */
+    public String getOriginalInput() {
+        return originalInput;
+    }
+
     /**
      * Returns the deadline in a user-friendly formatted string.
      * If parsing failed, returns the original input string.
@@ -70,8 +105,7 @@ public class Deadline extends Task {
      */
     public String getFormattedDeadline() {
         if (deadline != null) {
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MMM dd yyyy, h:mm a");
-            return deadline.format(formatter);
+            return deadline.format(DISPLAY_FORMAT);
         }
         return originalInput; // Fallback to original input if parsing failed
     }
@@ -90,6 +124,6 @@ public class Deadline extends Task {
 
     @Override
     public String toFileFormat() {
-        return "D|" + (isCompleted() ? "1" : "0") + "|" + getName() + "|" + originalInput;
+        return appendIdField("D|" + (isCompleted() ? "1" : "0") + "|" + getName() + "|" + originalInput);
     }
 }
@@ -1,5 +1,6 @@
 package pichu.task;
 
+import java.text.ParsePosition;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
@@ -8,6 +9,16 @@ import java.time.format.DateTimeParseException;
  * Represents an Event task with start and end times.
  */
 public class Event extends Task {
+    // Formatters are immutable and thread-safe, so they are built once and shared
+    private static final DateTimeFormatter[] INPUT_FORMATS = {
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HHmm"), // 2019-12-02 1800
+            DateTimeFormatter.ofPattern("yyyy-MM-dd"), // 2019-12-02
+            DateTimeFormatter.ofPattern("d/M/yyyy HHmm"), // 2/12/2019 1800
+            DateTimeFormatter.ofPattern("d/M/yyyy"), // 2/12/2019
+            DateTimeFormatter.ofPattern("dd/MM/yyyy HHmm"), // 02/12/2019 1800
+            DateTimeFormatter.ofPattern("dd/MM/yyyy") // 02/12/2019
+    };
+    private static final DateTimeFormatter DISPLAY_FORMAT = DateTimeFormatter.ofPattern("MMM dd yyyy, h:mm a");
 
     private LocalDateTime startDateTime;
     private LocalDateTime endDateTime;
@@ -28,25 +39,38 @@ public class Event extends Task {
         this.endDateTime = parseDateTime(endInput);
     }
 
+    /**
+     * Constructor for an Event task whose start and end times have already been parsed.
+     * @param name the task description
+     * @param startDateTime the parsed start time, or null if it could not be parsed
+     * @param startInput the start date/time as the user typed it
+     * @param endDateTime the parsed end time, or null if it could not be parsed
+     * @param endInput the end date/time as the user typed it
+     */
+    public Event(String name, LocalDateTime startDateTime, String startInput,
+            LocalDateTime endDateTime, String endInput) {
+        super(name);
+        this.originalStartInput = startInput;
+        this.originalEndInput = endInput;
+        this.startDateTime = startDateTime;
+        this.endDateTime = endDateTime;
+    }
+
     private LocalDateTime parseDateTime(String input) {
         if (input == null || input.trim().isEmpty()) {
             return null;
         }
 
-        // Try different date formats
-        String[] formats = {
-                "yyyy-MM-dd HHmm", // 2019-12-02 1800
-                "yyyy-MM-dd", // 2019-12-02
-                "d/M/yyyy HHmm", // 2/12/2019 1800
-                "d/M/yyyy", // 2/12/2019
-                "dd/MM/yyyy HHmm", // 02/12/2019 1800
-                "dd/MM/yyyy" // 02/12/2019
-        };
-
-        for (String format : formats) {
+        // Try different date formats, skipping those whose pattern does not match at all
+        // without paying for an exception
+        String trimmed = input.trim();
+        for (DateTimeFormatter formatter : INPUT_FORMATS) {
+            ParsePosition position = new ParsePosition(0);
+            if (formatter.parseUnresolved(trimmed, position) == null || position.getIndex() != trimmed.length()) {
+                continue;
+            }
             try {
-                DateTimeFormatter formatter = DateTimeFormatter.ofPattern(format);
-                return LocalDateTime.parse(input.trim(), formatter);
+                return LocalDateTime.parse(trimmed, formatter);
             } catch (DateTimeParseException e) {
                 // Continue to next format
             }
@@ -76,6 +100,26 @@ public class Event extends Task {
         return endDateTime;
     }
 
+    /**
+     * Returns the start date and time as the user typed it.
+     *
+     * @return original start input of the event.
+     *
+     */
+    public String getOriginalStartInput() {
+        return originalStartInput;
+    }
+
+    /**
+     * Returns the end date and time as the user typed it.
+     *
+     * @return original end input of the event.
+     *
+     */
+    public String getOriginalEndInput() {
+        return originalEndInput;
+    }
+
     /**
      * Returns the formatted start date and time of the event.
      *
@@ -84,8 +128,7 @@ public class Event extends Task {
      */
     public String getFormattedStart() {
         if (startDateTime != null) {
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MMM dd yyyy, h:mm a");
-            return startDateTime.format(formatter);
+            return startDateTime.format(DISPLAY_FORMAT);
         }
         return originalStartInput; // Fallback to original input if parsing failed
     }
@@ -98,8 +141,7 @@ public class Event extends Task {
      */
     public String getFormattedEnd() {
         if (endDateTime != null) {
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MMM dd yyyy, h:mm a");
-            return endDateTime.format(formatter);
+            return endDateTime.format(DISPLAY_FORMAT);
         }
         return originalEndInput; // Fallback to original input if parsing failed
     }
@@ -118,6 +160,7 @@ public class Event extends Task {
     public String toFileFormat() {
         String completionStatus = isCompleted() ? COMPLETED_STATUS_FILE : INCOMPLETE_STATUS_FILE;
         String tagsString = String.join(",", getTags());
-        return "E|" + completionStatus + "|" + getName() + "|" + originalStartInput + "|" + originalEndInput + "|" + tagsString;
+        return appendIdField("E|" + completionStatus + "|" + getName() + "|" + originalStartInput + "|"
+                + originalEndInput + "|" + tagsString);
     }
 }
@@ -0,0 +1,81 @@
+package pichu.task;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Gives every distinct tag a small integer ID that stays the same for as long as the
+ * program runs.
+ *
+ * <p>Tasks keep the IDs of their tags instead of strings, so a tag used on many tasks is
+ * stored once here however often it is loaded, and checking for a tag compares integers.
+ * IDs are never reused or forgotten, which is fine because a list has few distinct tags.
+ * They are not saved; files keep the tag names.
+ */
+public final class TagDictionary {
+    /** The result of {@link #find} for a tag that no task ever had. */
+    public static final int NO_TAG = -1;
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    // Only grown under the class lock, and published after the new name is written
+    private static volatile String[] names = new String[INITIAL_CAPACITY];
+
+    private TagDictionary() {
+    }
+
+    /**
+     * Returns the ID of a tag, giving it the next ID if it is new.
+     *
+     * @param tag the tag (without # symbol)
+     * @return the ID of the tag
+     */
+    public static int intern(String tag) {
+        Integer id = ids.get(tag);
+        return id != null ? id : add(tag);
+    }
+
+    private static synchronized int add(String tag) {
+        Integer existing = ids.get(tag);
+        if (existing != null) {
+            return existing;
+        }
+        int id = ids.size();
+        String[] current = names;
+        if (id == current.length) {
+            current = Arrays.copyOf(current, id * 2);
+        }
+        current[id] = tag;
+        names = current;
+        ids.put(tag, id);
+        return id;
+    }
+
+    /**
+     * Returns the ID of a tag without adding it.
+     *
+     * @param tag the tag (without # symbol)
+     * @return the ID of the tag, or {@link #NO_TAG} if no task ever had it
+     */
+    public static int find(String tag) {
+        Integer id = ids.get(tag);
+        return id == null ? NO_TAG : id;
+    }
+
+    /**
+     * Returns the tag with an ID.
+     *
+     * @param id an ID returned by {@link #intern}
+     * @return the tag (without # symbol)
+     */
+    public static String nameOf(int id) {
+        return names[id];
+    }
+
+    /**
+     * Returns the number of distinct tags, which is one more than the largest ID.
+     */
+    public static int size() {
+        return ids.size();
+    }
+}
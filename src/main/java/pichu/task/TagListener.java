@@ -0,0 +1,22 @@
+package pichu.task;
+
+/**
+ * Receives the tag changes of a task, so that indexes over tags can stay up to date.
+ */
+public interface TagListener {
+    /**
+     * Called after a tag was added to a task.
+     *
+     * @param task the task
+     * @param tagId the {@link TagDictionary} ID of the new tag
+     */
+    void tagAdded(Task task, int tagId);
+
+    /**
+     * Called after a tag was removed from a task.
+     *
+     * @param task the task
+     * @param tagId the {@link TagDictionary} ID of the removed tag
+     */
+    void tagRemoved(Task task, int tagId);
+}
@@ -1,6 +1,7 @@
 package pichu.task;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -15,14 +16,22 @@ public class Task {
     protected static final String INCOMPLETE_SYMBOL = " ";
     private static final String TAG_SEPARATOR = ",";
     private static final Pattern TAG_PATTERN = Pattern.compile("#\\w+");
+    private static final String ID_FIELD_PREFIX = "|#";
+    private static final int[] NO_TAGS = new int[0];
 
+    /** The ID of a task that has not been added to a task list yet. */
+    public static final int NO_ID = 0;
+
+    private int id = NO_ID;
     private String name;
     private boolean isCompleted = false;
-    private List<String> tags;
+    // Dictionary IDs of the tags in the order they were added. Replaced rather than
+    // changed, so callers of getTags can keep the list without a copy
+    private int[] tagIds = NO_TAGS;
+    private TagListener tagListener;
 
     public Task(String name) {
         this.name = name;
-        this.tags = new ArrayList<>();
         extractTagsFromName();
     }
 
@@ -31,20 +40,48 @@ public class Task {
      * Tags are in the format #tagname and are removed from the display name.
      */
     private void extractTagsFromName() {
+        if (name.indexOf('#') < 0) {
+            this.name = collapseWhitespace(name);
+            return;
+        }
         Matcher matcher = TAG_PATTERN.matcher(name);
-        StringBuilder nameWithoutTags = new StringBuilder(name);
+        int[] foundTagIds = NO_TAGS;
 
         while (matcher.find()) {
-            String tag = matcher.group().substring(1); // Remove the # symbol
-            if (!tags.contains(tag)) {
-                tags.add(tag);
+            int tagId = TagDictionary.intern(matcher.group().substring(1)); // Remove the # symbol
+            if (indexOfTag(foundTagIds, tagId) < 0) {
+                foundTagIds = Arrays.copyOf(foundTagIds, foundTagIds.length + 1);
+                foundTagIds[foundTagIds.length - 1] = tagId;
             }
         }
+        this.tagIds = foundTagIds;
 
         // Remove tags from the name for display purposes
         this.name = name.replaceAll("#\\w+", "").trim().replaceAll("\\s+", " ");
     }
 
+    /**
+     * Trims the name and collapses runs of whitespace into single spaces, like the
+     * regex-based cleanup of tagged names but without compiling a pattern.
+     */
+    private static String collapseWhitespace(String name) {
+        StringBuilder result = new StringBuilder(name.length());
+        boolean isPendingSpace = false;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r') {
+                isPendingSpace = result.length() > 0;
+            } else {
+                if (isPendingSpace) {
+                    result.append(' ');
+                    isPendingSpace = false;
+                }
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
     /**
      * Returns the name field of the task (without tags).
      *
@@ -60,23 +97,44 @@ public class Task {
      * @return name of the task with tags.
      */
     public String getNameWithTags() {
-        if (tags.isEmpty()) {
+        if (tagIds.length == 0) {
             return name;
         }
         StringBuilder result = new StringBuilder(name);
-        for (String tag : tags) {
-            result.append(" #").append(tag);
+        for (int tagId : tagIds) {
+            result.append(" #").append(TagDictionary.nameOf(tagId));
         }
         return result.toString();
     }
 
     /**
      * Returns the list of tags associated with this task.
+     * The list cannot be modified and does not change when tags are added or removed later.
      *
      * @return list of tags.
      */
     public List<String> getTags() {
-        return new ArrayList<>(tags);
+        int[] ids = tagIds;
+        return new AbstractList<>() {
+            @Override
+            public String get(int index) {
+                return TagDictionary.nameOf(ids[index]);
+            }
+
+            @Override
+            public int size() {
+                return ids.length;
+            }
+        };
+    }
+
+    /**
+     * Returns the dictionary IDs of the tags of this task, in the order they were added.
+     *
+     * @return a copy of the tag IDs.
+     */
+    public int[] getTagIds() {
+        return tagIds.clone();
     }
 
     /**
@@ -85,8 +143,18 @@ public class Task {
      * @param tag the tag to add (without # symbol).
      */
     public void addTag(String tag) {
-        if (!tags.contains(tag) && !tag.isEmpty()) {
-            tags.add(tag);
+        if (tag.isEmpty()) {
+            return;
+        }
+        int tagId = TagDictionary.intern(tag);
+        if (indexOfTag(tagIds, tagId) >= 0) {
+            return;
+        }
+        int[] newTagIds = Arrays.copyOf(tagIds, tagIds.length + 1);
+        newTagIds[tagIds.length] = tagId;
+        tagIds = newTagIds;
+        if (tagListener != null) {
+            tagListener.tagAdded(this, tagId);
         }
     }
 
@@ -96,7 +164,36 @@ public class Task {
      * @param tag the tag to remove (without # symbol).
      */
     public void removeTag(String tag) {
-        tags.remove(tag);
+        int tagId = TagDictionary.find(tag);
+        int position = indexOfTag(tagIds, tagId);
+        if (position < 0) {
+            return;
+        }
+        int[] newTagIds = new int[tagIds.length - 1];
+        System.arraycopy(tagIds, 0, newTagIds, 0, position);
+        System.arraycopy(tagIds, position + 1, newTagIds, position, newTagIds.length - position);
+        tagIds = newTagIds;
+        if (tagListener != null) {
+            tagListener.tagRemoved(this, tagId);
+        }
+    }
+
+    private static int indexOfTag(int[] tagIds, int tagId) {
+        for (int i = 0; i < tagIds.length; i++) {
+            if (tagIds[i] == tagId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Sets the listener that is told about every tag added to or removed from the task.
+     *
+     * @param tagListener the listener, or null to stop telling anyone.
+     */
+    public void setTagListener(TagListener tagListener) {
+        this.tagListener = tagListener;
     }
 
     /**
@@ -106,7 +203,46 @@ public class Task {
      * @return true if the task has the tag, false otherwise.
      */
     public boolean hasTag(String tag) {
-        return tags.contains(tag);
+        return hasTag(TagDictionary.find(tag));
+    }
+
+    /**
+     * Checks if the task has a tag, given its dictionary ID.
+     *
+     * @param tagId the ID of the tag in the {@link TagDictionary}.
+     * @return true if the task has the tag, false otherwise.
+     */
+    public boolean hasTag(int tagId) {
+        return indexOfTag(tagIds, tagId) >= 0;
+    }
+
+    /**
+     * Returns the stable ID of the task, which does not change when other tasks are
+     * added or removed.
+     *
+     * @return the ID, or {@link #NO_ID} if none was assigned yet.
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Sets the stable ID of the task.
+     *
+     * @param id the ID assigned by the task list.
+     */
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    /**
+     * Appends the ID field to a file-formatted task if the task has an ID.
+     *
+     * @param fileFormat the file-formatted task without its ID.
+     * @return the file-formatted task with its ID as the last field.
+     */
+    protected String appendIdField(String fileFormat) {
+        return id == NO_ID ? fileFormat : fileFormat + ID_FIELD_PREFIX + id;
     }
 
     /**
@@ -132,10 +268,8 @@ public class Task {
         StringBuilder result = new StringBuilder();
         result.append(isCompleted ? "[X]" : "[ ]").append(" ").append(name);
 
-        if (!tags.isEmpty()) {
-            for (String tag : tags) {
-                result.append(" #").append(tag);
-            }
+        for (int tagId : tagIds) {
+            result.append(" #").append(TagDictionary.nameOf(tagId));
         }
 
         return result.toString();
@@ -166,7 +300,7 @@ public class Task {
      */
     public String toFileFormat() {
         String completionStatus = isCompleted ? COMPLETED_STATUS_FILE : INCOMPLETE_STATUS_FILE;
-        String tagsString = String.join(TAG_SEPARATOR, tags);
-        return "T|" + completionStatus + "|" + name + "|" + tagsString;
+        String tagsString = String.join(TAG_SEPARATOR, getTags());
+        return appendIdField("T|" + completionStatus + "|" + name + "|" + tagsString);
     }
 }
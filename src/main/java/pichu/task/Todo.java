@@ -17,6 +17,6 @@ public class Todo extends Task {
     public String toFileFormat() {
         String completionStatus = isCompleted() ? COMPLETED_STATUS_FILE : INCOMPLETE_STATUS_FILE;
         String tagsString = String.join(",", getTags());
-        return "T|" + completionStatus + "|" + getName() + "|" + tagsString;
+        return appendIdField("T|" + completionStatus + "|" + getName() + "|" + tagsString);
     }
 }
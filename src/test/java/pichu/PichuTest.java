@@ -5,11 +5,18 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import pichu.task.Task;
 import pichu.parser.Parser;
 
 public class PichuTest {
+    @TempDir
+    Path tempDir;
 
     // Task class tests - testing tag extraction and manipulation
     @Test
@@ -140,4 +147,204 @@ public class PichuTest {
         // Test zero
         assertEquals(0, Parser.parseIndex("mark 0"));
     }
+
+    // Paging tests
+    @Test
+    public void testParserParsePage_readsAndRemovesThePageOption() {
+        assertEquals(1, Parser.parsePage("find book"));
+        assertEquals(2, Parser.parsePage("find book /page 2"));
+        assertEquals(3, Parser.parsePage("list page 3"));
+        assertEquals("find book", Parser.removePage("find book /page 2"));
+        assertEquals("find page 2", Parser.removePage("find page 2"));
+        assertEquals(Parser.CommandType.LIST, Parser.getCommandType("LIST PAGE 3"));
+        assertEquals(Parser.CommandType.NEXT, Parser.getCommandType("next"));
+        assertThrows(IllegalArgumentException.class, () -> Parser.parsePage("list /page 0"));
+    }
+
+    @Test
+    public void testGetResponse_showsOnePageAtATime() {
+        Pichu pichu = new Pichu(tempDir.resolve("tasks.txt").toString());
+        for (int i = 1; i <= 120; i++) {
+            pichu.getResponse("todo task " + i);
+        }
+
+        String firstPage = pichu.getResponse("list");
+        assertTrue(firstPage.contains("\n50.[T][ ] task 50 (id: 50)\nPage 1 of 3. Type next for more."));
+        assertFalse(firstPage.contains("task 51"));
+        assertTrue(pichu.getResponse("next").contains("\n51.[T][ ] task 51 (id: 51)\n"));
+        assertTrue(pichu.getResponse("list page 3").endsWith("120.[T][ ] task 120 (id: 120)\nPage 3 of 3."));
+        assertEquals("SEWY... There are no more results to show.", pichu.getResponse("next"));
+        assertEquals("SEWY... There is no page 4, the last page is 3.", pichu.getResponse("list /page 4"));
+
+        assertTrue(pichu.getResponse("find task /page 2").contains("\n100.[T][ ] task 100 (id: 100)\nPage 2 of 3."));
+        assertTrue(pichu.getResponse("next").endsWith("Page 3 of 3."));
+        assertFalse(pichu.getResponse("find task 7").contains("Page"));
+        pichu.flush();
+    }
+
+    @Test
+    public void testGetResponse_fuzzyFindToleratesTypos() {
+        Pichu pichu = new Pichu(tempDir.resolve("tasks.txt").toString());
+        pichu.getResponse("todo finish homework");
+        pichu.getResponse("todo plan meeting");
+
+        assertEquals(Parser.CommandType.FUZZY_FIND, Parser.getCommandType("find~ homewrk"));
+        assertEquals("homewrk", Parser.parseFindKeyword("find~ homewrk"));
+        assertEquals("SEWY... No matching tasks found.", pichu.getResponse("find homewrk"));
+        assertEquals("SUIII! Here are the closest matches in your list:\n1.[T][ ] finish homework (id: 1)",
+                pichu.getResponse("find~ homewrk"));
+        assertEquals("SEWY... No matching tasks found.", pichu.getResponse("find~ groceries"));
+        pichu.flush();
+    }
+
+    @Test
+    public void testGetSuggestions_completesCommandsTagsAndTaskWords() {
+        Pichu pichu = new Pichu(tempDir.resolve("tasks.txt").toString());
+        pichu.getResponse("todo finish homework #urgent");
+        pichu.getResponse("todo read Homer #unread");
+        pichu.getResponse("todo plan holiday #work");
+
+        assertEquals(List.of("deadline", "delete", "due"), pichu.getSuggestions("d"));
+        assertEquals(List.of("find~"), pichu.getSuggestions("find"));
+        assertEquals(List.of("todo call #unread", "todo call #urgent"), pichu.getSuggestions("todo call #u"));
+        assertEquals(List.of("tag #work & unread", "tag #work & urgent"), pichu.getSuggestions("tag #work & u"));
+        assertEquals(List.of("find Homer", "find Homework"), pichu.getSuggestions("find Home"));
+        assertEquals(List.of(), pichu.getSuggestions("mark ho"));
+        assertEquals(List.of(), pichu.getSuggestions("find "));
+
+        pichu.getResponse("delete 2");
+        assertEquals(List.of("find Homework"), pichu.getSuggestions("find Home"));
+        assertEquals(List.of("todo call #urgent"), pichu.getSuggestions("todo call #u"));
+        pichu.flush();
+    }
+
+    @Test
+    public void testGetResponse_doesNotReuseIdsOfDeletedTasksAfterRestart() {
+        String filePath = tempDir.resolve("tasks.txt").toString();
+        Pichu pichu = new Pichu(filePath);
+        for (int i = 1; i <= 4; i++) {
+            pichu.getResponse("todo task " + i);
+        }
+        pichu.getResponse("delete 4");
+        pichu.getResponse("delete 2-3");
+        pichu.flush();
+
+        Pichu restarted = new Pichu(filePath);
+        restarted.getResponse("todo task 5");
+        assertTrue(restarted.getResponse("list").endsWith("2.[T][ ] task 5 (id: 5)"));
+        restarted.flush();
+    }
+
+    @Test
+    public void testGetResponse_doesNotReuseIdsOfBulkDeletedTasksAfterRestart() {
+        String filePath = tempDir.resolve("tasks.txt").toString();
+        Pichu pichu = new Pichu(filePath);
+        for (int i = 1; i <= 4; i++) {
+            pichu.getResponse("todo task " + i);
+        }
+        pichu.getResponse("delete 3-4");
+        pichu.flush();
+
+        Pichu restarted = new Pichu(filePath);
+        restarted.getResponse("todo task 5");
+        assertTrue(restarted.getResponse("list").endsWith("3.[T][ ] task 5 (id: 5)"));
+        restarted.flush();
+    }
+
+    @Test
+    public void testGetResponse_queryCombinesConditionsAndExplainsItsPlan() {
+        Pichu pichu = new Pichu(tempDir.resolve("tasks.txt").toString());
+        pichu.getResponse("deadline write report #work /by 2026-10-30 1800");
+        pichu.getResponse("deadline review report #work /by 2026-11-05 1800");
+        pichu.getResponse("todo report bug #work");
+        pichu.getResponse("deadline submit report /by 2026-10-20 1200");
+        pichu.getResponse("mark 4");
+
+        String found = pichu.getResponse("query type:D done:false tag:work due<2026-11-01 \"report\"");
+        assertTrue(found.startsWith("SUIII! Here are the matching tasks in your list:\n1."));
+        assertTrue(found.endsWith("write report #work (by: Oct 30 2026, 6:00 PM) (id: 1)"));
+        assertFalse(found.contains("\n2."));
+        String dueByDeadline = pichu.getResponse("query due<=2026-10-30 1800 report");
+        assertTrue(dueByDeadline.contains("\n2.") && dueByDeadline.contains("submit report"));
+        assertFalse(pichu.getResponse("query due<2026-10-30 1800 report").contains("write report"));
+        assertEquals("SEWY... No matching tasks found.", pichu.getResponse("query due>2026-11-05 report"));
+
+        String explained = pichu.getResponse("query #work done:false \"review\" /explain");
+        assertTrue(explained.contains("review report #work"));
+        assertTrue(explained.contains("\n\nPlan: word index on \"review\" (about 1 task(s))\n"
+                + "Then check: done:false, #work\nNot chosen: tag index on #work (about 3 task(s))\n"
+                + "Not chosen: scan of the whole list (4 task(s))\nExamined 1 task(s) and found 1 in "));
+
+        assertEquals("SEWY... The type 'X' should be T, D or E.", pichu.getResponse("query type:X"));
+        assertTrue(pichu.getResponse("query size:3").startsWith("SEWY... I don't know the condition 'size:3'."));
+        assertTrue(pichu.getResponse("query /explain").startsWith("SEWY... Please give at least one condition"));
+        pichu.flush();
+    }
+
+    // Bulk command tests
+    @Test
+    public void testParserParseIndexRanges_mergesOverlappingRanges() {
+        assertTrue(Parser.isBulkCommand("delete 3,7,9"));
+        assertTrue(Parser.isBulkCommand("mark 1-500"));
+        assertTrue(Parser.isBulkCommand("delete DONE"));
+        assertTrue(Parser.isBulkCommand("unmark tag #x"));
+        assertFalse(Parser.isBulkCommand("mark 3"));
+        assertFalse(Parser.isBulkCommand("mark -1"));
+        assertEquals("[[1, 5], [7, 7]]", Arrays.deepToString(Parser.parseIndexRanges("delete 4-5, 7,1-3,2")));
+        assertEquals("#work & !#urgent", Parser.parseSelectionTagQuery("unmark tag #work & !#urgent"));
+        assertThrows(NumberFormatException.class, () -> Parser.parseIndexRanges("delete 5-3"));
+        assertThrows(NumberFormatException.class, () -> Parser.parseIndexRanges("delete 1-"));
+    }
+
+    @Test
+    public void testGetResponse_bulkCommandsChangeEverySelectedTask() {
+        Pichu pichu = new Pichu(tempDir.resolve("tasks.txt").toString());
+        for (int i = 1; i <= 10; i++) {
+            pichu.getResponse("todo task " + i + (i % 2 == 0 ? " #even" : ""));
+        }
+
+        assertEquals("SUIIIII! I've marked 4 task(s) as done.", pichu.getResponse("mark 1-3,3,8"));
+        assertEquals("SEWY...,I've marked 5 task(s) as not done yet.", pichu.getResponse("unmark tag #even"));
+        assertEquals("SEWY... Task number is out of range.", pichu.getResponse("delete 9-11"));
+        assertEquals("SUIIII. I've removed 2 task(s).\nNow you have 8 task(s) in the list.",
+                pichu.getResponse("delete done"));
+        assertEquals("SEWY... No matching tasks found.", pichu.getResponse("delete done"));
+        pichu.flush();
+
+        Pichu reloaded = new Pichu(tempDir.resolve("tasks.txt").toString());
+        assertTrue(reloaded.getResponse("list").startsWith("SUIII! Here are the tasks in your list:\n"
+                + "1.[T][ ] task 2 #even (id: 2)\n2.[T][ ] task 4 #even (id: 4)\n"));
+        reloaded.flush();
+    }
+
+    // Undo tests
+    @Test
+    public void testUndoRedo_reverseEachKindOfChangeAndAreSaved() {
+        String dataFile = tempDir.resolve("tasks.txt").toString();
+        Pichu pichu = new Pichu(dataFile);
+        for (int i = 1; i <= 6; i++) {
+            pichu.getResponse("todo task " + i);
+        }
+        pichu.getResponse("mark 2");
+        pichu.getResponse("delete 3");
+        pichu.getResponse("delete 1,4-5");
+        assertEquals("SUIII! I've undone: delete 1,4-5", pichu.getResponse("undo"));
+        assertEquals("SUIII! I've undone: delete 3", pichu.getResponse("undo"));
+        assertEquals("SUIII! I've undone: mark 2", pichu.getResponse("undo"));
+        assertEquals("SUIII! I've redone: mark 2", pichu.getResponse("redo"));
+        assertEquals("SUIII! I've undone: mark 2", pichu.getResponse("undo"));
+        assertEquals("SUIII! I've undone: todo task 6", pichu.getResponse("undo"));
+        pichu.getResponse("todo task 7");
+        assertEquals("SEWY... There is nothing to redo.", pichu.getResponse("redo"));
+        pichu.flush();
+
+        String expected = "SUIII! Here are the tasks in your list:\n1.[T][ ] task 1 (id: 1)\n"
+                + "2.[T][ ] task 2 (id: 2)\n3.[T][ ] task 3 (id: 3)\n4.[T][ ] task 4 (id: 4)\n"
+                + "5.[T][ ] task 5 (id: 5)\n6.[T][ ] task 7 (id: 7)";
+        assertEquals(expected, pichu.getResponse("list"));
+        Pichu reloaded = new Pichu(dataFile);
+        assertEquals(expected, reloaded.getResponse("list"));
+        assertEquals("SEWY... There is nothing to undo.", reloaded.getResponse("undo"));
+        reloaded.flush();
+    }
 }
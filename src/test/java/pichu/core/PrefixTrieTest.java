@@ -0,0 +1,64 @@
+package pichu.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+public class PrefixTrieTest {
+    @Test
+    public void testComplete_matchesASortedMap() {
+        Random random = new Random(17);
+        PrefixTrie trie = new PrefixTrie();
+        TreeMap<String, Integer> expected = new TreeMap<>();
+        for (int i = 0; i < 20_000; i++) {
+            String word = randomWord(random);
+            if (random.nextInt(3) > 0) {
+                trie.add(word);
+                expected.merge(word, 1, Integer::sum);
+            } else {
+                trie.remove(word);
+                expected.computeIfPresent(word, (key, count) -> count == 1 ? null : count - 1);
+            }
+        }
+
+        assertEquals(expected.size(), trie.size());
+        for (String prefix : new String[] {"", "a", "ab", "abc", "ca", "ddd"}) {
+            List<String> words = new ArrayList<>(expected.subMap(prefix, prefix + Character.MAX_VALUE).keySet());
+            assertEquals(words.subList(0, Math.min(5, words.size())), trie.complete(prefix, 5));
+        }
+    }
+
+    @Test
+    public void testRemove_keepsWordsAddedMoreOften() {
+        PrefixTrie trie = new PrefixTrie();
+        trie.add("home");
+        trie.add("home");
+        trie.add("homework");
+        trie.remove("home");
+        trie.remove("house");
+
+        assertTrue(trie.contains("home"));
+        assertFalse(trie.contains("hom"));
+        trie.remove("home");
+        assertEquals(List.of("homework"), trie.complete("ho", 10));
+        trie.remove("homework");
+        assertEquals(List.of(), trie.complete("", 10));
+        assertEquals(0, trie.size());
+    }
+
+    private static String randomWord(Random random) {
+        StringBuilder word = new StringBuilder();
+        int length = 1 + random.nextInt(5);
+        for (int i = 0; i < length; i++) {
+            word.append((char) ('a' + random.nextInt(4)));
+        }
+        return word.toString();
+    }
+}
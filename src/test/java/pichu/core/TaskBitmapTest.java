@@ -0,0 +1,64 @@
+package pichu.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+public class TaskBitmapTest {
+    @Test
+    public void testSetOperations_matchSortedSets() {
+        Random random = new Random(7);
+        TaskBitmap dense = new TaskBitmap();
+        TaskBitmap sparse = new TaskBitmap();
+        TreeSet<Integer> denseIds = new TreeSet<>();
+        TreeSet<Integer> sparseIds = new TreeSet<>();
+        // Dense IDs fill bitset blocks, sparse ones stay in array blocks
+        for (int i = 0; i < 60_000; i++) {
+            int id = 1 + random.nextInt(150_000);
+            dense.add(id);
+            denseIds.add(id);
+            if (i % 20 == 0) {
+                int sparseId = 1 + random.nextInt(300_000);
+                sparse.add(sparseId);
+                sparseIds.add(sparseId);
+            }
+        }
+        for (int i = 0; i < 20_000; i++) {
+            int id = 1 + random.nextInt(150_000);
+            dense.remove(id);
+            denseIds.remove(id);
+        }
+
+        assertEquals(toString(denseIds), toString(dense.toArray()));
+        TreeSet<Integer> both = new TreeSet<>(denseIds);
+        both.retainAll(sparseIds);
+        assertEquals(toString(both), toString(TaskBitmap.and(dense, sparse).toArray()));
+        TreeSet<Integer> either = new TreeSet<>(denseIds);
+        either.addAll(sparseIds);
+        assertEquals(toString(either), toString(TaskBitmap.or(sparse, dense).toArray()));
+        TreeSet<Integer> denseOnly = new TreeSet<>(denseIds);
+        denseOnly.removeAll(sparseIds);
+        assertEquals(toString(denseOnly), toString(TaskBitmap.andNot(dense, sparse).toArray()));
+        TreeSet<Integer> sparseOnly = new TreeSet<>(sparseIds);
+        sparseOnly.removeAll(denseIds);
+        assertEquals(toString(sparseOnly), toString(TaskBitmap.andNot(sparse, dense).toArray()));
+        assertTrue(dense.contains(denseIds.first()));
+    }
+
+    private static String toString(TreeSet<Integer> ids) {
+        return ids.toString();
+    }
+
+    private static String toString(int[] ids) {
+        TreeSet<Integer> set = new TreeSet<>();
+        for (int id : ids) {
+            set.add(id);
+        }
+        assertEquals(set.size(), ids.length);
+        return set.toString();
+    }
+}
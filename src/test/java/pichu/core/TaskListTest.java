@@ -0,0 +1,392 @@
+package pichu.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+import pichu.parser.Parser;
+import pichu.task.Deadline;
+import pichu.task.Event;
+import pichu.task.TagDictionary;
+import pichu.task.Task;
+import pichu.task.Todo;
+
+public class TaskListTest {
+    @Test
+    public void testTaskIds_stayStableWhenEarlierTasksAreDeleted() {
+        TaskList taskList = new TaskList();
+        for (int i = 1; i <= 1000; i++) {
+            taskList.addTask(new Todo("task " + i));
+        }
+        for (int id = 1; id <= 1000; id += 2) {
+            assertEquals((id + 1) / 2, taskList.deleteTaskById(id));
+        }
+
+        assertEquals(500, taskList.size());
+        assertEquals("task 1000", taskList.getTaskById(1000).getName());
+        assertEquals(250, taskList.indexOfId(500));
+        taskList.markTaskById(500);
+        assertTrue(taskList.getTask(250).isCompleted());
+        assertThrows(IndexOutOfBoundsException.class, () -> taskList.getTaskById(999));
+
+        Task added = new Todo("task 1001");
+        taskList.addTask(added);
+        assertEquals(1001, added.getId());
+    }
+
+    @Test
+    public void testTaskIds_surviveTheFileFormat() {
+        Task task = new Todo("read book #fun");
+        new TaskList().addTask(task);
+        assertEquals("T|0|read book|fun|#1", task.toFileFormat());
+
+        Task parsed = Parser.parseTaskFromString(task.toFileFormat());
+        assertEquals(1, parsed.getId());
+        assertEquals(List.of("fun"), parsed.getTags());
+        assertEquals(Task.NO_ID, Parser.parseTaskFromString("D|0|return book|2024-12-15").getId());
+    }
+
+    @Test
+    public void testSetTasks_assignsIdsOnlyWhereMissingOrOutOfOrder() {
+        TaskList taskList = new TaskList();
+        Task first = Parser.parseTaskFromString("T|0|first||#5");
+        Task second = Parser.parseTaskFromString("T|0|second|");
+        Task third = Parser.parseTaskFromString("T|0|third||#3");
+        assertFalse(taskList.setTasks(List.of(first)));
+        assertTrue(taskList.setTasks(List.of(first, second, third)));
+
+        assertEquals(5, first.getId());
+        assertEquals(6, second.getId());
+        assertEquals(7, third.getId());
+        assertEquals(3, taskList.indexOfId(7));
+    }
+
+    @Test
+    public void testSetTasks_buildsTheSameIndexesAsAddingOneAtATime() {
+        List<String> taskData = new ArrayList<>();
+        for (int i = 0; i < 12_000; i++) {
+            taskData.add(i % 3 == 0 ? "D|0|report " + i + " draft|2026-11-0" + (1 + i % 9) + " 1800|work"
+                    : "T|0|call " + (i % 500) + " report|tag" + (i % 7));
+        }
+        TaskList oneByOne = new TaskList();
+        TaskList bulk = new TaskList();
+        for (String data : taskData) {
+            oneByOne.addTask(Parser.parseTaskFromString(data));
+        }
+        bulk.loadTasks(taskData);
+
+        LocalDateTime due = LocalDateTime.of(2026, 11, 4, 0, 0);
+        assertEquals(names(oneByOne.getTasks()), names(bulk.getTasks()));
+        assertEquals(names(oneByOne.findTasks("report 12")), names(bulk.findTasks("report 12")));
+        assertEquals(names(oneByOne.findTasks("rep*")), names(bulk.findTasks("rep*")));
+        assertEquals(names(oneByOne.findTasksFuzzy("raport")), names(bulk.findTasksFuzzy("raport")));
+        assertEquals(names(oneByOne.findTasksByTag("tag3")), names(bulk.findTasksByTag("tag3")));
+        assertEquals(names(oneByOne.findDueBefore(due)), names(bulk.findDueBefore(due)));
+        assertEquals(oneByOne.completeWord("dr", 5), bulk.completeWord("dr", 5));
+        assertEquals(oneByOne.getTaskById(9_000).getName(), bulk.getTaskById(9_000).getName());
+    }
+
+    @Test
+    public void testFindTasks_matchesWholeWordsAndPrefixes() {
+        TaskList taskList = new TaskList();
+        taskList.addTask(new Todo("finish Homework"));
+        taskList.addTask(new Todo("home cleaning"));
+        taskList.addTask(new Todo("read book"));
+        taskList.addTask(new Todo("finish homework essay"));
+        taskList.deleteTask(3);
+
+        assertEquals(List.of("finish Homework", "finish homework essay"), names(taskList.findTasks("HOMEWORK")));
+        assertEquals(List.of("finish homework essay"), names(taskList.findTasks("essay homework")));
+        assertEquals(List.of(), names(taskList.findTasks("home work")));
+        assertEquals(List.of("finish Homework", "home cleaning", "finish homework essay"),
+                names(taskList.findTasks("home*")));
+        assertEquals(List.of(), names(taskList.findTasks("book")));
+    }
+
+    @Test
+    public void testFindTasksFuzzy_ranksByEditsAndMatchesBruteForce() {
+        TaskList taskList = new TaskList();
+        taskList.addTask(new Todo("finish homework"));
+        taskList.addTask(new Todo("finish homewrk essay"));
+        taskList.addTask(new Todo("read book"));
+        taskList.addTask(new Todo("meeting with team"));
+
+        assertEquals(List.of("finish homewrk essay", "finish homework"), names(taskList.findTasksFuzzy("homewrk")));
+        assertEquals(List.of("finish homework", "finish homewrk essay"), names(taskList.findTasksFuzzy("homewok")));
+        assertEquals(List.of("meeting with team"), names(taskList.findTasksFuzzy("meetign teem")));
+        assertEquals(List.of(), names(taskList.findTasksFuzzy("bok")));
+        taskList.deleteTask(1);
+        assertEquals(List.of("finish homewrk essay"), names(taskList.findTasksFuzzy("homework")));
+
+        String[] words = {"homework", "meeting", "project", "report", "review", "book", "call", "plan"};
+        Random random = new Random(13);
+        for (int i = 0; i < 3000; i++) {
+            StringBuilder name = new StringBuilder();
+            for (int j = 0; j < 3; j++) {
+                char[] word = words[random.nextInt(words.length)].toCharArray();
+                word[random.nextInt(word.length)] = (char) ('a' + random.nextInt(26));
+                name.append(word).append(' ');
+            }
+            taskList.addTask(new Todo(name.toString()));
+        }
+        for (String query : new String[] {"homework", "meeting report", "revew", "projcet"}) {
+            List<String> expected = new ArrayList<>();
+            for (Task task : taskList.getTasks()) {
+                if (isFuzzyMatch(query, task.getName())) {
+                    expected.add(task.getName());
+                }
+            }
+            assertEquals(sorted(expected), sorted(names(taskList.findTasksFuzzy(query))));
+        }
+    }
+
+    private static boolean isFuzzyMatch(String query, String name) {
+        for (String queryWord : TaskTextIndex.tokenize(query)) {
+            int limit = queryWord.length() < 4 ? 0 : queryWord.length() < 7 ? 1 : 2;
+            boolean isFound = false;
+            for (String word : TaskTextIndex.tokenize(name)) {
+                isFound |= WordTrigramIndex.editDistance(queryWord, word, limit) <= limit;
+            }
+            if (!isFound) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Test
+    public void testFindTasksByTagQuery_combinesTagsAndFollowsTagChanges() {
+        TaskList taskList = new TaskList();
+        taskList.addTask(new Todo("write report #work #urgent"));
+        taskList.addTask(new Todo("fix build #work #urgent #blocked"));
+        taskList.addTask(new Todo("plan trip #personal"));
+        taskList.addTask(new Todo("review code #work"));
+
+        assertEquals(List.of("write report"), names(taskList.findTasksByTagQuery("#work & #urgent & !#blocked")));
+        assertEquals(List.of("fix build", "plan trip"), names(taskList.findTasksByTagQuery("blocked | personal")));
+        assertEquals(List.of("plan trip", "review code"),
+                names(taskList.findTasksByTagQuery("!(#urgent | #blocked)")));
+
+        taskList.getTask(2).removeTag("blocked");
+        taskList.getTask(4).addTag("urgent");
+        taskList.deleteTask(1);
+        assertEquals(List.of("fix build", "review code"), names(taskList.findTasksByTagQuery("#work & #urgent")));
+        assertEquals(List.of("fix build", "review code"), names(taskList.findTasksByTag("urgent")));
+        assertThrows(IllegalArgumentException.class, () -> taskList.findTasksByTagQuery("#work &"));
+        assertThrows(IllegalArgumentException.class, () -> taskList.findTasksByTagQuery("(#work"));
+    }
+
+    @Test
+    public void testTags_areInternedOnceAndComparedById() {
+        Task first = Parser.parseTaskFromString("T|0|write report|work,urgent");
+        Task second = Parser.parseTaskFromString("T|0|fix build|" + new String("work"));
+        int workId = TagDictionary.find("work");
+
+        assertTrue(first.getTags().get(0) == second.getTags().get(0));
+        assertTrue(second.hasTag(workId));
+        assertFalse(second.hasTag(TagDictionary.find("urgent")));
+        assertFalse(second.hasTag("never used as a tag"));
+        assertEquals(TagDictionary.NO_TAG, TagDictionary.find("never used as a tag"));
+
+        TaskList taskList = new TaskList();
+        taskList.addTask(first);
+        taskList.addTask(second);
+        first.removeTag("work");
+        first.addTag("work");
+        first.addTag("work");
+        assertEquals(List.of("urgent", "work"), first.getTags());
+        assertEquals("T|0|write report|urgent,work|#1", first.toFileFormat());
+        assertEquals(List.of("write report", "fix build"), names(taskList.findTasksByTag("work")));
+    }
+
+    @Test
+    public void testDateQueries_matchBruteForceAndKeepUndatedTasksApart() {
+        TaskList taskList = new TaskList();
+        Random random = new Random(3);
+        LocalDateTime base = LocalDateTime.of(2024, 12, 1, 0, 0);
+        for (int i = 0; i < 2000; i++) {
+            LocalDateTime start = base.plusHours(random.nextInt(24 * 60));
+            if (i % 2 == 0) {
+                taskList.addTask(new Deadline("deadline " + i, start, start.toString()));
+            } else {
+                LocalDateTime end = start.plusHours(random.nextInt(72));
+                taskList.addTask(new Event("event " + i, start, start.toString(), end, end.toString()));
+            }
+        }
+        taskList.addTask(new Deadline("someday", "someday"));
+        taskList.addTask(new Todo("no dates"));
+        for (int i = 0; i < 300; i++) {
+            taskList.deleteTask(1 + random.nextInt(taskList.size()));
+        }
+
+        LocalDateTime from = base.plusDays(10);
+        LocalDateTime to = base.plusDays(12);
+        List<String> dueBefore = new ArrayList<>();
+        List<String> dueBetween = new ArrayList<>();
+        List<String> overlapping = new ArrayList<>();
+        for (Task task : taskList.getTasks()) {
+            if (task instanceof Deadline && ((Deadline) task).getDeadline() != null) {
+                LocalDateTime due = ((Deadline) task).getDeadline();
+                if (due.isBefore(from)) {
+                    dueBefore.add(task.getName());
+                }
+                if (!due.isBefore(from) && !due.isAfter(to)) {
+                    dueBetween.add(task.getName());
+                }
+            } else if (task instanceof Event) {
+                Event event = (Event) task;
+                if (!event.getStartDateTime().isAfter(to) && !event.getEndDateTime().isBefore(from)) {
+                    overlapping.add(task.getName());
+                }
+            }
+        }
+
+        assertEquals(sorted(dueBefore), sorted(names(taskList.findDueBefore(from))));
+        assertEquals(sorted(dueBetween), sorted(names(taskList.findDueBetween(from, to))));
+        assertEquals(sorted(overlapping), sorted(names(taskList.findEventsOverlapping(from, to))));
+        assertEquals(List.of("someday"), names(taskList.getUndatedTasks()));
+    }
+
+    @Test
+    public void testQuery_choosesTheMostSelectiveIndexAndMatchesBruteForce() {
+        TaskList taskList = new TaskList();
+        Random random = new Random(21);
+        LocalDateTime base = LocalDateTime.of(2026, 10, 1, 0, 0);
+        String[] words = {"report", "review", "call", "plan"};
+        for (int i = 0; i < 3000; i++) {
+            String name = words[random.nextInt(words.length)] + " " + i + (i % 500 == 0 ? " #rare" : "")
+                    + (i % 3 == 0 ? " #work" : "");
+            LocalDateTime time = base.plusHours(random.nextInt(24 * 60));
+            Task task = i % 3 == 1 ? new Deadline(name, time, time.toString())
+                    : i % 3 == 2 ? new Event(name, time, time.toString(), time.plusHours(1), time.toString())
+                    : new Todo(name);
+            task.setCompleted(random.nextBoolean());
+            taskList.addTask(task);
+        }
+        taskList.addTask(new Deadline("report someday #work", "someday"));
+
+        TaskQuery byTag = Parser.parseQuery("query done:false tag:rare");
+        TaskQuery byWord = Parser.parseQuery("query type:D \"report 1234\" #work");
+        TaskQuery byDate = Parser.parseQuery("query due>=2026-11-01 due<2026-11-02 report");
+        TaskQuery byScan = Parser.parseQuery("query type:E done:true");
+        assertTrue(taskList.query(byTag).getExplanation().startsWith("Plan: tag index on #rare (about 6 task(s))"));
+        assertTrue(taskList.query(byWord).getExplanation().startsWith("Plan: word index on \"report 1234\""));
+        assertTrue(taskList.query(byDate).getExplanation().startsWith("Plan: deadline index on due 2026-11-01 0000"));
+        assertTrue(taskList.query(byScan).getExplanation().startsWith("Plan: scan of the whole list (3001 task(s))"));
+        for (TaskQuery query : List.of(byTag, byWord, byDate, byScan)) {
+            List<String> expected = new ArrayList<>();
+            for (Task task : taskList.getTasks()) {
+                if (query.matchesType(task) && query.matchesCompletion(task) && query.matchesTags(task)
+                        && query.matchesWords(task) && query.matchesDueRange(task)) {
+                    expected.add(task.getName());
+                }
+            }
+            assertEquals(expected, names(taskList.query(query).getTasks()));
+        }
+    }
+
+    @Test
+    public void testDeleteTasks_matchesDeletingOneAtATime() {
+        TaskList bulk = new TaskList();
+        TaskList single = new TaskList();
+        Random random = new Random(5);
+        for (int i = 0; i < 3000; i++) {
+            String name = "task " + (i % 10) + " #tag" + (i % 7);
+            bulk.addTask(new Todo(name));
+            single.addTask(new Todo(name));
+        }
+        List<Task> selected = new ArrayList<>();
+        for (Task task : bulk.getTasks()) {
+            if (random.nextInt(3) == 0) {
+                selected.add(task);
+            }
+        }
+        selected.add(selected.get(0));
+        for (int i = selected.size() - 2; i >= 0; i--) {
+            single.deleteTaskById(selected.get(i).getId());
+        }
+
+        assertEquals(selected.size() - 1, bulk.deleteTasks(selected));
+        assertEquals(0, bulk.deleteTasks(selected));
+        assertEquals(names(single.getTasks()), names(bulk.getTasks()));
+        assertEquals(names(single.findTasks("task 3")), names(bulk.findTasks("task 3")));
+        assertEquals(names(single.findTasksByTag("tag2")), names(bulk.findTasksByTag("tag2")));
+        assertEquals(single.size() / 2, bulk.setCompleted(bulk.getTasks().subList(0, single.size() / 2), true));
+        assertTrue(bulk.getTask(1).isCompleted());
+        assertFalse(bulk.getTask(bulk.size()).isCompleted());
+    }
+
+    @Test
+    public void testConcurrentReaders_alwaysSeeAConsistentList() throws Exception {
+        TaskList taskList = new TaskList();
+        AtomicBoolean isWriting = new AtomicBoolean(true);
+        AtomicReference<String> failure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 20_000; i++) {
+                taskList.addTask(new Todo("task " + i + " #even"));
+                taskList.addTask(new Todo("task " + i + " #odd"));
+                if (i % 3 == 0) {
+                    taskList.deleteTask(1);
+                    taskList.deleteTask(1);
+                }
+            }
+            isWriting.set(false);
+        });
+        Runnable reader = () -> {
+            while (isWriting.get() && failure.get() == null) {
+                // Every read must see one version: no missing tasks and IDs in list order
+                checkConsistent(taskList.getTasks(), null, failure);
+                checkConsistent(taskList.findTasksByTag("even"), "even", failure);
+                checkConsistent(taskList.findTasksByTagQuery("even & !odd"), "even", failure);
+                checkConsistent(taskList.findTasks("task*"), null, failure);
+            }
+        };
+        Thread[] readers = {new Thread(reader), new Thread(reader)};
+        writer.start();
+        for (Thread thread : readers) {
+            thread.start();
+        }
+        writer.join();
+        for (Thread thread : readers) {
+            thread.join();
+        }
+
+        assertEquals(null, failure.get());
+        assertEquals(2 * 20_000 - 2 * 6_667, taskList.size());
+    }
+
+    private static void checkConsistent(List<Task> tasks, String tag, AtomicReference<String> failure) {
+        for (int i = 0; i < tasks.size(); i++) {
+            Task task = tasks.get(i);
+            if (task == null || (tag != null && !task.hasTag(tag))) {
+                failure.set("torn read of " + tasks.size() + " tasks");
+            } else if (i > 0 && tasks.get(i - 1) != null && tasks.get(i - 1).getId() >= task.getId()) {
+                failure.set("IDs out of order");
+            }
+        }
+    }
+
+    private static List<String> sorted(List<String> names) {
+        List<String> copy = new ArrayList<>(names);
+        Collections.sort(copy);
+        return copy;
+    }
+
+    private static List<String> names(List<Task> tasks) {
+        List<String> names = new ArrayList<>();
+        for (Task task : tasks) {
+            names.add(task.getName());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,55 @@
+package pichu.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import pichu.task.Task;
+import pichu.task.Todo;
+
+public class TaskVectorTest {
+    @Test
+    public void testAppendAndWithout_matchArrayList() {
+        Random random = new Random(11);
+        TaskVector vector = TaskVector.EMPTY;
+        List<Task> expected = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            if (expected.isEmpty() || random.nextInt(3) > 0) {
+                Task task = new Todo("task " + i);
+                vector = vector.append(task);
+                expected.add(task);
+            } else {
+                int index = random.nextInt(expected.size());
+                vector = vector.without(index);
+                expected.remove(index);
+            }
+        }
+
+        assertEquals(expected, vector);
+        assertEquals(expected, new ArrayList<>(TaskVector.of(expected)));
+        for (int i = 0; i < expected.size(); i += 97) {
+            assertEquals(expected.get(i), vector.get(i));
+        }
+    }
+
+    @Test
+    public void testGetTasks_returnsASnapshotThatLaterChangesDoNotReach() {
+        TaskList taskList = new TaskList();
+        taskList.addTask(new Todo("first"));
+        taskList.addTask(new Todo("second"));
+        List<Task> snapshot = taskList.getTasks();
+
+        taskList.addTask(new Todo("third"));
+        taskList.deleteTask(1);
+
+        assertEquals(2, snapshot.size());
+        assertEquals("first", snapshot.get(0).getName());
+        assertEquals("second", taskList.getTasks().get(0).getName());
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.add(new Todo("fourth")));
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.get(0).getTags().add("tag"));
+    }
+}
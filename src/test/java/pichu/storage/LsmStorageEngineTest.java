@@ -0,0 +1,111 @@
+package pichu.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pichu.task.Task;
+import pichu.task.Todo;
+
+public class LsmStorageEngineTest {
+    @TempDir
+    Path tempDir;
+
+    private LsmStorageEngine open() {
+        return new LsmStorageEngine(tempDir.resolve("tasks.txt"), Durability.NO_SYNC, 8, 2);
+    }
+
+    @Test
+    public void testPointUpdates_survivePersistedRunsAndReopen() throws Exception {
+        LsmStorageEngine engine = open();
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 1; i <= 100; i++) {
+            Task task = new Todo("task " + i);
+            tasks.add(task);
+            engine.saveTask(task);
+        }
+        for (int i = 1; i <= 100; i += 3) {
+            tasks.get(i - 1).setCompleted(true);
+            engine.updateTask(i, tasks.get(i - 1), () -> tasks);
+        }
+        for (int i = 100; i >= 1; i -= 10) {
+            tasks.remove(i - 1);
+            engine.deleteTask(i, () -> tasks);
+        }
+        List<String> expected = new ArrayList<>();
+        for (Task task : tasks) {
+            expected.add(task.toFileFormat());
+        }
+        assertEquals(expected, engine.loadTasks());
+        engine.close();
+        assertEquals(expected, open().loadTasks());
+    }
+
+    @Test
+    public void testScan_returnsOnlyTheRange() throws Exception {
+        LsmStorageEngine engine = open();
+        for (int i = 1; i <= 50; i++) {
+            engine.saveTask(new Todo("task " + i));
+        }
+        engine.deleteTask(1, () -> null);
+        engine.close();
+
+        List<String> scanned = new ArrayList<>();
+        open().scan(10, 12, task -> scanned.add(task.toFileFormat()));
+        assertEquals(List.of("T|0|task 11|", "T|0|task 12|", "T|0|task 13|"), scanned);
+    }
+
+    @Test
+    public void testInsertTask_fillsTheGapOfADeletedTask() throws Exception {
+        LsmStorageEngine engine = open();
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 1; i <= 30; i++) {
+            Task task = new Todo("task " + i);
+            tasks.add(task);
+            engine.saveTask(task);
+        }
+        Task removed = tasks.remove(9);
+        engine.deleteTask(10, () -> tasks);
+        tasks.add(9, removed);
+        engine.insertTask(10, removed, () -> tasks);
+        // Keys 1 and 2 are next to each other, so this insert renumbers the keys
+        Task squeezed = new Todo("squeezed");
+        tasks.add(1, squeezed);
+        engine.insertTask(2, squeezed, () -> tasks);
+        Task first = new Todo("first");
+        tasks.add(0, first);
+        engine.insertTask(1, first, () -> tasks);
+
+        List<String> expected = new ArrayList<>();
+        for (Task task : tasks) {
+            expected.add(task.toFileFormat());
+        }
+        assertEquals(expected, engine.loadTasks());
+        engine.close();
+        assertEquals(expected, open().loadTasks());
+    }
+
+    @Test
+    public void testClose_stopsTheSyncThread() throws Exception {
+        long syncersBefore = countThreads("pichu-lsm-sync");
+        LsmStorageEngine engine = new LsmStorageEngine(tempDir.resolve("tasks.txt"), Durability.SYNC_ON_INTERVAL);
+        engine.saveTask(new Todo("first"));
+        engine.close();
+
+        for (int i = 0; i < 100 && countThreads("pichu-lsm-sync") > syncersBefore; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(syncersBefore, countThreads("pichu-lsm-sync"));
+        assertEquals(List.of("T|0|first|"), open().loadTasks());
+    }
+
+    private static long countThreads(String name) {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.isAlive() && thread.getName().equals(name))
+                .count();
+    }
+}
@@ -0,0 +1,350 @@
+package pichu.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pichu.task.Task;
+import pichu.task.Todo;
+
+public class StorageTest {
+    @TempDir
+    Path tempDir;
+
+    private String dataFile() {
+        return tempDir.resolve("tasks.txt").toString();
+    }
+
+    @Test
+    public void testLogMode_replaysMutationsOnLoad() {
+        Storage storage = new Storage(dataFile(), Storage.Mode.LOG);
+        List<Task> tasks = new ArrayList<>();
+        for (String name : new String[]{"read book", "buy milk", "call mom"}) {
+            Task task = new Todo(name);
+            tasks.add(task);
+            storage.saveTask(task.toFileFormat());
+        }
+
+        tasks.get(1).setCompleted(true);
+        storage.updateTask(2, tasks.get(1), () -> tasks);
+        tasks.remove(0);
+        storage.deleteTask(1, () -> tasks);
+        storage.flush();
+
+        List<String> loaded = new Storage(dataFile(), Storage.Mode.LOG).loadTasks();
+        assertEquals(List.of("T|1|buy milk|", "T|0|call mom|"), loaded);
+    }
+
+    @Test
+    public void testLogMode_saveAllTasksReplacesLog() {
+        Storage storage = new Storage(dataFile(), Storage.Mode.LOG);
+        storage.saveTask(new Todo("old task").toFileFormat());
+        storage.saveAllTasks(List.of(new Todo("new task")));
+        storage.saveTask(new Todo("later task").toFileFormat());
+
+        List<String> loaded = new Storage(dataFile(), Storage.Mode.LOG).loadTasks();
+        assertEquals(List.of("T|0|new task|", "T|0|later task|"), loaded);
+    }
+
+    @Test
+    public void testBinaryFormat_roundTripsAllTaskTypes() throws Exception {
+        Path textFile = tempDir.resolve("tasks.txt");
+        Files.write(textFile, List.of(
+                "T|1|read book|reading,fun",
+                "D|0|submit report|2019-12-02 1800",
+                "E|0|camp|sometime|2/12/2019 1800|outdoor"));
+        String binaryFile = tempDir.resolve("tasks.bin").toString();
+
+        assertEquals(3, Storage.convert(textFile.toString(), binaryFile));
+
+        Storage storage = new Storage(binaryFile);
+        storage.saveTask(new Todo("pay bills #home #fun"));
+        List<Task> loaded = new Storage(binaryFile).load();
+        assertEquals(4, loaded.size());
+        assertEquals("T|1|read book|reading,fun", loaded.get(0).toFileFormat());
+        assertEquals("D|0|submit report|2019-12-02 1800", loaded.get(1).toFileFormat());
+        assertEquals("E|0|camp|sometime|2019-12-02 1800|outdoor", loaded.get(2).toFileFormat());
+        assertEquals("T|0|pay bills|home,fun", loaded.get(3).toFileFormat());
+    }
+
+    @Test
+    public void testWriteBehind_flushPersistsQueuedWrites() {
+        Storage storage = new Storage(dataFile(), Storage.Mode.FLAT, true);
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 1; i <= 50; i++) {
+            Task task = new Todo("task " + i);
+            tasks.add(task);
+            storage.saveTask(task);
+        }
+        for (int i = 1; i <= 50; i += 2) {
+            tasks.get(i - 1).setCompleted(true);
+            storage.updateTask(i, tasks.get(i - 1), () -> new ArrayList<>(tasks));
+        }
+        storage.flush();
+
+        List<String> loaded = new Storage(dataFile()).loadTasks();
+        assertEquals(50, loaded.size());
+        assertEquals("T|1|task 49|", loaded.get(48));
+        assertEquals("T|0|task 50|", loaded.get(49));
+    }
+
+    @Test
+    public void testWriteBehind_fullRewriteSkipsOnlyTheWritesItCovers() throws Exception {
+        WriteBehindQueue queue = new WriteBehindQueue(WriteBehindQueue.DEFAULT_CAPACITY, "pichu-test-writer");
+        CountDownLatch isBlocking = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        queue.submit(() -> {
+            isBlocking.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, false);
+        isBlocking.await();
+
+        // Queued behind the blocked write, so all three run as one batch
+        List<String> written = new ArrayList<>();
+        queue.submit(() -> written.add("covered"), false);
+        queue.submitUncovered(() -> written.add("uncovered"));
+        queue.submit(() -> written.add("rewrite"), true);
+        release.countDown();
+        queue.close();
+
+        assertEquals(List.of("uncovered", "rewrite"), written);
+    }
+
+    @Test
+    public void testWriteBehind_closeWritesQueuedTasksAndStopsTheWriter() throws Exception {
+        long writersBefore = countThreads("pichu-writer");
+        Storage storage = new Storage(dataFile(), Storage.Mode.FLAT, true);
+        storage.saveTask(new Todo("first"));
+        storage.close();
+
+        assertEquals(writersBefore, awaitThreadCount("pichu-writer", writersBefore));
+        assertEquals(List.of("T|0|first|"), new Storage(dataFile()).loadTasks());
+    }
+
+    @Test
+    public void testSyncOnInterval_closeStopsTheSyncThread() throws Exception {
+        long syncersBefore = countThreads("pichu-interval-sync");
+        Storage storage = new Storage(dataFile(), Storage.Mode.FLAT, false, Durability.SYNC_ON_INTERVAL);
+        storage.saveTask(new Todo("first"));
+        storage.close();
+
+        assertEquals(syncersBefore, awaitThreadCount("pichu-interval-sync", syncersBefore));
+        assertEquals(List.of("T|0|first|"), new Storage(dataFile()).loadTasks());
+    }
+
+    /**
+     * Returns the number of live threads with the name once it drops to the expected
+     * count, or after a second, since a stopped thread may take a moment to exit.
+     */
+    private static long awaitThreadCount(String name, long expected) throws InterruptedException {
+        for (int i = 0; i < 100 && countThreads(name) > expected; i++) {
+            Thread.sleep(10);
+        }
+        return countThreads(name);
+    }
+
+    private static long countThreads(String name) {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.isAlive() && thread.getName().equals(name))
+                .count();
+    }
+
+    @Test
+    public void testSlottedMode_rewritesChangedTasksInPlace() throws Exception {
+        Path textFile = tempDir.resolve("tasks.txt");
+        Files.write(textFile, List.of("T|0|read book|", "T|0|buy milk|", "T|0|call mom|"));
+        Storage storage = new Storage(dataFile(), Storage.Mode.SLOTTED);
+        List<Task> tasks = storage.load();
+        long size = Files.size(textFile);
+
+        tasks.get(0).setCompleted(true);
+        storage.updateTask(1, tasks.get(0), () -> {
+            throw new AssertionError("slotted updates must not need the whole list");
+        });
+        assertEquals(size, Files.size(textFile));
+
+        Task renamed = new Todo("call mom " + "and dad ".repeat(40));
+        storage.updateTask(3, renamed, () -> tasks);
+        storage.deleteTask(2, () -> tasks);
+        storage.saveTask(new Todo("pay bills"));
+
+        List<String> loaded = new Storage(dataFile()).loadTasks();
+        assertEquals(List.of("T|1|read book|", renamed.toFileFormat(), "T|0|pay bills|"), loaded);
+    }
+
+    @Test
+    public void testShardedMode_mergesShardsInListOrder() throws Exception {
+        Files.write(tempDir.resolve("tasks.txt"), List.of(
+                "T|0|read book|", "D|0|submit report|2019-12-02 1800", "E|0|camp|mon|tue|", "T|0|buy milk|"));
+        Storage storage = new Storage(dataFile(), Storage.Mode.SHARDED_BY_TYPE);
+        List<Task> tasks = storage.load();
+        assertEquals(4, tasks.size());
+        long eventShardModified = Files.getLastModifiedTime(tempDir.resolve("tasks.E.txt")).toMillis();
+
+        tasks.get(3).setCompleted(true);
+        storage.updateTask(4, tasks.get(3), () -> tasks);
+        tasks.remove(0);
+        storage.deleteTask(1, () -> tasks);
+        storage.saveTask(new Todo("pay bills"));
+        assertEquals(eventShardModified, Files.getLastModifiedTime(tempDir.resolve("tasks.E.txt")).toMillis());
+
+        List<String> loaded = new Storage(dataFile()).loadTasks();
+        assertEquals(List.of("D|0|submit report|2019-12-02 1800", "E|0|camp|mon|tue|", "T|1|buy milk|",
+                "T|0|pay bills|"), loaded);
+    }
+
+    @Test
+    public void testRecovery_skipsDamagedRecordsAndCutsTornTail() throws Exception {
+        Path textFile = tempDir.resolve("tasks.txt");
+        String damaged = RecordRecovery.seal("T|0|buy milk|").replace("milk", "silk");
+        String intact = RecordRecovery.seal("T|0|call mom|");
+        Files.write(textFile, List.of(RecordRecovery.seal("T|0|read book|"), damaged, intact));
+        long intactSize = Files.size(textFile);
+        Files.write(textFile, "T|0|pay bi".getBytes(), StandardOpenOption.APPEND);
+
+        Storage storage = new Storage(dataFile());
+        assertEquals(List.of("T|0|read book|", "T|0|call mom|"), storage.loadTasks());
+        assertEquals(intactSize, Files.size(textFile));
+
+        storage.saveTask(new Todo("pay bills"));
+        assertEquals(List.of("T|0|read book|", "T|0|call mom|", "T|0|pay bills|"), storage.loadTasks());
+    }
+
+    @Test
+    public void testRecovery_cutsTornBinaryTailBeforeLaterAppends() throws Exception {
+        Path binaryFile = tempDir.resolve("tasks.bin");
+        Storage storage = new Storage(binaryFile.toString());
+        storage.saveAllTasks(List.of(new Todo("read book #fun"), new Todo("buy milk"), new Todo("call mom")));
+        long size = Files.size(binaryFile);
+        try (FileChannel channel = FileChannel.open(binaryFile, StandardOpenOption.WRITE)) {
+            channel.truncate(size - 3);
+        }
+
+        storage = new Storage(binaryFile.toString());
+        assertEquals(List.of("T|0|read book|fun", "T|0|buy milk|"), storage.loadTasks());
+        storage.saveTask(new Todo("pay bills #fun"));
+        storage.saveTask(new Todo("walk dog"));
+        assertEquals(List.of("T|0|read book|fun", "T|0|buy milk|", "T|0|pay bills|fun", "T|0|walk dog|"),
+                new Storage(binaryFile.toString()).loadTasks());
+
+        // A flipped bit inside a record fails its checksum instead of decoding as another task
+        byte[] bytes = Files.readAllBytes(binaryFile);
+        int nameStart = new String(bytes, StandardCharsets.ISO_8859_1).indexOf("pay bills");
+        bytes[nameStart] ^= 1;
+        Files.write(binaryFile, bytes);
+        assertEquals(List.of("T|0|read book|fun", "T|0|buy milk|", "T|0|walk dog|"),
+                new Storage(binaryFile.toString()).loadTasks());
+    }
+
+    @Test
+    public void testRecovery_skipsDamagedBinaryRecordsAndKeepsLaterOnes() throws Exception {
+        Path binaryFile = tempDir.resolve("tasks.bin");
+        Storage storage = new Storage(binaryFile.toString());
+        storage.saveAllTasks(List.of(new Todo("read book #work"), new Todo("buy milk #home"),
+                new Todo("call mom #home"), new Todo("pay bills #work"), new Todo("walk dog")));
+        byte[] bytes = Files.readAllBytes(binaryFile);
+        String text = new String(bytes, StandardCharsets.ISO_8859_1);
+        // The first "home" is the record that defines the tag
+        bytes[text.indexOf("home")] ^= 1;
+        bytes[text.indexOf("call mom")] ^= 1;
+        Files.write(binaryFile, bytes);
+
+        storage = new Storage(binaryFile.toString());
+        assertEquals(List.of("T|0|read book|work", "T|0|buy milk|", "T|0|pay bills|work", "T|0|walk dog|"),
+                storage.loadTasks());
+        storage.saveTask(new Todo("feed cat #urgent"));
+        assertEquals(List.of("T|0|read book|work", "T|0|buy milk|", "T|0|pay bills|work", "T|0|walk dog|",
+                "T|0|feed cat|urgent"), new Storage(binaryFile.toString()).loadTasks());
+    }
+
+    @Test
+    public void testRecovery_checksSlottedAndShardedRecords() throws Exception {
+        Path textFile = tempDir.resolve("tasks.txt");
+        Files.write(textFile, List.of("T|0|read book|", "T|0|buy milk|", "T|0|call mom|"));
+        new Storage(dataFile(), Storage.Mode.SLOTTED).load();
+        byte[] bytes = Files.readAllBytes(textFile);
+        bytes[new String(bytes, StandardCharsets.ISO_8859_1).indexOf("buy milk")] ^= 1;
+        Files.write(textFile, bytes);
+        long size = Files.size(textFile);
+        Files.write(textFile, new byte[] {1, 0, 1}, StandardOpenOption.APPEND);
+
+        Storage storage = new Storage(dataFile());
+        assertEquals(List.of("T|0|read book|", "T|0|call mom|"), storage.loadTasks());
+        assertEquals(size, Files.size(textFile));
+
+        Path shardedFile = tempDir.resolve("sharded.txt");
+        Files.write(shardedFile, List.of("T|0|read book|", "D|0|submit report|2019-12-02 1800"));
+        new Storage(shardedFile.toString(), Storage.Mode.SHARDED_BY_TYPE).load();
+        Files.write(tempDir.resolve("sharded.T.txt"), "2|T|0|pay bi".getBytes(), StandardOpenOption.APPEND);
+        storage = new Storage(shardedFile.toString());
+        assertEquals(List.of("T|0|read book|", "D|0|submit report|2019-12-02 1800"), storage.loadTasks());
+        storage.saveTask(new Todo("pay bills"));
+        assertEquals(List.of("T|0|read book|", "D|0|submit report|2019-12-02 1800", "T|0|pay bills|"),
+                new Storage(shardedFile.toString()).loadTasks());
+    }
+
+    @Test
+    public void testSharedFile_reloadsChangesFromOtherStorage() {
+        Storage first = new Storage(dataFile(), Storage.Mode.LOG);
+        Storage second = new Storage(dataFile(), Storage.Mode.LOG);
+        List<Task> firstTasks = first.load();
+        List<Task> secondTasks = second.load();
+        assertFalse(second.hasExternalChanges());
+
+        Task task = new Todo("read book");
+        firstTasks.add(task);
+        first.saveTask(task);
+        task.setCompleted(true);
+        first.updateTask(1, task, () -> firstTasks);
+
+        assertTrue(second.hasExternalChanges());
+        assertTrue(second.reloadChanges(secondTasks));
+        assertEquals("T|1|read book|", secondTasks.get(0).toFileFormat());
+        assertFalse(second.hasExternalChanges());
+
+        secondTasks.add(new Todo("buy milk"));
+        second.saveTask(secondTasks.get(1));
+        assertTrue(first.reloadChanges(firstTasks));
+        assertEquals(2, firstTasks.size());
+        assertFalse(first.reloadChanges(firstTasks));
+    }
+
+    @Test
+    public void testLogMode_insertTaskIsReplayedInPlace() {
+        Storage storage = new Storage(dataFile(), Storage.Mode.LOG);
+        storage.saveTask(new Todo("first").toFileFormat());
+        storage.saveTask(new Todo("third").toFileFormat());
+        storage.insertTask(2, new Todo("second"), () -> null);
+
+        List<String> loaded = new Storage(dataFile(), Storage.Mode.LOG).loadTasks();
+        assertEquals(List.of("T|0|first|", "T|0|second|", "T|0|third|"), loaded);
+    }
+
+    @Test
+    public void testCreate_usesTheNamedFileEngineMode() throws Exception {
+        assertEquals(Storage.Mode.SHARDED_BY_HASH, StorageEngine.parseMode("sharded-by-hash"));
+        assertEquals(Storage.Mode.SLOTTED, StorageEngine.parseMode("SLOTTED"));
+        assertThrows(IllegalArgumentException.class, () -> StorageEngine.parseMode("columnar"));
+
+        StorageEngine storage = StorageEngine.create(StorageEngine.FILE_ENGINE, Storage.Mode.SLOTTED, dataFile());
+        storage.saveTask(new Todo("first"));
+        storage.flush();
+        assertTrue(SlottedTaskFile.isSlotted(tempDir.resolve("tasks.txt")));
+    }
+}